@@ -0,0 +1,116 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.datastore.sql;
+
+import com.chiorichan.datastore.sql.bases.H2SQLDatastore;
+import com.chiorichan.datastore.sql.bases.SQLDatastore;
+import com.chiorichan.datastore.sql.bases.SQLiteDatastore;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Provides an embedded datastore seeded with {@link #ROWS} rows for the SQL benchmarks
+ */
+@State( Scope.Benchmark )
+public class SQLBenchmarkState
+{
+	public static final int ROWS = 100000;
+
+	@Param( {"h2", "sqlite"} )
+	public String backend;
+
+	public SQLDatastore ds;
+	public SQLWrapper sql;
+	public int nextInsertId;
+
+	private File directory;
+
+	@Setup( Level.Trial )
+	public void setup() throws IOException, SQLException
+	{
+		directory = Files.createTempDirectory( "sql-benchmark" ).toFile();
+
+		switch ( backend )
+		{
+			case "h2":
+				ds = new H2SQLDatastore( new File( directory, "bench" ).getAbsolutePath() );
+				break;
+			case "sqlite":
+				ds = new SQLiteDatastore( new File( directory, "bench.db" ).getAbsolutePath() );
+				break;
+			default:
+				throw new IllegalArgumentException( "Unknown backend " + backend );
+		}
+
+		sql = ds.direct();
+		Connection conn = sql.direct();
+
+		try ( Statement stmt = conn.createStatement() )
+		{
+			stmt.execute( "CREATE TABLE bench ( id INTEGER PRIMARY KEY, name VARCHAR(64), score DOUBLE, created BIGINT );" );
+			stmt.execute( "CREATE TABLE bench_insert ( id INTEGER PRIMARY KEY, name VARCHAR(64), score DOUBLE, created BIGINT );" );
+		}
+
+		conn.setAutoCommit( false );
+		try ( PreparedStatement stmt = conn.prepareStatement( "INSERT INTO bench ( id, name, score, created ) VALUES ( ?, ?, ?, ? );" ) )
+		{
+			for ( int i = 0; i < ROWS; i++ )
+			{
+				stmt.setInt( 1, i );
+				stmt.setString( 2, "name" + i );
+				stmt.setDouble( 3, i * 0.5D );
+				stmt.setLong( 4, 1500000000L + i );
+				stmt.addBatch();
+
+				if ( i % 1000 == 999 )
+					stmt.executeBatch();
+			}
+			stmt.executeBatch();
+		}
+		conn.commit();
+		conn.setAutoCommit( true );
+
+		SQLStatistics.reset();
+	}
+
+	@Setup( Level.Iteration )
+	public void truncateInserts() throws SQLException
+	{
+		try ( Statement stmt = sql.direct().createStatement() )
+		{
+			stmt.execute( "DELETE FROM bench_insert;" );
+		}
+		nextInsertId = 0;
+	}
+
+	@TearDown( Level.Trial )
+	public void tearDown() throws SQLException
+	{
+		sql.direct().close();
+
+		File[] files = directory.listFiles();
+		if ( files != null )
+			for ( File file : files )
+				file.delete();
+		directory.delete();
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.datastore.sql;
+
+import com.chiorichan.datastore.sql.bases.SQLDatastore;
+import com.chiorichan.datastore.sql.query.SQLQueryInsert;
+import com.chiorichan.datastore.sql.query.SQLQuerySelect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures query execution and result materialization against the embedded datastores
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+public class SQLDatastoreBenchmark
+{
+	private static final int INSERT_BATCH = 1000;
+
+	@Benchmark
+	public Map<String, Object> lookupSingleRow( SQLBenchmarkState state ) throws SQLException
+	{
+		int id = ThreadLocalRandom.current().nextInt( SQLBenchmarkState.ROWS );
+		SQLQuerySelect select = state.ds.select( "bench" ).debug( false ).where( "id" ).matches( id ).limit( 1 );
+		try
+		{
+			return select.first();
+		}
+		finally
+		{
+			select.close();
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit( TimeUnit.MILLISECONDS )
+	@Warmup( iterations = 3 )
+	@Measurement( iterations = 5 )
+	public Map<String, Map<String, Object>> readBulkMap( SQLBenchmarkState state ) throws SQLException
+	{
+		SQLQuerySelect select = state.ds.select( "bench" ).debug( false );
+		try
+		{
+			return select.map();
+		}
+		finally
+		{
+			select.close();
+		}
+	}
+
+	@Benchmark
+	@OutputTimeUnit( TimeUnit.MILLISECONDS )
+	@Warmup( iterations = 3 )
+	@Measurement( iterations = 5 )
+	public void readBulkResultSet( SQLBenchmarkState state, Blackhole blackhole ) throws SQLException
+	{
+		SQLQuerySelect select = state.ds.select( "bench" ).debug( false );
+		try ( SQLResultSet result = select.result() )
+		{
+			if ( result != null )
+				do
+				{
+					blackhole.consume( result.getInt( "id" ) );
+					blackhole.consume( result.getString( "name" ) );
+					blackhole.consume( result.getDouble( "score" ) );
+					blackhole.consume( result.getLong( "created" ) );
+				}
+				while ( result.next() );
+		}
+		finally
+		{
+			select.close();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( INSERT_BATCH )
+	public void insertAutoCommit( SQLBenchmarkState state ) throws SQLException
+	{
+		for ( int i = 0; i < INSERT_BATCH; i++ )
+			insert( state.ds, state.nextInsertId++ );
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( INSERT_BATCH )
+	public void insertTransaction( SQLBenchmarkState state ) throws SQLException
+	{
+		state.ds.transaction( tx ->
+		{
+			for ( int i = 0; i < INSERT_BATCH; i++ )
+				insert( tx, state.nextInsertId++ );
+			return null;
+		} );
+	}
+
+	private static void insert( SQLDatastore ds, int id ) throws SQLException
+	{
+		SQLQueryInsert insert = ds.insert( "bench_insert" ).debug( false ).value( "id", id ).value( "name", "name" + id ).value( "score", id * 0.5D ).value( "created", 1500000000L + id );
+		try
+		{
+			insert.execute();
+		}
+		finally
+		{
+			insert.close();
+		}
+	}
+}
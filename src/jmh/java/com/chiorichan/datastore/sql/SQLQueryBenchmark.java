@@ -0,0 +1,63 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.datastore.sql;
+
+import com.chiorichan.datastore.sql.query.SQLQuerySelect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of building queries and binding their parameters, without executing them
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+public class SQLQueryBenchmark
+{
+	@Benchmark
+	public void buildSelect( SQLBenchmarkState state, Blackhole blackhole )
+	{
+		SQLQuerySelect select = new SQLQuerySelect( state.sql, "bench", false ).debug( false );
+		select.where( "id" ).moreThan( 10 ).and().where( "name" ).like( "name1" ).or().where( "score" ).lessThan( 20.5D );
+		select.orderBy( "created", "desc" ).limit( 25, 50 );
+
+		blackhole.consume( select.toSqlQuery() );
+		blackhole.consume( select.sqlValues() );
+	}
+
+	@Benchmark
+	public void buildSelectFromMap( SQLBenchmarkState state, Blackhole blackhole )
+	{
+		SQLQuerySelect select = new SQLQuerySelect( state.sql, "bench", false ).debug( false );
+		select.whereMatches( "id", 10 ).whereMatches( "name", "name10" );
+
+		blackhole.consume( select.toSqlQuery() );
+		blackhole.consume( select.sqlValues() );
+	}
+
+	@Benchmark
+	public void bindParameters( SQLBenchmarkState state, Blackhole blackhole ) throws SQLException
+	{
+		try ( PreparedStatement stmt = state.sql.prepareStatement( "SELECT * FROM bench WHERE id = ? AND name = ? AND score > ? AND created < ?;" ) )
+		{
+			stmt.setObject( 1, 10 );
+			stmt.setObject( 2, "name10" );
+			stmt.setObject( 3, 2.5D );
+			stmt.setObject( 4, 1500000100L );
+			blackhole.consume( stmt );
+		}
+	}
+}
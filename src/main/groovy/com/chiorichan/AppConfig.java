@@ -15,7 +15,10 @@ import com.chiorichan.configuration.ConfigurationSection;
 import com.chiorichan.configuration.InvalidConfigurationException;
 import com.chiorichan.configuration.OnConfigurationListener;
 import com.chiorichan.configuration.types.yaml.YamlConfiguration;
+import com.chiorichan.configuration.types.yaml.YamlSnapshotCache;
 import com.chiorichan.datastore.DatastoreManager;
+import com.chiorichan.datastore.sql.SQLRouter;
+import com.chiorichan.datastore.sql.SQLStatistics;
 import com.chiorichan.datastore.sql.bases.H2SQLDatastore;
 import com.chiorichan.datastore.sql.bases.MySQLDatastore;
 import com.chiorichan.datastore.sql.bases.SQLDatastore;
@@ -41,15 +44,30 @@ import java.net.URLDecoder;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
 public class AppConfig implements Configuration, TaskRegistrar
 {
+	enum LoadState
+	{
+		UNLOADED,
+		LOADING,
+		LOADED,
+		FAILED
+	}
+
 	private static final AppConfig instance = new AppConfig();
+	/**
+	 * The ticks between the first save request and the write, further requests within this window are coalesced
+	 */
+	private static final long SAVE_DELAY = Ticks.SECOND_5;
 	protected static File appDirectory = null;
 	protected static File lockFile;
 
@@ -91,10 +109,16 @@ public class AppConfig implements Configuration, TaskRegistrar
 		lockFile.deleteOnExit();
 	}
 
+	/**
+	 * Returns the AppConfig instance, loading the configuration on first access.
+	 * Calls made while the current thread is loading the configuration, e.g., from the logger, return the instance as-is.
+	 *
+	 * @return The AppConfig instance
+	 */
 	public static AppConfig get()
 	{
-		if ( UtilObjects.stackTraceAntiLoop( AppConfig.class, "loadConfig" ) && !instance.isConfigLoaded() )
-			instance.loadConfig();
+		if ( instance.state != LoadState.LOADED )
+			instance.ensureLoaded();
 		return instance;
 	}
 
@@ -153,8 +177,16 @@ public class AppConfig implements Configuration, TaskRegistrar
 	private String clientId;
 	private SQLDatastore fwDatabase = null;
 	protected File configFile = null;
-	private YamlConfiguration yaml = null;
-	private Map<String, File> directories = new HashMap<>();
+	private final AtomicReference<YamlConfiguration> yaml = new AtomicReference<>();
+	private final AtomicBoolean savePending = new AtomicBoolean();
+	private final ThreadLocal<Boolean> loading = ThreadLocal.withInitial( () -> false );
+	private volatile LoadState state = LoadState.UNLOADED;
+	private Map<String, File> directories = new ConcurrentHashMap<>();
+
+	/**
+	 * Listeners added through this config, registered again on each new snapshot
+	 */
+	private final List<OnConfigurationListener> listeners = new CopyOnWriteArrayList<>();
 
 	protected AppConfig()
 	{
@@ -164,22 +196,19 @@ public class AppConfig implements Configuration, TaskRegistrar
 	@Override
 	public void addDefault( String path, Object value )
 	{
-		yamlCheck();
-		yaml.addDefault( path, value );
+		snapshot().addDefault( path, value );
 	}
 
 	@Override
 	public void addDefaults( Configuration defaults )
 	{
-		yamlCheck();
-		yaml.addDefaults( defaults );
+		snapshot().addDefaults( defaults );
 	}
 
 	@Override
 	public void addDefaults( Map<String, Object> defaults )
 	{
-		yamlCheck();
-		yaml.addDefaults( defaults );
+		snapshot().addDefaults( defaults );
 	}
 
 	public void clearCache( File path, long keepHistory )
@@ -213,15 +242,13 @@ public class AppConfig implements Configuration, TaskRegistrar
 	@Override
 	public boolean contains( String path )
 	{
-		yamlCheck();
-		return yaml.contains( path );
+		return snapshot().contains( path );
 	}
 
 	@Override
 	public ConfigurationSection createSection( String path )
 	{
-		yamlCheck();
-		return yaml.createSection( path );
+		return snapshot().createSection( path );
 	}
 
 	@Override
@@ -233,8 +260,7 @@ public class AppConfig implements Configuration, TaskRegistrar
 	@Override
 	public ConfigurationSection createSection( String path, Map<?, ?> map )
 	{
-		yamlCheck();
-		return yaml.createSection( path, map );
+		return snapshot().createSection( path, map );
 	}
 
 	public File file()
@@ -247,57 +273,49 @@ public class AppConfig implements Configuration, TaskRegistrar
 	@Override
 	public Object get( String path )
 	{
-		yamlCheck();
-		return yaml.get( path );
+		return snapshot().get( path );
 	}
 
 	@Override
 	public Object get( String path, Object def )
 	{
-		yamlCheck();
-		return yaml.get( path, def );
+		return snapshot().get( path, def );
 	}
 
 	@Override
 	public <T> List<T> getAsList( String path )
 	{
-		yamlCheck();
-		return yaml.getAsList( path );
+		return snapshot().getAsList( path );
 	}
 
 	@Override
 	public <T> List<T> getAsList( String path, List<T> def )
 	{
-		yamlCheck();
-		return yaml.getAsList( path, def );
+		return snapshot().getAsList( path, def );
 	}
 
 	@Override
 	public boolean getBoolean( String path )
 	{
-		yamlCheck();
-		return yaml.getBoolean( path );
+		return snapshot().getBoolean( path );
 	}
 
 	@Override
 	public boolean getBoolean( String path, boolean def )
 	{
-		yamlCheck();
-		return yaml.getBoolean( path, def );
+		return snapshot().getBoolean( path, def );
 	}
 
 	@Override
 	public List<Boolean> getBooleanList( String path )
 	{
-		yamlCheck();
-		return yaml.getBooleanList( path );
+		return snapshot().getBooleanList( path );
 	}
 
 	@Override
 	public List<Byte> getByteList( String path )
 	{
-		yamlCheck();
-		return yaml.getByteList( path );
+		return snapshot().getByteList( path );
 	}
 
 	public String getClientId()
@@ -308,36 +326,31 @@ public class AppConfig implements Configuration, TaskRegistrar
 	@Override
 	public Color getColor( String path )
 	{
-		yamlCheck();
-		return yaml.getColor( path );
+		return snapshot().getColor( path );
 	}
 
 	@Override
 	public Color getColor( String path, Color def )
 	{
-		yamlCheck();
-		return yaml.getColor( path, def );
+		return snapshot().getColor( path, def );
 	}
 
 	@Override
 	public ConfigurationSection getConfigurationSection( String path )
 	{
-		yamlCheck();
-		return yaml.getConfigurationSection( path );
+		return snapshot().getConfigurationSection( path );
 	}
 
 	@Override
 	public ConfigurationSection getConfigurationSection( String path, boolean create )
 	{
-		yamlCheck();
-		return yaml.getConfigurationSection( path, create );
+		return snapshot().getConfigurationSection( path, create );
 	}
 
 	@Override
 	public String getCurrentPath()
 	{
-		yamlCheck();
-		return yaml.getCurrentPath();
+		return snapshot().getCurrentPath();
 	}
 
 	public SQLDatastore getDatabase()
@@ -355,15 +368,13 @@ public class AppConfig implements Configuration, TaskRegistrar
 	@Override
 	public Configuration getDefaults()
 	{
-		yamlCheck();
-		return yaml.getDefaults();
+		return snapshot().getDefaults();
 	}
 
 	@Override
 	public ConfigurationSection getDefaultSection()
 	{
-		yamlCheck();
-		return yaml.getDefaultSection();
+		return snapshot().getDefaultSection();
 	}
 
 	public File getDirectory()
@@ -459,266 +470,243 @@ public class AppConfig implements Configuration, TaskRegistrar
 	@Override
 	public double getDouble( String path )
 	{
-		yamlCheck();
-		return yaml.getDouble( path );
+		return snapshot().getDouble( path );
 	}
 
 	@Override
 	public double getDouble( String path, double def )
 	{
-		yamlCheck();
-		return yaml.getDouble( path, def );
+		return snapshot().getDouble( path, def );
 	}
 
 	@Override
 	public List<Double> getDoubleList( String path )
 	{
-		yamlCheck();
-		return yaml.getDoubleList( path );
+		return snapshot().getDoubleList( path );
 	}
 
 	@Override
 	public List<Float> getFloatList( String path )
 	{
-		yamlCheck();
-		return yaml.getFloatList( path );
+		return snapshot().getFloatList( path );
 	}
 
 	@Override
 	public int getInt( String path )
 	{
-		yamlCheck();
-		return yaml.getInt( path );
+		return snapshot().getInt( path );
 	}
 
 	@Override
 	public int getInt( String path, int def )
 	{
-		yamlCheck();
-		return yaml.getInt( path, def );
+		return snapshot().getInt( path, def );
 	}
 
 	@Override
 	public List<Integer> getIntegerList( String path )
 	{
-		yamlCheck();
-		return yaml.getIntegerList( path );
+		return snapshot().getIntegerList( path );
 	}
 
 	@Override
 	public Set<String> getKeys()
 	{
-		yamlCheck();
-		return yaml.getKeys();
+		return snapshot().getKeys();
 	}
 
 	@Override
 	public Set<String> getKeys( boolean deep )
 	{
-		yamlCheck();
-		return yaml.getKeys( deep );
+		return snapshot().getKeys( deep );
 	}
 
 	@Override
 	public <T> List<T> getList( String path )
 	{
-		yamlCheck();
-		return yaml.getList( path );
+		return snapshot().getList( path );
 	}
 
 	@Override
 	public <T> List<T> getList( String path, List<T> def )
 	{
-		yamlCheck();
-		return yaml.getList( path, def );
+		return snapshot().getList( path, def );
 	}
 
 	@Override
 	public long getLong( String path )
 	{
-		yamlCheck();
-		return yaml.getLong( path );
+		return snapshot().getLong( path );
 	}
 
 	@Override
 	public long getLong( String path, long def )
 	{
-		yamlCheck();
-		return yaml.getLong( path, def );
+		return snapshot().getLong( path, def );
 	}
 
 	@Override
 	public List<Long> getLongList( String path )
 	{
-		yamlCheck();
-		return yaml.getLongList( path );
+		return snapshot().getLongList( path );
 	}
 
 	@Override
 	public List<Map<?, ?>> getMapList( String path )
 	{
-		yamlCheck();
-		return yaml.getMapList( path );
+		return snapshot().getMapList( path );
 	}
 
 	@Override
 	public String getName()
 	{
-		yamlCheck();
-		return yaml.getName();
+		return snapshot().getName();
 	}
 
 	@Override
 	public ConfigurationSection getParent()
 	{
-		yamlCheck();
-		return yaml.getParent();
+		return snapshot().getParent();
 	}
 
 	@Override
 	public Configuration getRoot()
 	{
-		yamlCheck();
-		return yaml.getRoot();
+		return snapshot().getRoot();
 	}
 
 	@Override
 	public List<Short> getShortList( String path )
 	{
-		yamlCheck();
-		return yaml.getShortList( path );
+		return snapshot().getShortList( path );
 	}
 
 	@Override
 	public String getString( String path )
 	{
-		yamlCheck();
-		return yaml.getString( path );
+		return snapshot().getString( path );
 	}
 
 	@Override
 	public String getString( String path, String def )
 	{
-		yamlCheck();
-		return yaml.getString( path, def );
+		return snapshot().getString( path, def );
 	}
 
 	@Override
 	public List<String> getStringList( String path )
 	{
-		yamlCheck();
-		return yaml.getStringList( path );
+		return snapshot().getStringList( path );
 	}
 
 	@Override
 	public List<String> getStringList( String path, List<String> def )
 	{
-		yamlCheck();
-		return yaml.getStringList( path, def );
+		return snapshot().getStringList( path, def );
 	}
 
 	@Override
 	public Map<String, Object> getValues( boolean deep )
 	{
-		yamlCheck();
-		return yaml.getValues( deep );
+		return snapshot().getValues( deep );
 	}
 
 	@Override
 	public boolean has( String path )
 	{
-		yamlCheck();
-		return yaml.has( path );
+		return snapshot().has( path );
 	}
 
 	@Override
 	public List<String> getChanges()
 	{
-		return yaml.getChanges();
+		return snapshot().getChanges();
 	}
 
 	@Override
 	public List<String> getChanges( boolean deep )
 	{
-		return yaml.getChanges( deep );
+		return snapshot().getChanges( deep );
 	}
 
 	@Override
 	public boolean hasChanges()
 	{
-		return yaml.hasChanges();
+		return snapshot().hasChanges();
 	}
 
 	@Override
 	public boolean hasChanges( boolean deep )
 	{
-		return yaml.hasChanges( deep );
+		return snapshot().hasChanges( deep );
 	}
 
 	@Override
 	public void resolveChanges()
 	{
-		yaml.resolveChanges();
+		snapshot().resolveChanges();
 	}
 
 	@Override
 	public void resolveChanges( boolean deep )
 	{
-		yaml.resolveChanges( deep );
+		snapshot().resolveChanges( deep );
 	}
 
 	@Override
 	public OnConfigurationListener getForwardingListener()
 	{
-		return yaml.getForwardingListener();
+		return snapshot().getForwardingListener();
 	}
 
 	@Override
 	public void addListener( OnConfigurationListener onConfigurationListener )
 	{
-		yaml.addListener( onConfigurationListener );
+		listeners.add( onConfigurationListener );
+		snapshot().addListener( onConfigurationListener );
 	}
 
 	@Override
 	public void removeListener( OnConfigurationListener onConfigurationListener )
 	{
-		yaml.removeListener( onConfigurationListener );
+		listeners.remove( onConfigurationListener );
+		snapshot().removeListener( onConfigurationListener );
 	}
 
 	@Override
 	public List<ConfigurationSection> getConfigurationSections()
 	{
-		return yaml.getConfigurationSections();
+		return snapshot().getConfigurationSections();
 	}
 
 	@Override
 	public <T> List<T> getObjectList( String path, Class<T> cls )
 	{
-		return yaml.getObjectList( path, cls );
+		return snapshot().getObjectList( path, cls );
 	}
 
 	@Override
 	public <T> T getObject( String path, Class<T> cls )
 	{
-		return yaml.getObject( path, cls );
+		return snapshot().getObject( path, cls );
 	}
 
 	@Override
 	public Map<String, Object> getChildren()
 	{
-		return yaml.getChildren();
+		return snapshot().getChildren();
 	}
 
 	@Override
 	public <T> List<T> asObjectList( Class<T> cls )
 	{
-		return yaml.asObjectList( cls );
+		return snapshot().asObjectList( cls );
 	}
 
 	@Override
 	public <T> T asObject( Class<T> cls )
 	{
-		return yaml.asObject( cls );
+		return snapshot().asObject( cls );
 	}
 
 	public void initDatabase()
@@ -753,39 +741,84 @@ public class AppConfig implements Configuration, TaskRegistrar
 			default:
 				Log.get( DatastoreManager.instance() ).severe( "We are sorry, the Database Engine currently only supports mysql and sqlite but we found '" + getString( "server.database.type", "sqlite" ).toLowerCase() + "', please change 'server.database.type' to 'mysql' or 'sqlite' in server config 'server.yaml'" );
 		}
+
+		if ( fwDatabase != null )
+		{
+			fwDatabase.setExecutor( getInt( "server.database.async.threads", 4 ), getInt( "server.database.async.queue", 1024 ) );
+			fwDatabase.setQueryTimeout( getInt( "server.database.queryTimeout", 0 ) );
+		}
+
+		if ( fwDatabase != null && isList( "server.database.replicas" ) )
+		{
+			SQLRouter router = null;
+			for ( Map<?, ?> replica : getMapList( "server.database.replicas" ) )
+				try
+				{
+					router = fwDatabase.addReplica( initReplica( replica ) );
+				}
+				catch ( StartupException e )
+				{
+					Log.get( DatastoreManager.instance() ).severe( "We had a problem connecting to a read replica, it will not be used. Explanation '" + e.getMessage() + "'" );
+				}
+
+			if ( router != null )
+			{
+				router.setStickyMillis( getLong( "server.database.replicaStickiness", 2000 ) );
+				router.scheduleHealthCheck( Ticks.SECOND_15 );
+			}
+		}
+
+		SQLStatistics.setEnabled( getBoolean( "server.database.statistics.enabled", true ) );
+		SQLStatistics.setSlowThreshold( getLong( "server.database.statistics.slowThreshold", 1000 ) );
+	}
+
+	private SQLDatastore initReplica( Map<?, ?> replica )
+	{
+		String type = UtilObjects.castToString( replica.get( "type" ) );
+		switch ( type == null ? "" : type.toLowerCase() )
+		{
+			case "sqlite":
+				return new SQLiteDatastore( UtilObjects.castToString( replica.get( "dbfile" ) ) );
+			case "mysql":
+			{
+				Object host = replica.get( "host" );
+				Object port = replica.get( "port" );
+				return new MySQLDatastore( UtilObjects.castToString( replica.get( "database" ) ), UtilObjects.castToString( replica.get( "username" ) ), UtilObjects.castToString( replica.get( "password" ) ), host == null ? null : UtilObjects.castToString( host ), port == null ? null : UtilObjects.castToString( port ) );
+			}
+			case "h2":
+				return new H2SQLDatastore( UtilObjects.castToString( replica.get( "dbfile" ) ) );
+			default:
+				throw new StartupException( "The read replica type '" + type + "' is not supported, please use 'mysql', 'sqlite' or 'h2'." );
+		}
 	}
 
 	@Override
 	public boolean isBoolean( String path )
 	{
-		yamlCheck();
-		return yaml.isBoolean( path );
+		return snapshot().isBoolean( path );
 	}
 
 	@Override
 	public boolean isColor( String path )
 	{
-		yamlCheck();
-		return yaml.isColor( path );
+		return snapshot().isColor( path );
 	}
 
 	public boolean isConfigLoaded()
 	{
-		return yaml != null;
+		return yaml.get() != null;
 	}
 
 	@Override
 	public boolean isConfigurationSection( String path )
 	{
-		yamlCheck();
-		return yaml.isConfigurationSection( path );
+		return snapshot().isConfigurationSection( path );
 	}
 
 	@Override
 	public boolean isDouble( String path )
 	{
-		yamlCheck();
-		return yaml.isDouble( path );
+		return snapshot().isDouble( path );
 	}
 
 	@Override
@@ -797,36 +830,50 @@ public class AppConfig implements Configuration, TaskRegistrar
 	@Override
 	public boolean isInt( String path )
 	{
-		yamlCheck();
-		return yaml.isInt( path );
+		return snapshot().isInt( path );
 	}
 
 	@Override
 	public boolean isList( String path )
 	{
-		yamlCheck();
-		return yaml.isList( path );
+		return snapshot().isList( path );
 	}
 
 	@Override
 	public boolean isLong( String path )
 	{
-		yamlCheck();
-		return yaml.isLong( path );
+		return snapshot().isLong( path );
 	}
 
 	@Override
 	public boolean isSet( String path )
 	{
-		yamlCheck();
-		return yaml.isSet( path );
+		return snapshot().isSet( path );
 	}
 
 	@Override
 	public boolean isString( String path )
 	{
-		yamlCheck();
-		return yaml.isString( path );
+		return snapshot().isString( path );
+	}
+
+	/**
+	 * Enables the YAML snapshot cache if configured, the snapshots are kept in the cache directory
+	 */
+	private void initSnapshotCache()
+	{
+		boolean enabled = getBoolean( "advanced.config.snapshotCache", false );
+		YamlSnapshotCache.setEnabled( enabled );
+		if ( enabled )
+			try
+			{
+				YamlSnapshotCache.setDirectory( getDirectoryCache( "snapshots" ) );
+			}
+			catch ( RuntimeException e )
+			{
+				YamlSnapshotCache.setEnabled( false );
+				Log.get().warning( "The YAML snapshot cache was disabled, the cache directory is not available. Explanation '" + e.getMessage() + "'" );
+			}
 	}
 
 	/**
@@ -834,37 +881,76 @@ public class AppConfig implements Configuration, TaskRegistrar
 	 */
 	protected void loadConfig()
 	{
+		boolean reentrant = loading.get();
+		loading.set( true );
+		state = LoadState.LOADING;
+
 		try
 		{
-			file();
-
-			yaml = YamlConfiguration.loadConfiguration( configFile );
-			yaml.options().copyDefaults( true );
-			yaml.setDefaults( YamlConfiguration.loadConfiguration( getClass().getClassLoader().getResourceAsStream( "com/chiorichan/config.yaml" ) ) );
+			yaml.set( parse( YamlConfiguration.loadConfiguration( file() ) ) );
 			directories.clear();
+			initSnapshotCache();
+			state = LoadState.LOADED;
 
 			Log.get().info( String.format( "Loaded application configuration from %s", UtilIO.relPath( configFile ) ) );
 		}
 		catch ( NoClassDefFoundError e )
 		{
+			state = LoadState.FAILED;
 			Log.get().severe( "Failed to load config: " + e.getMessage() );
 		}
+		catch ( RuntimeException e )
+		{
+			state = LoadState.FAILED;
+			throw e;
+		}
+		finally
+		{
+			if ( !reentrant )
+				loading.remove();
+		}
+	}
+
+	private synchronized void ensureLoaded()
+	{
+		// Reentrant calls made while this thread is loading, e.g., the logger reading its format, must not load again
+		if ( loading.get() || state == LoadState.LOADED )
+			return;
+		loadConfig();
+	}
+
+	private YamlConfiguration parse( YamlConfiguration config )
+	{
+		config.options().copyDefaults( true );
+		config.setDefaults( YamlConfiguration.loadConfiguration( getClass().getClassLoader().getResourceAsStream( "com/chiorichan/config.yaml" ) ) );
+		for ( OnConfigurationListener listener : listeners )
+			config.addListener( listener );
+		return config;
 	}
 
 	@Override
 	public ConfigurationOptions options()
 	{
-		return yaml == null ? null : yaml.options();
+		YamlConfiguration config = yaml.get();
+		return config == null ? null : config.options();
 	}
 
+	/**
+	 * Parses the config file into a new snapshot and swaps it in, readers keep using the previous snapshot until the new one is complete.
+	 */
 	public void reload()
 	{
-		if ( yaml == null )
+		YamlConfiguration current = yaml.get();
+		if ( current == null )
 			return;
 
 		try
 		{
-			yaml.load( file() );
+			YamlConfiguration config = new YamlConfiguration();
+			config.load( file() );
+
+			if ( yaml.compareAndSet( current, parse( config ) ) )
+				directories.clear();
 		}
 		catch ( IOException | InvalidConfigurationException e )
 		{
@@ -872,69 +958,79 @@ public class AppConfig implements Configuration, TaskRegistrar
 		}
 	}
 
+	/**
+	 * Requests the configuration be saved in the background, requests made before the save runs are coalesced into a single write.
+	 * Nothing is written if no values were set or removed since the configuration was loaded or last saved.
+	 */
 	public void save()
 	{
-		if ( yaml == null )
+		if ( yaml.get() == null )
 			return;
 
-		// TODO Targeted key path saves
-		// TODO Save only changed values, so manual edits are not overridden
+		TaskManager manager = TaskManager.instanceWithoutException();
+		if ( manager == null )
+			saveNow();
+		else if ( savePending.compareAndSet( false, true ) )
+			manager.runTaskLaterAsynchronously( this, SAVE_DELAY, this::saveNow );
+	}
 
-		TaskManager.instance().runTaskWithTimeout( this, Ticks.MINUTE, new Runnable()
+	/**
+	 * Immediately writes the configuration if it has changed, used at shutdown once the {@link TaskManager} has stopped.
+	 */
+	public synchronized void saveNow()
+	{
+		// TODO Splice only the changed key paths into the file, so comments and manual edits are preserved
+
+		savePending.set( false );
+
+		YamlConfiguration config = yaml.get();
+		if ( config == null )
+			return;
+
+		try
 		{
-			@Override
-			public void run()
-			{
-				try
-				{
-					if ( yaml != null )
-						yaml.save( file() );
-				}
-				catch ( IOException ex )
-				{
-					Log.get().severe( "Could not save " + file(), ex );
-				}
-			}
-		} );
+			config.saveChanges( file() );
+		}
+		catch ( IOException ex )
+		{
+			Log.get().severe( "Could not save " + file(), ex );
+		}
 	}
 
 	@Override
 	public void set( String path, Object value )
 	{
-		yamlCheck();
-		yaml.set( path, value );
+		snapshot().set( path, value );
 	}
 
 	@Override
 	public void set( String path, Object value, boolean convert )
 	{
-		yamlCheck();
-		yaml.set( path, value, convert );
+		snapshot().set( path, value, convert );
 	}
 
 	@Override
 	public void merge( ConfigurationSection values )
 	{
-		yaml.merge( values );
+		snapshot().merge( values );
 	}
 
 	@Override
 	public void set( ConfigurationSection values )
 	{
-		yaml.set( values );
+		snapshot().set( values );
 	}
 
 	@Override
 	public void set( Map<String, Object> values )
 	{
-		yaml.set( values );
+		snapshot().set( values );
 	}
 
 	@Override
 	public void setDefaults( Configuration defaults )
 	{
-		yamlCheck();
-		yaml.setDefaults( defaults );
+		snapshot().setDefaults( defaults );
 	}
 
 	/**
@@ -944,19 +1040,29 @@ public class AppConfig implements Configuration, TaskRegistrar
 	 */
 	public boolean warnOnOverload()
 	{
-		yamlCheck();
-		return yaml.getBoolean( "settings.warn-on-overload" );
+		return snapshot().getBoolean( "settings.warn-on-overload" );
 	}
 
 	public YamlConfiguration yaml()
 	{
-		return yaml;
+		return yaml.get();
 	}
 
 	public void yamlCheck()
 	{
-		if ( yaml == null )
+		snapshot();
+	}
+
+	/**
+	 * @return The current configuration snapshot
+	 * @throws IllegalStateException if the configuration is not loaded
+	 */
+	private YamlConfiguration snapshot()
+	{
+		YamlConfiguration config = yaml.get();
+		if ( config == null )
 			throw new IllegalStateException( "The YAML configuration is not loaded." );
+		return config;
 	}
 
 	/**
@@ -12,6 +12,7 @@ package com.chiorichan;
 import com.chiorichan.account.AccountManager;
 import com.chiorichan.event.EventRegistrar;
 import com.chiorichan.event.Listener;
+import com.chiorichan.io.FileWatcherService;
 import com.chiorichan.lang.ApplicationException;
 import com.chiorichan.lang.EnumColor;
 import com.chiorichan.lang.ExceptionContext;
@@ -209,8 +210,14 @@ public final class AppController implements Runnable, EventRegistrar, TaskRegist
 		if ( TaskManager.instanceWithoutException() != null )
 			TaskManager.instanceWithoutException().shutdown();
 
+		Log.get().info( "Closing Database..." );
+		if ( AppConfig.get().getDatabase() != null )
+			AppConfig.get().getDatabase().close();
+
+		FileWatcherService.shutdown();
+
 		Log.get().info( "Saving Configuration..." );
-		AppConfig.get().save();
+		AppConfig.get().saveNow();
 
 		try
 		{
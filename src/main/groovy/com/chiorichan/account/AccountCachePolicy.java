@@ -0,0 +1,184 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account;
+
+import com.chiorichan.account.lang.AccountException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which cached accounts are released from {@link AccountManager}, so metadata of one time visitors does not accumulate.
+ * <p>
+ * Accounts idle longer than the idle timeout are evicted, then the least recently used ones until at most the maximum number remain.
+ * Accounts with a live {@link AccountInstance} or kept in memory are pinned and never evicted.
+ * Changed metadata is saved before eviction, an account that fails to save stays cached.
+ */
+public final class AccountCachePolicy
+{
+	private final AtomicLong sweeps = new AtomicLong();
+	private final AtomicLong idleEvictions = new AtomicLong();
+	private final AtomicLong sizeEvictions = new AtomicLong();
+	private final AtomicLong writeBacks = new AtomicLong();
+	private final AtomicLong writeBackFailures = new AtomicLong();
+	private volatile int lastSize = 0;
+	private volatile int lastPinned = 0;
+
+	private volatile long idleTimeout = TimeUnit.MINUTES.toMillis( 30 );
+	private volatile int maxEntries = 100000;
+
+	private boolean evict( AccountList accounts, AccountMeta meta, long accessedBefore )
+	{
+		if ( meta.isDirty() )
+			try
+			{
+				meta.save();
+				writeBacks.incrementAndGet();
+			}
+			catch ( AccountException e )
+			{
+				writeBackFailures.incrementAndGet();
+				AccountManager.getLogger().warning( String.format( "Failed to save the account %s before evicting it, it stays cached: %s", meta.getId(), e.getMessage() ) );
+				return false;
+			}
+
+		// Used while we were saving it
+		if ( meta.isPinned() || meta.getLastAccess() > accessedBefore || meta.isDirty() )
+			return false;
+
+		return accounts.remove( meta );
+	}
+
+	public long getIdleEvictions()
+	{
+		return idleEvictions.get();
+	}
+
+	/**
+	 * @return The time in milliseconds after which an unused account is evicted
+	 */
+	public long getIdleTimeout()
+	{
+		return idleTimeout;
+	}
+
+	/**
+	 * @return The number of accounts cached at the end of the last sweep
+	 */
+	public int getLastSize()
+	{
+		return lastSize;
+	}
+
+	/**
+	 * @return The number of pinned accounts seen by the last sweep
+	 */
+	public int getLastPinned()
+	{
+		return lastPinned;
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	public long getSizeEvictions()
+	{
+		return sizeEvictions.get();
+	}
+
+	public long getSweeps()
+	{
+		return sweeps.get();
+	}
+
+	public long getWriteBackFailures()
+	{
+		return writeBackFailures.get();
+	}
+
+	public long getWriteBacks()
+	{
+		return writeBacks.get();
+	}
+
+	/**
+	 * @param idleTimeout The time in milliseconds, zero or less disables idle eviction
+	 */
+	public void setIdleTimeout( long idleTimeout )
+	{
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * @param maxEntries The maximum number of unpinned accounts cached after a sweep, zero or less disables the limit
+	 */
+	public void setMaxEntries( int maxEntries )
+	{
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Evicts the idle accounts, then the least recently used ones while there are too many
+	 *
+	 * @param accounts The cached accounts
+	 */
+	void sweep( AccountList accounts )
+	{
+		sweeps.incrementAndGet();
+
+		long now = System.currentTimeMillis();
+		long idleTimeout = this.idleTimeout;
+		int maxEntries = this.maxEntries;
+
+		int pinned = 0;
+		List<AccountMeta> candidates = new ArrayList<>();
+		for ( AccountMeta meta : accounts )
+			if ( meta.isPinned() )
+				pinned++;
+			else if ( idleTimeout > 0 && now - meta.getLastAccess() > idleTimeout )
+			{
+				if ( evict( accounts, meta, now - idleTimeout ) )
+					idleEvictions.incrementAndGet();
+			}
+			else
+				candidates.add( meta );
+
+		int excess = maxEntries > 0 ? accounts.size() - pinned - maxEntries : 0;
+		if ( excess > 0 )
+		{
+			// Snapshot the access times, they keep changing while sorting
+			long[][] order = new long[candidates.size()][];
+			for ( int i = 0; i < order.length; i++ )
+				order[i] = new long[] {candidates.get( i ).getLastAccess(), i};
+			Arrays.sort( order, ( a, b ) -> Long.compare( a[0], b[0] ) );
+
+			for ( int i = 0; i < order.length && excess > 0; i++ )
+				if ( evict( accounts, candidates.get( ( int ) order[i][1] ), order[i][0] ) )
+				{
+					sizeEvictions.incrementAndGet();
+					excess--;
+				}
+		}
+
+		lastPinned = pinned;
+		lastSize = accounts.size();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "AccountCachePolicy{size=%s,pinned=%s,maxEntries=%s,idleTimeout=%ss,sweeps=%s,idleEvictions=%s,sizeEvictions=%s,writeBacks=%s,writeBackFailures=%s}", lastSize, lastPinned, maxEntries, TimeUnit.MILLISECONDS.toSeconds( idleTimeout ), getSweeps(), getIdleEvictions(), getSizeEvictions(), getWriteBacks(), getWriteBackFailures() );
+	}
+}
@@ -92,6 +92,14 @@ public interface AccountCreator
 	 */
 	String getDisplayName( AccountMeta meta );
 
+	/**
+	 * Writes any changes this creator buffered instead of saving them right away, called when the {@link AccountManager} saves
+	 */
+	default void flush()
+	{
+		// Nothing buffered by default
+	}
+
 	/**
 	 * Returns what keys can be used to match a login to it's Account, e.g., phone, email
 	 *
@@ -108,6 +116,29 @@ public interface AccountCreator
 	 */
 	boolean accountExists( String locId, String acctId );
 
+	/**
+	 * Cheaply checks if an Account matching the provided acctId could exist within this creator, without querying its backing store.
+	 * False positives are allowed, false negatives are not. Creators that don't keep track of their identifiers always return true.
+	 *
+	 * @param locId  The location Id
+	 * @param acctId The Account Id or any other login value
+	 * @return False if it certainly does not exist
+	 */
+	default boolean mightExist( String locId, String acctId )
+	{
+		return true;
+	}
+
+	/**
+	 * Informs this creator that a login value was added to one of its Accounts, so {@link #mightExist(String, String)} recognizes it
+	 *
+	 * @param value The login value
+	 */
+	default void addKnownIdentifier( String value )
+	{
+		// Nothing to track by default
+	}
+
 	/**
 	 * Create specified account within the {@link AccountType} data
 	 *
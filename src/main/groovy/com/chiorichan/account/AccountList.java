@@ -10,65 +10,246 @@
 package com.chiorichan.account;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 /**
  * Provides an easy to use Account Resolver
+ * <p>
+ * Accounts are kept in a concurrent map keyed by location and id, with a second index from each login value, e.g., username or email, to the accounts using it,
+ * so resolving a login is a hash lookup instead of a scan. {@link AccountMeta#set(String, Object)} keeps the login index current when a login key changes.
  */
 class AccountList implements Iterable<AccountMeta>
 {
-	private volatile List<AccountMeta> accounts = new CopyOnWriteArrayList<>();
+	private static String key( String locId, String acctId )
+	{
+		return locId + "_" + acctId;
+	}
+
+	/**
+	 * Accounts by location and id
+	 */
+	private final Map<String, AccountMeta> accounts = new ConcurrentHashMap<>();
+
+	/**
+	 * Accounts by the value of any of their login keys, including the account id
+	 */
+	private final Map<String, Set<AccountMeta>> logins = new ConcurrentHashMap<>();
+
+	/**
+	 * Substring and prefix index over the account ids, display names and search fields
+	 */
+	final AccountSearchIndex search = new AccountSearchIndex();
+
+	/**
+	 * Banned, operator and whitelisted accounts
+	 */
+	final AccountStatusIndex status = new AccountStatusIndex( this );
 
 	void clear()
 	{
 		accounts.clear();
+		logins.clear();
+		search.clear();
+		status.clear();
+	}
+
+	/**
+	 * @param meta The account
+	 * @return True if it is the one cached for its location and id
+	 */
+	boolean contains( AccountMeta meta )
+	{
+		return accounts.get( key( meta.getLocId(), meta.getId() ) ) == meta;
+	}
+
+	/**
+	 * Finds the account with a login key matching the value
+	 *
+	 * @param locId The location id, % matches any location
+	 * @param value The login value, e.g., acctId, username or email
+	 * @return The account or null if none is cached
+	 */
+	AccountMeta find( String locId, String value )
+	{
+		if ( value == null )
+			return null;
+
+		Set<AccountMeta> matches = logins.get( value );
+		if ( matches != null )
+			for ( AccountMeta meta : matches )
+				if ( ( "%".equals( locId ) || Objects.equals( locId, meta.getLocId() ) ) && matches( meta, value ) )
+				{
+					meta.touch();
+					return meta;
+				}
+		return null;
+	}
+
+	private void index( AccountMeta meta, String value )
+	{
+		logins.compute( value, ( k, set ) ->
+		{
+			if ( set == null )
+				set = ConcurrentHashMap.newKeySet();
+			set.add( meta );
+			return set;
+		} );
 	}
 
 	@Override
 	public Iterator<AccountMeta> iterator()
 	{
-		return accounts.iterator();
+		return accounts.values().iterator();
+	}
+
+	public List<AccountMeta> list()
+	{
+		return new ArrayList<>( accounts.values() );
+	}
+
+	public Map<String, AccountMeta> map()
+	{
+		return Collections.unmodifiableMap( accounts );
+	}
+
+	private boolean matches( AccountMeta meta, String value )
+	{
+		if ( value.equals( meta.getId() ) )
+			return true;
+		for ( String key : meta.getContext().loginKeys )
+			if ( value.equals( meta.getString( key ) ) )
+				return true;
+		return false;
 	}
 
-	void put( AccountMeta meta )
+	/**
+	 * Adds the account unless one with the same location and id is already cached
+	 *
+	 * @param meta The account
+	 * @return The cached account, which is not the one supplied if another was cached first
+	 */
+	AccountMeta put( AccountMeta meta )
 	{
 		// Prevents the overriding of the builtin Accounts
 		if ( ( "none".equals( meta.getId() ) || "default".equals( meta.getId() ) || "root".equals( meta.getId() ) ) )
+			return meta;
+
+		AccountMeta existing = accounts.putIfAbsent( key( meta.getLocId(), meta.getId() ), meta );
+		if ( existing != null )
+		{
+			existing.touch();
+			return existing;
+		}
+
+		index( meta, meta.getId() );
+		for ( String key : meta.getContext().loginKeys )
+		{
+			String value = meta.getString( key );
+			if ( value != null )
+				index( meta, value );
+		}
+		search.update( meta );
+		status.add( meta );
+		return meta;
+	}
+
+	/**
+	 * Updates the login index after a login key of a cached account changed
+	 *
+	 * @param meta     The account
+	 * @param oldValue The previous value or null
+	 * @param newValue The new value or null
+	 */
+	void reindex( AccountMeta meta, String oldValue, String newValue )
+	{
+		if ( !contains( meta ) )
 			return;
 
-		for ( AccountMeta acct : accounts )
-			if ( Objects.equals( acct.getLocId(), meta.getLocId() ) && Objects.equals( acct.getId(), meta.getId() ) )
-				return;
+		if ( oldValue != null && !matches( meta, oldValue ) )
+			unindex( meta, oldValue );
+		if ( newValue != null )
+			index( meta, newValue );
+	}
+
+	/**
+	 * Refreshes the search index after meta of a cached account changed
+	 *
+	 * @param meta The account
+	 */
+	void updated( AccountMeta meta )
+	{
+		if ( contains( meta ) )
+			search.update( meta );
+	}
+
+	/**
+	 * Removes the account if it is still the one cached for its location and id
+	 *
+	 * @param meta The account
+	 * @return True if it was removed
+	 */
+	boolean remove( AccountMeta meta )
+	{
+		if ( !accounts.remove( key( meta.getLocId(), meta.getId() ), meta ) )
+			return false;
 
-		accounts.add( meta );
+		unindex( meta, meta.getId() );
+		search.remove( meta );
+		status.remove( meta );
+		for ( String key : meta.getContext().loginKeys )
+		{
+			String value = meta.getString( key );
+			if ( value != null )
+				unindex( meta, value );
+		}
+		return true;
 	}
 
 	void remove( String locId, String acctId )
 	{
-		for ( AccountMeta acct : accounts )
-			if ( Objects.equals( acct.getId(), acctId ) && ( "%".equals( locId ) || Objects.equals( acct.getLocation(), locId ) ) )
-				accounts.remove( acct );
+		for ( AccountMeta acct : accounts.values() )
+			if ( Objects.equals( acct.getId(), acctId ) && ( "%".equals( locId ) || Objects.equals( acct.getLocId(), locId ) ) )
+				remove( acct );
 	}
 
-	public Map<String, AccountMeta> map()
+	public int size()
 	{
-		return accounts.stream().collect( Collectors.toMap( m -> m.getLocId() + "_" + m.getId(), m -> m ) );
+		return accounts.size();
 	}
 
 	public Stream<AccountMeta> stream()
 	{
-		return accounts.stream();
+		return accounts.values().stream();
 	}
 
-	public List<AccountMeta> list()
+	/**
+	 * @param acctId The account id
+	 * @return The cached accounts with the id in any location
+	 */
+	List<AccountMeta> withId( String acctId )
 	{
-		return new ArrayList<>( accounts );
+		List<AccountMeta> result = new ArrayList<>();
+		Set<AccountMeta> matches = logins.get( acctId );
+		if ( matches != null )
+			for ( AccountMeta meta : matches )
+				if ( acctId.equals( meta.getId() ) )
+					result.add( meta );
+		return result;
 	}
 
+	private void unindex( AccountMeta meta, String value )
+	{
+		logins.computeIfPresent( value, ( k, set ) ->
+		{
+			set.remove( meta );
+			return set.isEmpty() ? null : set;
+		} );
+	}
 }
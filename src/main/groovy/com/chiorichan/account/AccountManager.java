@@ -11,14 +11,18 @@ package com.chiorichan.account;
 
 import com.chiorichan.AppConfig;
 import com.chiorichan.Versioning;
+import com.chiorichan.account.auth.AccountAuthenticator;
 import com.chiorichan.account.lang.AccountDescriptiveReason;
 import com.chiorichan.account.lang.AccountException;
 import com.chiorichan.account.lang.AccountResolveResult;
 import com.chiorichan.account.lang.AccountResult;
+import com.chiorichan.event.EventBus;
 import com.chiorichan.event.account.KickEvent;
 import com.chiorichan.lang.ReportingLevel;
 import com.chiorichan.logger.Log;
 import com.chiorichan.services.AppManager;
+import com.chiorichan.tasks.TaskManager;
+import com.chiorichan.tasks.Ticks;
 import com.chiorichan.utils.UtilEncryption;
 import com.chiorichan.utils.UtilObjects;
 import com.google.common.base.Splitter;
@@ -26,11 +30,14 @@ import com.google.common.collect.Sets;
 import org.apache.commons.lang3.Validate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -55,6 +62,12 @@ public final class AccountManager extends AccountEvents
 
 	final AccountList accounts = new AccountList();
 
+	final AccountMissCache misses = new AccountMissCache();
+
+	private final AccountCachePolicy cachePolicy = new AccountCachePolicy();
+
+	private final AccountResolver resolver = new AccountResolver( Math.max( 4, Runtime.getRuntime().availableProcessors() ), 1024 );
+
 	private boolean isDebug = false;
 
 	private int maxLogins = -1;
@@ -85,7 +98,13 @@ public final class AccountManager extends AccountEvents
 		if ( !type.isEnabled() )
 			throw new AccountException( AccountDescriptiveReason.FEATURE_DISABLED, locId, acctId );
 
-		return new AccountMeta( type.getCreator().createAccount( locId, acctId ) );
+		AccountContext context = type.getCreator().createAccount( locId, acctId );
+
+		// After the account exists, so a lookup running meanwhile can't cache the miss again
+		type.getCreator().addKnownIdentifier( acctId );
+		misses.invalidate( acctId );
+
+		return new AccountMeta( context );
 	}
 
 	public AccountMeta getAccountWithException( String locId, String acctId ) throws AccountException
@@ -128,41 +147,40 @@ public final class AccountManager extends AccountEvents
 			return;
 		}
 
-		for ( AccountMeta am : accounts )
-			for ( String key : am.getContext().loginKeys )
-				if ( acctId.equals( am.getString( key ) ) && ( "%".equals( locId ) || locId.equals( am.getLocId() ) ) )
-				{
-					result.setAccount( am );
-					result.setReason( AccountDescriptiveReason.LOGIN_SUCCESS );
-					return;
-				}
-
-		List<AccountResolveResult> results = new ArrayList<>();
-
-		for ( AccountType type : AccountType.getAccountTypes() )
+		AccountMeta cached = accounts.find( locId, acctId );
+		if ( cached != null )
 		{
-			AccountResolveResult resolveResult = type.getCreator().resolveAccount( locId, acctId );
+			result.setAccount( cached );
+			result.setReason( AccountDescriptiveReason.LOGIN_SUCCESS );
+			return;
+		}
 
-			if ( resolveResult == null )
-				continue;
+		if ( misses.isMissing( locId, acctId ) )
+		{
+			result.setReason( AccountDescriptiveReason.INCORRECT_LOGIN );
+			return;
+		}
 
-			if ( resolveResult.getDescriptiveReason().getReportingLevel().isSuccess() )
-			{
-				AccountMeta meta = new AccountMeta( resolveResult.getContext() );
-				accounts.put( meta );
-				result.setAccount( meta );
-				result.setReason( resolveResult.getDescriptiveReason() );
-				return;
-			}
+		long generation = misses.generation();
+		List<AccountType> candidates = new ArrayList<>();
+		for ( AccountType type : AccountType.getAccountTypes() )
+			if ( type.getCreator().mightExist( locId, acctId ) )
+				candidates.add( type );
 
-			if ( Versioning.isDevelopment() )
-				Log.get( this ).info( "Account Creator (" + type.getName() + "): " + resolveResult.getDescriptiveReason().getMessage() + ( resolveResult.getCause() == null ? "" : ", Cause (" + resolveResult.getCause().getClass().getSimpleName() + "): " + resolveResult.getCause().getMessage() ) );
-			if ( Versioning.isDevelopment() && resolveResult.hasCause() )
-				resolveResult.getCause().printStackTrace();
+		List<AccountResolveResult> results = candidates.isEmpty() ? Collections.emptyList() : resolver.resolve( candidates, locId, acctId );
 
-			results.add( resolveResult );
+		if ( results.size() == 1 && results.get( 0 ).getDescriptiveReason().getReportingLevel().isSuccess() )
+		{
+			AccountMeta meta = accounts.put( new AccountMeta( results.get( 0 ).getContext() ) );
+			result.setAccount( meta );
+			result.setReason( results.get( 0 ).getDescriptiveReason() );
+			return;
 		}
 
+		// Only remember definite misses from a creator that was asked, errors must be retried and filter negatives are cheap to repeat
+		if ( !results.isEmpty() && results.stream().allMatch( r -> r.getDescriptiveReason() == AccountDescriptiveReason.INCORRECT_LOGIN ) )
+			misses.put( locId, acctId, generation );
+
 		// Iterate through results looking for the more severe result.
 		for ( ReportingLevel level : new ReportingLevel[] {ReportingLevel.E_ERROR, ReportingLevel.L_SECURITY, ReportingLevel.L_ERROR, ReportingLevel.L_EXPIRED, ReportingLevel.L_DENIED} )
 			for ( AccountResolveResult resolveResult : results )
@@ -182,13 +200,14 @@ public final class AccountManager extends AccountEvents
 		if ( "none".equals( acctId ) || "default".equals( acctId ) || "root".equals( acctId ) )
 			return true;
 
-		for ( AccountMeta am : accounts )
-			for ( String key : am.getContext().loginKeys )
-				if ( acctId.equals( am.getString( key ) ) && ( "%".equals( locId ) || locId.equals( am.getLocId() ) ) )
-					return true;
+		if ( accounts.find( locId, acctId ) != null )
+			return true;
+
+		if ( misses.isMissing( locId, acctId ) )
+			return false;
 
 		for ( AccountType type : AccountType.getAccountTypes() )
-			if ( type.getCreator().accountExists( locId, acctId ) )
+			if ( type.getCreator().mightExist( locId, acctId ) && type.getCreator().accountExists( locId, acctId ) )
 				return true;
 		return false;
 	}
@@ -198,22 +217,7 @@ public final class AccountManager extends AccountEvents
 	{
 		Validate.notNull( partial );
 
-		AccountMeta found = null;
-		String lowerName = partial.toLowerCase();
-		int delta = Integer.MAX_VALUE;
-		for ( AccountMeta meta : getAccounts() )
-			if ( meta.getId().toLowerCase().startsWith( lowerName ) )
-			{
-				int curDelta = meta.getId().length() - lowerName.length();
-				if ( curDelta < delta )
-				{
-					found = meta;
-					delta = curDelta;
-				}
-				if ( curDelta == 0 )
-					break;
-			}
-		return found;
+		return accounts.search.findPrefix( partial );
 	}
 
 	@Deprecated
@@ -229,27 +233,16 @@ public final class AccountManager extends AccountEvents
 
 		if ( query.contains( "|" ) )
 		{
-			List<AccountMeta> result = new ArrayList<>();
+			Set<AccountMeta> result = new LinkedHashSet<>();
 			for ( String s : Splitter.on( "|" ).split( query ) )
 				if ( s != null && !s.isEmpty() )
-					result.addAll( getAccounts( s ) );
-			return result;
+					result.addAll( accounts.search.find( s ) );
+			return new ArrayList<>( result );
 		}
 
-		boolean isLower = query.toLowerCase().equals( query ); // Is query string all lower case?
-
-		return accounts.stream().filter( m ->
-		{
-			String id = isLower ? m.getId().toLowerCase() : m.getId();
-			if ( !UtilObjects.isEmpty( id ) && id.contains( query ) )
-				return true;
-
-			id = isLower ? m.getDisplayName().toLowerCase() : m.getDisplayName();
-			return !UtilObjects.isEmpty( id ) && id.contains( query );
-
-			// TODO Figure out how to further check these values.
-			// Maybe send the check into the Account Creator
-		} ).collect( Collectors.toList() );
+		// TODO Figure out how to further check these values.
+		// Maybe send the check into the Account Creator
+		return accounts.search.find( query );
 	}
 
 	@Deprecated
@@ -260,20 +253,20 @@ public final class AccountManager extends AccountEvents
 
 		if ( value.contains( "|" ) )
 		{
-			List<AccountMeta> result = new ArrayList<>();
+			Set<AccountMeta> result = new LinkedHashSet<>();
 			for ( String s : Splitter.on( "|" ).split( value ) )
 				if ( s != null && !s.isEmpty() )
 					result.addAll( getAccounts( key, s ) );
-			return result;
+			return new ArrayList<>( result );
 		}
 
-		boolean isLower = value.toLowerCase().equals( value ); // Is query string all lower case?
+		String field = accounts.search.searchField( key );
+		if ( field != null )
+			return accounts.search.find( field, value );
 
-		return accounts.stream().filter( m ->
-		{
-			String str = isLower ? m.getString( key ).toLowerCase() : m.getString( key );
-			return !UtilObjects.isEmpty( str ) && str.contains( value );
-		} ).collect( Collectors.toList() );
+		// Keys outside of accounts.searchFields are not indexed
+		boolean isLower = value.toLowerCase().equals( value ); // Is query string all lower case?
+		return accounts.stream().filter( m -> AccountSearchIndex.contains( m.getString( key ), value, isLower ) ).collect( Collectors.toList() );
 	}
 
 	@Deprecated
@@ -294,13 +287,12 @@ public final class AccountManager extends AccountEvents
 		return service == null ? null : getAccountsByLocation( service.getLocation( locId ) );
 	}
 
+	/**
+	 * @return A live view of the cached banned accounts, kept current by the permission events
+	 */
 	public Set<Account> getBanned()
 	{
-		Set<Account> accts = new HashSet<>();
-		for ( AccountMeta meta : accounts )
-			if ( meta.getPermissibleEntity().isBanned() )
-				accts.add( meta );
-		return accts;
+		return accounts.status.banned();
 	}
 
 	public Set<Account> getInitializedAccounts()
@@ -324,13 +316,12 @@ public final class AccountManager extends AccountEvents
 		return "AccountManager";
 	}
 
+	/**
+	 * @return A live view of the cached operator accounts, kept current by the permission events
+	 */
 	public Set<Account> getOperators()
 	{
-		Set<Account> accts = new HashSet<>();
-		for ( AccountMeta meta : accounts )
-			if ( meta.getPermissibleEntity().isOp() )
-				accts.add( meta );
-		return accts;
+		return accounts.status.operators();
 	}
 
 	/**
@@ -347,13 +338,28 @@ public final class AccountManager extends AccountEvents
 		return accts;
 	}
 
+	/**
+	 * @return The policy evicting unused accounts from the cache, e.g., to read its occupancy and eviction statistics
+	 */
+	public AccountCachePolicy getCachePolicy()
+	{
+		return cachePolicy;
+	}
+
+	/**
+	 * @return The engine resolving accounts across the account creators, e.g., to read its per creator statistics
+	 */
+	public AccountResolver getResolver()
+	{
+		return resolver;
+	}
+
+	/**
+	 * @return A live view of the cached whitelisted accounts, kept current by the permission events
+	 */
 	public Set<Account> getWhitelisted()
 	{
-		Set<Account> accts = new HashSet<>();
-		for ( AccountMeta meta : accounts )
-			if ( meta.getPermissibleEntity().isWhitelisted() )
-				accts.add( meta );
-		return accts;
+		return accounts.status.whitelisted();
 	}
 
 	@Override
@@ -361,6 +367,29 @@ public final class AccountManager extends AccountEvents
 	{
 		isDebug = AppConfig.get().getBoolean( "accounts.debug" );
 		maxLogins = AppConfig.get().getInt( "accounts.maxLogins", -1 );
+		misses.setTtl( TimeUnit.SECONDS.toMillis( AppConfig.get().getLong( "accounts.negativeCacheTtl", 30L ) ) );
+		resolver.setTimeout( AppConfig.get().getLong( "accounts.resolveTimeout", 5000L ) );
+		accounts.search.setFields( AppConfig.get().getStringList( "accounts.searchFields", Arrays.asList( "username", "email" ) ) );
+
+		cachePolicy.setIdleTimeout( TimeUnit.MINUTES.toMillis( AppConfig.get().getLong( "accounts.cache.idleTimeout", 30L ) ) );
+		cachePolicy.setMaxEntries( AppConfig.get().getInt( "accounts.cache.maxEntries", 100000 ) );
+
+		TaskManager manager = TaskManager.instanceWithoutException();
+		if ( manager != null )
+			manager.scheduleAsyncRepeatingTask( this, Ticks.MINUTE, Ticks.MINUTE, () ->
+			{
+				cachePolicy.sweep( accounts );
+				try
+				{
+					accounts.status.refresh();
+				}
+				catch ( RuntimeException e )
+				{
+					// Retried on the next read
+				}
+			} );
+
+		EventBus.instance().registerEvents( accounts.status, this );
 	}
 
 	public boolean isDebug()
@@ -378,6 +407,7 @@ public final class AccountManager extends AccountEvents
 	{
 		save();
 		accounts.clear();
+		misses.clear();
 	}
 
 	public void save()
@@ -391,6 +421,9 @@ public final class AccountManager extends AccountEvents
 			{
 				e.printStackTrace();
 			}
+
+		for ( AccountType type : AccountType.getAccountTypes() )
+			type.getCreator().flush();
 	}
 
 	public void shutdown( String reason )
@@ -414,5 +447,7 @@ public final class AccountManager extends AccountEvents
 		}
 
 		save();
+		AccountAuthenticator.TOKEN.flush();
+		resolver.shutdown();
 	}
 }
@@ -27,6 +27,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 
 public final class AccountMeta implements Account, Iterable<Entry<String, Object>>
@@ -78,6 +79,16 @@ public final class AccountMeta implements Account, Iterable<Entry<String, Object
 	 */
 	private boolean keepInMemory = false;
 
+	/**
+	 * Set when metadata changed since the last save, so the cache saves it before evicting us
+	 */
+	private volatile boolean dirty = false;
+
+	/**
+	 * Epoch millis of the last lookup or use, used by the {@link AccountCachePolicy}
+	 */
+	private volatile long lastAccess = System.currentTimeMillis();
+
 	AccountMeta( AccountContext context )
 	{
 		Validate.notNull( context );
@@ -232,21 +243,48 @@ public final class AccountMeta implements Account, Iterable<Entry<String, Object
 		return account;
 	}
 
+	long getLastAccess()
+	{
+		return lastAccess;
+	}
+
 	@Override
 	public AccountInstance instance()
 	{
+		touch();
 		if ( !isInitialized() )
 			initAccount();
 
 		return account.get();
 	}
 
+	private boolean isLoginKey( String key )
+	{
+		for ( String loginKey : context.loginKeys )
+			if ( loginKey.equalsIgnoreCase( key ) )
+				return true;
+		return false;
+	}
+
+	boolean isDirty()
+	{
+		return dirty;
+	}
+
 	@Override
 	public boolean isInitialized()
 	{
 		return account != null && account.get() != null;
 	}
 
+	/**
+	 * @return Is in use or kept in memory, i.e., must not be evicted from the account cache
+	 */
+	boolean isPinned()
+	{
+		return keepInMemory || isInitialized();
+	}
+
 	@Override
 	public Iterator<Entry<String, Object>> iterator()
 	{
@@ -305,21 +343,54 @@ public final class AccountMeta implements Account, Iterable<Entry<String, Object
 	public void requireActivation()
 	{
 		metadata.put( "actnum", UtilEncryption.randomize( "z154f98wfjascvc" ) );
+		dirty = true;
 	}
 
 	public void save() throws AccountException
 	{
-		context.creator().save( this );
+		dirty = false;
+		try
+		{
+			context.creator().save( this );
+		}
+		catch ( AccountException | RuntimeException e )
+		{
+			dirty = true;
+			throw e;
+		}
 	}
 
 	public void set( String key, Object obj )
 	{
 		Validate.notNull( key );
 
-		if ( obj == null )
-			metadata.remove( key );
-		else
-			metadata.put( key, obj );
+		Object old = obj == null ? metadata.remove( key ) : metadata.put( key, obj );
+		if ( Objects.equals( old, obj ) )
+			return;
+		dirty = true;
+
+		AccountManager mgr = AccountManager.instanceWithoutException();
+		if ( mgr == null )
+			return;
+
+		if ( isLoginKey( key ) )
+		{
+			String oldValue = UtilObjects.castToString( old );
+			String newValue = UtilObjects.castToString( obj );
+			if ( !Objects.equals( oldValue, newValue ) )
+			{
+				mgr.accounts.reindex( this, oldValue, newValue );
+				mgr.misses.invalidate( newValue );
+				context.creator().addKnownIdentifier( newValue );
+			}
+		}
+
+		mgr.accounts.updated( this );
+	}
+
+	void touch()
+	{
+		lastAccess = System.currentTimeMillis();
 	}
 
 	@Override
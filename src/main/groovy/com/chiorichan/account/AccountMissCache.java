@@ -0,0 +1,146 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers for a short time the login values no account creator could resolve,
+ * so repeated lookups of nonexistent accounts, e.g., credential stuffing, do not reach the creators again.
+ * <p>
+ * A miss recorded for the % location covers every location. Recording is skipped if anything was invalidated since the lookup started,
+ * so an account created while it was being looked up is never hidden.
+ */
+final class AccountMissCache
+{
+	private static final int MAX_ENTRIES = 100000;
+
+	/**
+	 * Expiry times by login value and location id
+	 */
+	private final Map<String, Map<String, Long>> misses = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private volatile long ttl = TimeUnit.SECONDS.toMillis( 30 );
+
+	void clear()
+	{
+		generation.incrementAndGet();
+		misses.clear();
+	}
+
+	/**
+	 * @return The current generation, to be passed to {@link #put(String, String, long)} once the lookup completes
+	 */
+	long generation()
+	{
+		return generation.get();
+	}
+
+	long getHits()
+	{
+		return hits.get();
+	}
+
+	void invalidate( String value )
+	{
+		generation.incrementAndGet();
+		if ( value != null )
+			misses.remove( value );
+	}
+
+	boolean isMissing( String locId, String value )
+	{
+		if ( locId == null || value == null )
+			return false;
+
+		Map<String, Long> locations = misses.get( value );
+		if ( locations == null )
+			return false;
+
+		long now = System.currentTimeMillis();
+		if ( isMissing( locations, locId, now ) || !"%".equals( locId ) && isMissing( locations, "%", now ) )
+		{
+			hits.incrementAndGet();
+			return true;
+		}
+		return false;
+	}
+
+	private boolean isMissing( Map<String, Long> locations, String locId, long now )
+	{
+		Long expires = locations.get( locId );
+		if ( expires == null )
+			return false;
+		if ( expires > now )
+			return true;
+		locations.remove( locId, expires );
+		return false;
+	}
+
+	private void purge()
+	{
+		long now = System.currentTimeMillis();
+		for ( Iterator<Map<String, Long>> it = misses.values().iterator(); it.hasNext(); )
+		{
+			Map<String, Long> locations = it.next();
+			locations.values().removeIf( expires -> expires <= now );
+			if ( locations.isEmpty() )
+				it.remove();
+		}
+
+		if ( misses.size() >= MAX_ENTRIES )
+			misses.clear();
+	}
+
+	/**
+	 * Records that no creator resolved the value
+	 *
+	 * @param locId      The location id
+	 * @param value      The login value
+	 * @param generation The generation read before the lookup started
+	 */
+	void put( String locId, String value, long generation )
+	{
+		long ttl = this.ttl;
+		if ( ttl <= 0 || locId == null || value == null )
+			return;
+
+		if ( misses.size() >= MAX_ENTRIES )
+			purge();
+
+		misses.computeIfAbsent( value, k -> new ConcurrentHashMap<>() ).put( locId, System.currentTimeMillis() + ttl );
+
+		// Undo if an account was created or changed meanwhile
+		if ( this.generation.get() != generation )
+			misses.remove( value );
+	}
+
+	/**
+	 * Sets how long misses are remembered
+	 *
+	 * @param ttl The time in milliseconds, zero or less disables the cache
+	 */
+	void setTtl( long ttl )
+	{
+		this.ttl = ttl;
+		if ( ttl <= 0 )
+			clear();
+	}
+
+	int size()
+	{
+		return misses.size();
+	}
+}
@@ -0,0 +1,309 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account;
+
+import com.chiorichan.Versioning;
+import com.chiorichan.account.lang.AccountDescriptiveReason;
+import com.chiorichan.account.lang.AccountResolveResult;
+import com.chiorichan.datastore.sql.SQLRouter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queries the account creators concurrently, so a slow creator no longer adds its latency to accounts found by another.
+ * <p>
+ * The first successful result wins and the remaining lookups are cancelled. Creators that did not answer before the deadline
+ * are reported with {@link AccountDescriptiveReason#RESOLVE_TIMEOUT}, the caller picks the most severe of the failures.
+ */
+public final class AccountResolver
+{
+	public static final class CreatorStatistics
+	{
+		private final String name;
+		private final AtomicLong calls = new AtomicLong();
+		private final AtomicLong successes = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong timeouts = new AtomicLong();
+		private final AtomicLong cancelled = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		CreatorStatistics( String name )
+		{
+			this.name = name;
+		}
+
+		public long getCalls()
+		{
+			return calls.get();
+		}
+
+		public long getCancelled()
+		{
+			return cancelled.get();
+		}
+
+		public long getFailures()
+		{
+			return failures.get();
+		}
+
+		/**
+		 * @return The longest time in milliseconds a completed lookup took
+		 */
+		public long getMaxMillis()
+		{
+			return TimeUnit.NANOSECONDS.toMillis( maxNanos.get() );
+		}
+
+		/**
+		 * @return The average time in milliseconds of the completed lookups
+		 */
+		public double getMeanMillis()
+		{
+			long completed = successes.get() + failures.get();
+			return completed == 0 ? 0 : totalNanos.get() / 1000000D / completed;
+		}
+
+		public String getName()
+		{
+			return name;
+		}
+
+		public long getSuccesses()
+		{
+			return successes.get();
+		}
+
+		public long getTimeouts()
+		{
+			return timeouts.get();
+		}
+
+		private void record( AccountResolveResult result, long nanos )
+		{
+			if ( result != null && result.getDescriptiveReason().getReportingLevel().isSuccess() )
+				successes.incrementAndGet();
+			else
+				failures.incrementAndGet();
+
+			totalNanos.addAndGet( nanos );
+			long max = maxNanos.get();
+			while ( nanos > max && !maxNanos.compareAndSet( max, nanos ) )
+				max = maxNanos.get();
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "CreatorStatistics{name=%s,calls=%s,successes=%s,failures=%s,timeouts=%s,cancelled=%s,mean=%.2fms,max=%sms}", name, getCalls(), getSuccesses(), getFailures(), getTimeouts(), getCancelled(), getMeanMillis(), getMaxMillis() );
+		}
+	}
+
+	private final ThreadPoolExecutor pool;
+	private final Map<String, CreatorStatistics> statistics = new ConcurrentHashMap<>();
+	private final AtomicLong rejected = new AtomicLong();
+	private volatile long timeout = 5000;
+
+	AccountResolver( int threads, int queueCapacity )
+	{
+		final AtomicInteger threadIds = new AtomicInteger();
+		ThreadFactory factory = runnable ->
+		{
+			Thread thread = new Thread( runnable, "AccountResolver-" + threadIds.incrementAndGet() );
+			thread.setDaemon( true );
+			return thread;
+		};
+
+		pool = new ThreadPoolExecutor( threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>( queueCapacity ), factory, new ThreadPoolExecutor.AbortPolicy() );
+		pool.allowCoreThreadTimeOut( true );
+	}
+
+	private AccountResolveResult call( AccountType type, CreatorStatistics stats, String locId, String acctId )
+	{
+		long start = System.nanoTime();
+		AccountResolveResult result = null;
+		try
+		{
+			result = type.getCreator().resolveAccount( locId, acctId );
+			return result;
+		}
+		catch ( RuntimeException e )
+		{
+			result = new AccountResolveResult( null, e );
+			return result;
+		}
+		finally
+		{
+			stats.record( result, System.nanoTime() - start );
+
+			if ( Versioning.isDevelopment() && result != null && !result.getDescriptiveReason().getReportingLevel().isSuccess() )
+			{
+				AccountManager.getLogger().info( "Account Creator (" + type.getName() + "): " + result.getDescriptiveReason().getMessage() + ( result.getCause() == null ? "" : ", Cause (" + result.getCause().getClass().getSimpleName() + "): " + result.getCause().getMessage() ) );
+				if ( result.hasCause() )
+					result.getCause().printStackTrace();
+			}
+		}
+	}
+
+	public long getRejected()
+	{
+		return rejected.get();
+	}
+
+	/**
+	 * @return The statistics of each creator queried so far, by account type name
+	 */
+	public Map<String, CreatorStatistics> getStatistics()
+	{
+		return Collections.unmodifiableMap( new TreeMap<>( statistics ) );
+	}
+
+	public long getTimeout()
+	{
+		return timeout;
+	}
+
+	/**
+	 * Resolves the account with each of the account types
+	 *
+	 * @param types  The account types to query, in order of precedence for equally severe failures
+	 * @param locId  The location id
+	 * @param acctId The account id or other login value
+	 * @return The successful result as the only element, otherwise every failure in the order of the types. Creators returning null are omitted.
+	 */
+	List<AccountResolveResult> resolve( List<AccountType> types, String locId, String acctId )
+	{
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeout );
+		AccountResolveResult[] results = new AccountResolveResult[types.size()];
+		Map<Future<AccountResolveResult>, Integer> pending = new ConcurrentHashMap<>();
+		ExecutorCompletionService<AccountResolveResult> completion = new ExecutorCompletionService<>( pool );
+
+		for ( int i = 0; i < types.size(); i++ )
+		{
+			AccountType type = types.get( i );
+			CreatorStatistics stats = statistics.computeIfAbsent( type.getName(), CreatorStatistics::new );
+			stats.calls.incrementAndGet();
+
+			// Without a deadline or with a full queue the creator is queried on the calling thread
+			if ( timeout <= 0 )
+				results[i] = call( type, stats, locId, acctId );
+			else
+				try
+				{
+					pending.put( completion.submit( SQLRouter.carryWrites( () -> call( type, stats, locId, acctId ) ) ), i );
+				}
+				catch ( RejectedExecutionException e )
+				{
+					rejected.incrementAndGet();
+					results[i] = call( type, stats, locId, acctId );
+				}
+
+			if ( isSuccess( results[i] ) )
+			{
+				cancel( types, pending );
+				return Collections.singletonList( results[i] );
+			}
+		}
+
+		try
+		{
+			while ( !pending.isEmpty() )
+			{
+				Future<AccountResolveResult> future = completion.poll( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+				if ( future == null )
+					break;
+
+				int i = pending.remove( future );
+				try
+				{
+					results[i] = future.get();
+				}
+				catch ( ExecutionException e )
+				{
+					results[i] = new AccountResolveResult( null, e.getCause() );
+				}
+
+				if ( isSuccess( results[i] ) )
+				{
+					cancel( types, pending );
+					return Collections.singletonList( results[i] );
+				}
+			}
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		// Whatever is still pending missed the deadline
+		for ( int i : pending.values() )
+		{
+			statistics.get( types.get( i ).getName() ).timeouts.incrementAndGet();
+			results[i] = new AccountResolveResult( null, AccountDescriptiveReason.RESOLVE_TIMEOUT );
+		}
+		for ( Future<AccountResolveResult> future : pending.keySet() )
+			future.cancel( true );
+
+		List<AccountResolveResult> failures = new ArrayList<>();
+		for ( AccountResolveResult result : results )
+			if ( result != null )
+				failures.add( result );
+		return failures;
+	}
+
+	private void cancel( List<AccountType> types, Map<Future<AccountResolveResult>, Integer> pending )
+	{
+		for ( Map.Entry<Future<AccountResolveResult>, Integer> entry : pending.entrySet() )
+			if ( entry.getKey().cancel( true ) )
+				statistics.get( types.get( entry.getValue() ).getName() ).cancelled.incrementAndGet();
+	}
+
+	private static boolean isSuccess( AccountResolveResult result )
+	{
+		return result != null && result.getDescriptiveReason().getReportingLevel().isSuccess();
+	}
+
+	/**
+	 * Sets the overall time allowed to resolve an account
+	 *
+	 * @param timeout The time in milliseconds, zero or less queries the creators one after the other without a deadline
+	 */
+	public void setTimeout( long timeout )
+	{
+		this.timeout = timeout;
+	}
+
+	void shutdown()
+	{
+		pool.shutdownNow();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "AccountResolver{threads=%s,active=%s,queued=%s,rejected=%s,timeout=%sms,creators=%s}", pool.getMaximumPoolSize(), pool.getActiveCount(), pool.getQueue().size(), getRejected(), timeout, getStatistics().values() );
+	}
+}
@@ -0,0 +1,305 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+
+/**
+ * Search index over the cached accounts, used by the account queries of {@link AccountManager}.
+ * <p>
+ * Every account is indexed by the trigrams of its lowercase id, display name and search fields, so substring queries only verify
+ * the accounts sharing all trigrams of the query. Ids are also kept sorted for prefix completion.
+ * Writes are synchronized, queries are not.
+ */
+class AccountSearchIndex
+{
+	private static final int GRAM = 3;
+
+	/**
+	 * The values of one account as of its last update
+	 */
+	static final class Entry
+	{
+		final String id;
+		final String displayName;
+		final Map<String, String> fields;
+
+		Entry( String id, String displayName, Map<String, String> fields )
+		{
+			this.id = id;
+			this.displayName = displayName;
+			this.fields = fields;
+		}
+
+		@Override
+		public boolean equals( Object obj )
+		{
+			if ( !( obj instanceof Entry ) )
+				return false;
+			Entry other = ( Entry ) obj;
+			return Objects.equals( id, other.id ) && Objects.equals( displayName, other.displayName ) && fields.equals( other.fields );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash( id, displayName, fields );
+		}
+
+		Set<String> grams()
+		{
+			Set<String> grams = new HashSet<>();
+			addGrams( grams, id );
+			addGrams( grams, displayName );
+			for ( String value : fields.values() )
+				addGrams( grams, value );
+			return grams;
+		}
+	}
+
+	private static void addGrams( Set<String> grams, String value )
+	{
+		if ( value == null )
+			return;
+		String lower = value.toLowerCase();
+		for ( int i = 0; i + GRAM <= lower.length(); i++ )
+			grams.add( lower.substring( i, i + GRAM ) );
+	}
+
+	/**
+	 * Matches the original query semantics, an all lowercase query is case insensitive
+	 */
+	static boolean contains( String value, String query, boolean ignoreCase )
+	{
+		if ( value == null || value.isEmpty() )
+			return false;
+		return ( ignoreCase ? value.toLowerCase() : value ).contains( query );
+	}
+
+	private final Map<AccountMeta, Entry> entries = new ConcurrentHashMap<>();
+	private final Map<String, Set<AccountMeta>> grams = new ConcurrentHashMap<>();
+	private final NavigableMap<String, Set<AccountMeta>> ids = new ConcurrentSkipListMap<>();
+	private volatile List<String> fields = Arrays.asList( "username", "email" );
+
+	synchronized void clear()
+	{
+		entries.clear();
+		grams.clear();
+		ids.clear();
+	}
+
+	private Entry entry( AccountMeta meta )
+	{
+		Map<String, String> values = new HashMap<>();
+		for ( String field : fields )
+		{
+			String value = meta.getString( field );
+			if ( value != null && !value.isEmpty() )
+				values.put( field, value );
+		}
+
+		String displayName;
+		try
+		{
+			displayName = meta.getDisplayName();
+		}
+		catch ( RuntimeException e )
+		{
+			displayName = null;
+		}
+
+		return new Entry( meta.getId(), displayName, values );
+	}
+
+	/**
+	 * Finds the accounts whose id or display name contains the query
+	 *
+	 * @param query The query, case insensitive if all lowercase
+	 * @return The matching accounts
+	 */
+	List<AccountMeta> find( String query )
+	{
+		boolean ignoreCase = query.toLowerCase().equals( query );
+		return search( query, e -> contains( e.id, query, ignoreCase ) || contains( e.displayName, query, ignoreCase ) );
+	}
+
+	/**
+	 * Finds the accounts whose value for the search field contains the query
+	 *
+	 * @param field The search field, as returned by {@link #searchField(String)}
+	 * @param query The query, case insensitive if all lowercase
+	 * @return The matching accounts
+	 */
+	List<AccountMeta> find( String field, String query )
+	{
+		boolean ignoreCase = query.toLowerCase().equals( query );
+		return search( query, e -> contains( e.fields.get( field ), query, ignoreCase ) );
+	}
+
+	/**
+	 * Finds the account with the shortest id starting with the prefix, case insensitive
+	 *
+	 * @param prefix The prefix
+	 * @return The account or null if none matches
+	 */
+	AccountMeta findPrefix( String prefix )
+	{
+		String lower = prefix.toLowerCase();
+		Set<AccountMeta> shortest = null;
+		int length = Integer.MAX_VALUE;
+		for ( Map.Entry<String, Set<AccountMeta>> entry : ids.subMap( lower, true, lower + Character.MAX_VALUE, true ).entrySet() )
+			if ( entry.getKey().startsWith( lower ) && entry.getKey().length() < length )
+			{
+				shortest = entry.getValue();
+				length = entry.getKey().length();
+				if ( length == lower.length() )
+					break;
+			}
+
+		if ( shortest != null )
+			for ( AccountMeta meta : shortest )
+				return meta;
+		return null;
+	}
+
+	List<String> getFields()
+	{
+		return fields;
+	}
+
+	/**
+	 * Meta keys are case insensitive, so is this lookup
+	 *
+	 * @param key The meta key
+	 * @return The search field matching the key or null if the key is not indexed
+	 */
+	String searchField( String key )
+	{
+		for ( String field : fields )
+			if ( field.equalsIgnoreCase( key ) )
+				return field;
+		return null;
+	}
+
+	synchronized void remove( AccountMeta meta )
+	{
+		Entry old = entries.remove( meta );
+		if ( old != null )
+			unindex( meta, old );
+	}
+
+	private List<AccountMeta> search( String query, Predicate<Entry> matcher )
+	{
+		Set<String> queryGrams = new HashSet<>();
+		addGrams( queryGrams, query );
+
+		Collection<AccountMeta> candidates;
+		if ( queryGrams.isEmpty() )
+			// Too short for trigrams, verify every account against the cached values
+			candidates = entries.keySet();
+		else
+		{
+			// Start from the rarest trigram, every trigram of the query must be present
+			List<Set<AccountMeta>> postings = new ArrayList<>();
+			for ( String gram : queryGrams )
+			{
+				Set<AccountMeta> posting = grams.get( gram );
+				if ( posting == null )
+					return new ArrayList<>();
+				postings.add( posting );
+			}
+			postings.sort( ( a, b ) -> Integer.compare( a.size(), b.size() ) );
+
+			candidates = new ArrayList<>();
+			for ( AccountMeta meta : postings.get( 0 ) )
+			{
+				boolean all = true;
+				for ( int i = 1; i < postings.size() && all; i++ )
+					all = postings.get( i ).contains( meta );
+				if ( all )
+					candidates.add( meta );
+			}
+		}
+
+		List<AccountMeta> result = new ArrayList<>();
+		for ( AccountMeta meta : candidates )
+		{
+			Entry entry = entries.get( meta );
+			if ( entry != null && matcher.test( entry ) )
+				result.add( meta );
+		}
+		return result;
+	}
+
+	/**
+	 * Sets which meta keys are searchable besides the id and display name, reindexing every account
+	 *
+	 * @param fields The meta keys
+	 */
+	synchronized void setFields( List<String> fields )
+	{
+		this.fields = Collections.unmodifiableList( new ArrayList<>( fields ) );
+
+		List<AccountMeta> metas = new ArrayList<>( entries.keySet() );
+		clear();
+		for ( AccountMeta meta : metas )
+			update( meta );
+	}
+
+	private void unindex( AccountMeta meta, Entry entry )
+	{
+		for ( String gram : entry.grams() )
+			grams.computeIfPresent( gram, ( k, set ) ->
+			{
+				set.remove( meta );
+				return set.isEmpty() ? null : set;
+			} );
+		if ( entry.id != null )
+			ids.computeIfPresent( entry.id.toLowerCase(), ( k, set ) ->
+			{
+				set.remove( meta );
+				return set.isEmpty() ? null : set;
+			} );
+	}
+
+	/**
+	 * Indexes the account or refreshes its values, a no-op if none of them changed
+	 *
+	 * @param meta The account
+	 */
+	synchronized void update( AccountMeta meta )
+	{
+		Entry entry = entry( meta );
+		Entry old = entries.put( meta, entry );
+		if ( entry.equals( old ) )
+			return;
+
+		if ( old != null )
+			unindex( meta, old );
+
+		for ( String gram : entry.grams() )
+			grams.computeIfAbsent( gram, k -> ConcurrentHashMap.newKeySet() ).add( meta );
+		if ( entry.id != null )
+			ids.computeIfAbsent( entry.id.toLowerCase(), k -> ConcurrentHashMap.newKeySet() ).add( meta );
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account;
+
+import com.chiorichan.event.EventHandler;
+import com.chiorichan.event.Listener;
+import com.chiorichan.permission.PermissibleEntity;
+import com.chiorichan.permission.PermissibleGroup;
+import com.chiorichan.permission.event.PermissibleEntityEvent;
+import com.chiorichan.permission.event.PermissibleSystemEvent;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the banned, operator and whitelisted accounts of {@link AccountList}, used by {@link AccountManager#getBanned()} and the like.
+ * <p>
+ * Accounts are evaluated when they are cached and again when a permission event names them, instead of checking the permissions of every
+ * cached account on each call. A group or system event, e.g., a reload, changes the status of any account, so it marks them all for evaluation.
+ * Evaluations are queued by the events and run on the next read or sweep, the sets are live views which are safe to iterate while they change.
+ */
+class AccountStatusIndex implements Listener
+{
+	private final AccountList accounts;
+
+	private final Set<Account> banned = ConcurrentHashMap.newKeySet();
+	private final Set<Account> operators = ConcurrentHashMap.newKeySet();
+	private final Set<Account> whitelisted = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Accounts waiting for evaluation
+	 */
+	private final Set<AccountMeta> pending = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Set when every cached account waits for evaluation
+	 */
+	private volatile boolean stale = false;
+
+	AccountStatusIndex( AccountList accounts )
+	{
+		this.accounts = accounts;
+	}
+
+	void add( AccountMeta meta )
+	{
+		pending.add( meta );
+	}
+
+	Set<Account> banned()
+	{
+		refresh();
+		return Collections.unmodifiableSet( banned );
+	}
+
+	synchronized void clear()
+	{
+		stale = false;
+		pending.clear();
+		banned.clear();
+		operators.clear();
+		whitelisted.clear();
+	}
+
+	/**
+	 * Marks every cached account for evaluation
+	 */
+	void invalidate()
+	{
+		stale = true;
+	}
+
+	@EventHandler
+	public void onPermissibleEntityEvent( PermissibleEntityEvent event )
+	{
+		PermissibleEntity entity = event.getEntity();
+		if ( entity instanceof PermissibleGroup )
+			invalidate();
+		else if ( entity != null )
+			pending.addAll( accounts.withId( entity.getId() ) );
+	}
+
+	@EventHandler
+	public void onPermissibleSystemEvent( PermissibleSystemEvent event )
+	{
+		invalidate();
+	}
+
+	Set<Account> operators()
+	{
+		refresh();
+		return Collections.unmodifiableSet( operators );
+	}
+
+	/**
+	 * Evaluates the accounts waiting for it, returns right away if none are
+	 */
+	void refresh()
+	{
+		if ( stale || !pending.isEmpty() )
+			synchronized ( this )
+			{
+				if ( stale )
+				{
+					stale = false;
+					for ( AccountMeta meta : accounts )
+						pending.add( meta );
+				}
+
+				for ( Iterator<AccountMeta> it = pending.iterator(); it.hasNext(); )
+				{
+					AccountMeta meta = it.next();
+					it.remove();
+
+					boolean isBanned;
+					boolean isOp;
+					boolean isWhitelisted;
+					try
+					{
+						PermissibleEntity entity = meta.getPermissibleEntity();
+						isBanned = entity.isBanned();
+						isOp = entity.isOp();
+						isWhitelisted = entity.isWhitelisted();
+					}
+					catch ( RuntimeException e )
+					{
+						// Most likely the permission manager is not available yet, try again on the next read
+						pending.add( meta );
+						throw e;
+					}
+
+					// Removed from the cache meanwhile
+					if ( !accounts.contains( meta ) )
+						continue;
+
+					update( banned, meta, isBanned );
+					update( operators, meta, isOp );
+					update( whitelisted, meta, isWhitelisted );
+				}
+			}
+	}
+
+	synchronized void remove( AccountMeta meta )
+	{
+		pending.remove( meta );
+		banned.remove( meta );
+		operators.remove( meta );
+		whitelisted.remove( meta );
+	}
+
+	private void update( Set<Account> set, AccountMeta meta, boolean member )
+	{
+		if ( member )
+			set.add( meta );
+		else
+			set.remove( meta );
+	}
+
+	Set<Account> whitelisted()
+	{
+		refresh();
+		return Collections.unmodifiableSet( whitelisted );
+	}
+}
@@ -0,0 +1,24 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account.auth;
+
+/**
+ * Hashes new credentials in addition to verifying them, used as the preferred hasher of {@link CredentialHashing}
+ */
+public interface CredentialHasher extends CredentialVerifier
+{
+	/**
+	 * Hashes the secret with a new salt
+	 *
+	 * @param secret The secret
+	 * @return The encoded hash including the algorithm and parameters
+	 */
+	String hash( String secret );
+}
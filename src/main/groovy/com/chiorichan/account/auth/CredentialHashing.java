@@ -0,0 +1,328 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account.auth;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs the credential hashing on a few dedicated threads, so a burst of logins queues up here instead of occupying every request thread.
+ * <p>
+ * Once the queue is full further work is rejected right away, the caller reports the login as busy rather than waiting.
+ * New credentials are hashed with the preferred {@link CredentialHasher}, stored credentials are verified with whichever registered {@link CredentialVerifier} can verify them.
+ */
+public final class CredentialHashing
+{
+	public static final class AlgorithmStatistics
+	{
+		private final String algorithm;
+		private final AtomicLong hashes = new AtomicLong();
+		private final AtomicLong verifications = new AtomicLong();
+		private final AtomicLong mismatches = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		AlgorithmStatistics( String algorithm )
+		{
+			this.algorithm = algorithm;
+		}
+
+		public String getAlgorithm()
+		{
+			return algorithm;
+		}
+
+		public long getHashes()
+		{
+			return hashes.get();
+		}
+
+		/**
+		 * @return The longest time in milliseconds a hash or verification took
+		 */
+		public long getMaxMillis()
+		{
+			return TimeUnit.NANOSECONDS.toMillis( maxNanos.get() );
+		}
+
+		/**
+		 * @return The average time in milliseconds of the hashes and verifications
+		 */
+		public double getMeanMillis()
+		{
+			long count = hashes.get() + verifications.get();
+			return count == 0 ? 0 : totalNanos.get() / 1000000D / count;
+		}
+
+		public long getMismatches()
+		{
+			return mismatches.get();
+		}
+
+		public long getVerifications()
+		{
+			return verifications.get();
+		}
+
+		private void record( long nanos )
+		{
+			totalNanos.addAndGet( nanos );
+			long max = maxNanos.get();
+			while ( nanos > max && !maxNanos.compareAndSet( max, nanos ) )
+				max = maxNanos.get();
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "AlgorithmStatistics{algorithm=%s,hashes=%s,verifications=%s,mismatches=%s,mean=%.2fms,max=%sms}", algorithm, getHashes(), getVerifications(), getMismatches(), getMeanMillis(), getMaxMillis() );
+		}
+	}
+
+	private final ThreadPoolExecutor pool;
+	private final List<CredentialVerifier> verifiers = new CopyOnWriteArrayList<>();
+	private final Map<String, AlgorithmStatistics> statistics = new ConcurrentHashMap<>();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong timeouts = new AtomicLong();
+	private volatile CredentialHasher preferred;
+	private volatile long timeout = 10000;
+
+	CredentialHashing( CredentialHasher preferred, int threads, int queueCapacity )
+	{
+		final AtomicInteger threadIds = new AtomicInteger();
+		ThreadFactory factory = runnable ->
+		{
+			Thread thread = new Thread( runnable, "CredentialHashing-" + threadIds.incrementAndGet() );
+			thread.setDaemon( true );
+			return thread;
+		};
+
+		pool = new ThreadPoolExecutor( threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>( queueCapacity ), factory, new ThreadPoolExecutor.AbortPolicy() );
+		pool.allowCoreThreadTimeOut( true );
+
+		setPreferred( preferred );
+	}
+
+	private <R> R await( CompletableFuture<R> future ) throws TimeoutException, InterruptedException
+	{
+		try
+		{
+			return future.get( timeout, TimeUnit.MILLISECONDS );
+		}
+		catch ( TimeoutException e )
+		{
+			timeouts.incrementAndGet();
+			future.cancel( true );
+			throw e;
+		}
+		catch ( ExecutionException e )
+		{
+			if ( e.getCause() instanceof RuntimeException )
+				throw ( RuntimeException ) e.getCause();
+			throw new IllegalStateException( e.getCause() );
+		}
+	}
+
+	/**
+	 * @return The preferred hasher
+	 */
+	public CredentialHasher getPreferred()
+	{
+		return preferred;
+	}
+
+	public long getRejected()
+	{
+		return rejected.get();
+	}
+
+	/**
+	 * @return The statistics of each algorithm used so far
+	 */
+	public Map<String, AlgorithmStatistics> getStatistics()
+	{
+		return Collections.unmodifiableMap( new TreeMap<>( statistics ) );
+	}
+
+	public long getTimeout()
+	{
+		return timeout;
+	}
+
+	public long getTimeouts()
+	{
+		return timeouts.get();
+	}
+
+	/**
+	 * Hashes the secret with the preferred hasher, waiting for the result
+	 *
+	 * @param secret The secret
+	 * @return The encoded hash
+	 * @throws RejectedExecutionException If the queue is full
+	 * @throws TimeoutException           If the hash did not complete in time
+	 * @throws InterruptedException       If interrupted while waiting
+	 */
+	public String hash( String secret ) throws TimeoutException, InterruptedException
+	{
+		return await( hashAsync( secret ) );
+	}
+
+	/**
+	 * Hashes the secret with the preferred hasher
+	 *
+	 * @param secret The secret
+	 * @return The future encoded hash
+	 * @throws RejectedExecutionException If the queue is full
+	 */
+	public CompletableFuture<String> hashAsync( String secret )
+	{
+		CredentialHasher hasher = preferred;
+		AlgorithmStatistics stats = stats( hasher );
+		return submit( () ->
+		{
+			long start = System.nanoTime();
+			try
+			{
+				return hasher.hash( secret );
+			}
+			finally
+			{
+				stats.hashes.incrementAndGet();
+				stats.record( System.nanoTime() - start );
+			}
+		} );
+	}
+
+	/**
+	 * @param encoded The stored credential
+	 * @return The verifier that can verify the stored credential, null if none can
+	 */
+	public CredentialVerifier verifierFor( String encoded )
+	{
+		for ( CredentialVerifier verifier : verifiers )
+			if ( verifier.canVerify( encoded ) )
+				return verifier;
+		return null;
+	}
+
+	/**
+	 * @param encoded The stored credential
+	 * @return True if the stored credential was not produced by the preferred hasher with its current parameters
+	 */
+	public boolean needsRehash( String encoded )
+	{
+		return !preferred.canVerify( encoded ) || preferred.needsRehash( encoded );
+	}
+
+	/**
+	 * Adds a verifier for stored credentials, verifiers added first are asked first
+	 *
+	 * @param verifier The verifier
+	 */
+	public void register( CredentialVerifier verifier )
+	{
+		if ( !verifiers.contains( verifier ) )
+			verifiers.add( verifier );
+	}
+
+	/**
+	 * Sets the hasher for new credentials, stored credentials of other verifiers are upgraded on their next verification
+	 *
+	 * @param preferred The hasher
+	 */
+	public void setPreferred( CredentialHasher preferred )
+	{
+		verifiers.remove( preferred );
+		verifiers.add( 0, preferred );
+		this.preferred = preferred;
+	}
+
+	/**
+	 * @param timeout The time in milliseconds a caller waits for a hash or verification
+	 */
+	public void setTimeout( long timeout )
+	{
+		this.timeout = timeout;
+	}
+
+	private AlgorithmStatistics stats( CredentialVerifier verifier )
+	{
+		return statistics.computeIfAbsent( verifier.getAlgorithm(), AlgorithmStatistics::new );
+	}
+
+	private <R> CompletableFuture<R> submit( Supplier<R> task )
+	{
+		try
+		{
+			return CompletableFuture.supplyAsync( task, pool );
+		}
+		catch ( RejectedExecutionException e )
+		{
+			rejected.incrementAndGet();
+			throw e;
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "CredentialHashing{preferred=%s,threads=%s,active=%s,queued=%s,rejected=%s,timeouts=%s,timeout=%sms,algorithms=%s}", preferred.getAlgorithm(), pool.getMaximumPoolSize(), pool.getActiveCount(), pool.getQueue().size(), getRejected(), getTimeouts(), timeout, getStatistics().values() );
+	}
+
+	/**
+	 * Compares the secrets with the stored credential, one after the other on a hashing thread
+	 *
+	 * @param encoded The stored credential
+	 * @param secrets The secrets to try
+	 * @return The secret that matched or null if none did or no verifier can verify the stored credential
+	 * @throws RejectedExecutionException If the queue is full
+	 * @throws TimeoutException           If the verification did not complete in time
+	 * @throws InterruptedException       If interrupted while waiting
+	 */
+	public String verify( String encoded, List<String> secrets ) throws TimeoutException, InterruptedException
+	{
+		CredentialVerifier verifier = verifierFor( encoded );
+		if ( verifier == null )
+			return null;
+
+		AlgorithmStatistics stats = stats( verifier );
+		return await( submit( () ->
+		{
+			for ( String secret : secrets )
+			{
+				long start = System.nanoTime();
+				boolean match = verifier.verify( secret, encoded );
+				stats.verifications.incrementAndGet();
+				stats.record( System.nanoTime() - start );
+
+				if ( match )
+					return secret;
+				stats.mismatches.incrementAndGet();
+			}
+			return null;
+		} ) );
+	}
+}
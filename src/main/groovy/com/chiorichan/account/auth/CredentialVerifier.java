@@ -0,0 +1,42 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account.auth;
+
+/**
+ * Verifies stored credentials, registered with {@link CredentialHashing}
+ */
+public interface CredentialVerifier
+{
+	/**
+	 * @return The algorithm name used for the statistics, e.g., pbkdf2-sha256
+	 */
+	String getAlgorithm();
+
+	/**
+	 * @param encoded The stored credential
+	 * @return True if the stored credential can be verified by this verifier
+	 */
+	boolean canVerify( String encoded );
+
+	/**
+	 * @param encoded The stored credential
+	 * @return True if the stored credential should be hashed again with the current parameters
+	 */
+	boolean needsRehash( String encoded );
+
+	/**
+	 * Compares the secret with the stored credential in constant time
+	 *
+	 * @param secret  The secret
+	 * @param encoded The stored credential
+	 * @return True if they match
+	 */
+	boolean verify( String secret, String encoded );
+}
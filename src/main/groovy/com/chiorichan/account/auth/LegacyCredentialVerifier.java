@@ -0,0 +1,63 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account.auth;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.regex.Pattern;
+
+/**
+ * Verifies the passwords stored before hashing, either in plain text or as MD5 hex.
+ * They always need a rehash, new passwords are hashed by the preferred {@link CredentialHasher}.
+ */
+final class LegacyCredentialVerifier implements CredentialVerifier
+{
+	private static final Pattern HASHED = Pattern.compile( "\\$[a-z0-9-]+\\$.+" );
+
+	private static boolean equals( String a, String b )
+	{
+		return MessageDigest.isEqual( a.getBytes( StandardCharsets.UTF_8 ), b.getBytes( StandardCharsets.UTF_8 ) );
+	}
+
+	/**
+	 * Anything but the {@code $<algorithm>$...} format of hashes
+	 */
+	@Override
+	public boolean canVerify( String encoded )
+	{
+		return encoded != null && !HASHED.matcher( encoded ).matches();
+	}
+
+	@Override
+	public String getAlgorithm()
+	{
+		return "legacy";
+	}
+
+	@Override
+	public boolean needsRehash( String encoded )
+	{
+		return true;
+	}
+
+	/**
+	 * The secret is the MD5 hex of the password, it matches the MD5 hex stored or the MD5 hex of the plain text stored
+	 */
+	@Override
+	public boolean verify( String secret, String encoded )
+	{
+		// Evaluate both, so the time does not tell which form is stored
+		boolean md5 = equals( encoded, secret );
+		boolean plain = equals( DigestUtils.md5Hex( encoded ), secret );
+		return md5 | plain;
+	}
+}
@@ -0,0 +1,391 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account.auth;
+
+import com.chiorichan.account.AccountManager;
+import com.chiorichan.datastore.sql.bases.SQLDatastore;
+import com.chiorichan.datastore.sql.query.SQLQuerySelect;
+import com.chiorichan.tasks.Timings;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the login tokens in memory, so resuming a login no longer queries the {@code accounts_token} table.
+ * <p>
+ * Tokens are loaded from the table the first time they are used, issued, used and deleted tokens are written back in batches by {@link #flush()}.
+ * Tokens are released from memory by a timing wheel once they expired and their changes were written.
+ * The table is assumed not to be changed by anyone else while tokens are cached, a token used or deleted by another instance sharing the database
+ * would stay valid here, so {@link OnetimeTokenAccountAuthenticator} only uses the store when {@code sessions.tokenCache} is enabled.
+ */
+public final class LoginTokenStore
+{
+	/**
+	 * Each slot of the wheel covers one tick, tokens expiring further out than one turn are passed over until their turn
+	 */
+	private static final int WHEEL_SLOTS = 1024;
+	private static final int TICK_SECONDS = 60;
+	private static final int BATCH_SIZE = 500;
+
+	static final class Token
+	{
+		final String acctId;
+		final String token;
+
+		/**
+		 * Epoch seconds, zero once used and negative for tokens that never expire
+		 */
+		long expires;
+		boolean deleted = false;
+		boolean persisted;
+
+		long evictTick = -1;
+		int slot = -1;
+
+		Token( String acctId, String token, long expires, boolean persisted )
+		{
+			this.acctId = acctId;
+			this.token = token;
+			this.expires = expires;
+			this.persisted = persisted;
+		}
+
+		synchronized boolean isExpired( long now )
+		{
+			return expires >= 0 && expires < now;
+		}
+	}
+
+	private static String key( String acctId, String token )
+	{
+		return acctId + "\u0000" + token;
+	}
+
+	private static long tick( long epoch )
+	{
+		return epoch / TICK_SECONDS;
+	}
+
+	private final SQLDatastore db;
+	private final String table;
+
+	private final Map<String, Token> tokens = new ConcurrentHashMap<>();
+	private final Set<Token> dirty = ConcurrentHashMap.newKeySet();
+	private final Set<Token> writing = ConcurrentHashMap.newKeySet();
+	private final List<Set<Token>> wheel = new ArrayList<>( WHEEL_SLOTS );
+	private long currentTick = tick( Timings.epoch() );
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong writeFailures = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	LoginTokenStore( SQLDatastore db, String table )
+	{
+		this.db = db;
+		this.table = table;
+
+		for ( int i = 0; i < WHEEL_SLOTS; i++ )
+			wheel.add( ConcurrentHashMap.newKeySet() );
+	}
+
+	/**
+	 * Releases the tokens due in the ticks passed since the last call, tokens with unwritten changes are kept until the next tick
+	 *
+	 * @param now The epoch seconds
+	 */
+	void advance( long now )
+	{
+		synchronized ( wheel )
+		{
+			long target = tick( now );
+			// After a long pause one turn of the wheel visits every slot
+			long from = Math.max( currentTick + 1, target - WHEEL_SLOTS + 1 );
+
+			for ( long t = from; t <= target; t++ )
+			{
+				Iterator<Token> it = wheel.get( ( int ) ( t % WHEEL_SLOTS ) ).iterator();
+				while ( it.hasNext() )
+				{
+					Token token = it.next();
+					if ( token.evictTick > target )
+						continue;
+
+					it.remove();
+					token.slot = -1;
+					// Loading it again before the change is written would read the old row
+					if ( dirty.contains( token ) || writing.contains( token ) )
+						place( token, target + 1 );
+					else if ( tokens.remove( key( token.acctId, token.token ), token ) )
+						evictions.incrementAndGet();
+				}
+			}
+
+			currentTick = Math.max( currentTick, target );
+		}
+	}
+
+	/**
+	 * Uses up the token
+	 *
+	 * @return True if the token was still valid
+	 */
+	boolean consume( Token token )
+	{
+		synchronized ( token )
+		{
+			if ( token.deleted || token.isExpired( Timings.epoch() ) )
+				return false;
+			token.expires = 0;
+		}
+
+		changed( token );
+		schedule( token, Timings.epoch() );
+		return true;
+	}
+
+	private void changed( Token token )
+	{
+		dirty.add( token );
+	}
+
+	/**
+	 * Deletes the token
+	 *
+	 * @return True if the token existed and was not deleted before
+	 */
+	boolean delete( String acctId, String token ) throws SQLException
+	{
+		Token found = get( acctId, token );
+		if ( found == null )
+			return false;
+
+		synchronized ( found )
+		{
+			if ( found.deleted )
+				return false;
+			found.deleted = true;
+		}
+
+		changed( found );
+		schedule( found, Timings.epoch() );
+		return true;
+	}
+
+	/**
+	 * Writes the changed tokens to the table, one transaction per batch.
+	 * Tokens of a failed batch stay changed and are written by the next flush.
+	 *
+	 * @return The number of tokens written
+	 */
+	synchronized int flush()
+	{
+		int written = 0;
+		while ( !dirty.isEmpty() )
+		{
+			List<Token> batch = new ArrayList<>();
+			Iterator<Token> it = dirty.iterator();
+			while ( it.hasNext() && batch.size() < BATCH_SIZE )
+			{
+				Token token = it.next();
+				writing.add( token );
+				batch.add( token );
+				it.remove();
+			}
+
+			// Snapshot first, the tokens keep changing while the batch is written
+			int size = batch.size();
+			boolean[] deleted = new boolean[size];
+			boolean[] persisted = new boolean[size];
+			long[] expires = new long[size];
+			for ( int i = 0; i < size; i++ )
+			{
+				Token token = batch.get( i );
+				synchronized ( token )
+				{
+					deleted[i] = token.deleted;
+					persisted[i] = token.persisted;
+					expires[i] = token.expires;
+				}
+			}
+
+			try
+			{
+				db.transaction( tx ->
+				{
+					for ( int i = 0; i < size; i++ )
+					{
+						Token token = batch.get( i );
+						if ( deleted[i] )
+						{
+							if ( persisted[i] )
+								tx.table( table ).delete().where( "acctId" ).matches( token.acctId ).and().where( "token" ).matches( token.token ).execute();
+						}
+						else if ( persisted[i] )
+							tx.table( table ).update().value( "expires", expires[i] ).where( "acctId" ).matches( token.acctId ).and().where( "token" ).matches( token.token ).execute();
+						else
+							tx.table( table ).insert().value( "acctId", token.acctId ).value( "token", token.token ).value( "expires", expires[i] ).execute();
+					}
+					return null;
+				} );
+
+				for ( int i = 0; i < size; i++ )
+				{
+					Token token = batch.get( i );
+					synchronized ( token )
+					{
+						token.persisted = !deleted[i];
+					}
+				}
+
+				written += size;
+				writes.addAndGet( size );
+			}
+			catch ( SQLException | RuntimeException e )
+			{
+				writeFailures.addAndGet( size );
+				dirty.addAll( batch );
+				AccountManager.getLogger().severe( "Failed to write " + size + " login token(s) to the database, they will be retried.", e );
+				break;
+			}
+			finally
+			{
+				writing.removeAll( batch );
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Finds the token, loading it from the table if it is not in memory
+	 *
+	 * @return The token or null if there is none or it was deleted
+	 */
+	Token get( String acctId, String token ) throws SQLException
+	{
+		String key = key( acctId, token );
+		Token found = tokens.get( key );
+
+		if ( found == null )
+		{
+			SQLQuerySelect select = db.table( table ).select().where( "acctId" ).matches( acctId ).and().where( "token" ).matches( token ).limit( 1 ).execute();
+			if ( select.rowCount() == 0 )
+				return null;
+
+			ResultSet rs = select.result();
+			Token loaded = new Token( acctId, token, rs.getLong( "expires" ), true );
+
+			found = tokens.putIfAbsent( key, loaded );
+			if ( found == null )
+			{
+				found = loaded;
+				loads.incrementAndGet();
+				schedule( found, Timings.epoch() );
+			}
+		}
+		else
+			hits.incrementAndGet();
+
+		synchronized ( found )
+		{
+			return found.deleted ? null : found;
+		}
+	}
+
+	public long getEvictions()
+	{
+		return evictions.get();
+	}
+
+	public long getHits()
+	{
+		return hits.get();
+	}
+
+	public long getLoads()
+	{
+		return loads.get();
+	}
+
+	public int getPending()
+	{
+		return dirty.size();
+	}
+
+	public long getWriteFailures()
+	{
+		return writeFailures.get();
+	}
+
+	public long getWrites()
+	{
+		return writes.get();
+	}
+
+	/**
+	 * Adds a new token, written to the table by the next flush
+	 */
+	void issue( String acctId, String token, long expires )
+	{
+		Token issued = new Token( acctId, token, expires, false );
+		tokens.put( key( acctId, token ), issued );
+		changed( issued );
+		schedule( issued, Timings.epoch() );
+	}
+
+	private void place( Token token, long evictTick )
+	{
+		token.evictTick = evictTick;
+		token.slot = ( int ) ( evictTick % WHEEL_SLOTS );
+		wheel.get( token.slot ).add( token );
+	}
+
+	/**
+	 * Puts the token in the slot of the tick it can be released, right away once used or deleted, otherwise once expired
+	 */
+	private void schedule( Token token, long now )
+	{
+		long evictAt;
+		synchronized ( token )
+		{
+			evictAt = token.deleted || token.expires == 0 ? now : token.expires;
+		}
+
+		synchronized ( wheel )
+		{
+			if ( token.slot >= 0 )
+				wheel.get( token.slot ).remove( token );
+			token.slot = -1;
+
+			// Never expires, stays until deleted
+			if ( evictAt >= 0 )
+				place( token, Math.max( tick( evictAt ), currentTick ) + 1 );
+		}
+	}
+
+	public int size()
+	{
+		return tokens.size();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "LoginTokenStore{size=%s,pending=%s,hits=%s,loads=%s,writes=%s,writeFailures=%s,evictions=%s}", size(), getPending(), getHits(), getLoads(), getWrites(), getWriteFailures(), getEvictions() );
+	}
+}
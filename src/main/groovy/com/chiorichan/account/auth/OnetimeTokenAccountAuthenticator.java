@@ -54,6 +54,12 @@ public class OnetimeTokenAccountAuthenticator extends AccountAuthenticator imple
 
 	private final SQLDatastore db = AppConfig.get().getDatabase();
 
+	/**
+	 * Null unless sessions.tokenCache is enabled, the cache is only correct if no other instance shares the accounts_token table
+	 */
+	private final LoginTokenStore tokens;
+	private final boolean writeThrough;
+
 	OnetimeTokenAccountAuthenticator()
 	{
 		super( "token" );
@@ -68,6 +74,20 @@ public class OnetimeTokenAccountAuthenticator extends AccountAuthenticator imple
 			e.printStackTrace();
 		}
 
+		// Tokens are read from and written to the table on each use, unless cached, which is only safe for a single instance
+		tokens = AppConfig.get().getBoolean( "sessions.tokenCache", false ) ? new LoginTokenStore( db, "accounts_token" ) : null;
+
+		// Cached token changes are written behind every few seconds, zero or less writes them as they happen
+		long flushInterval = AppConfig.get().getLong( "sessions.tokenFlushInterval", 1L );
+		writeThrough = flushInterval <= 0;
+
+		if ( tokens != null )
+			TaskManager.instance().scheduleAsyncRepeatingTask( AccountManager.instance(), Ticks.SECOND, Ticks.SECOND * Math.max( 1, flushInterval ), () ->
+			{
+				tokens.flush();
+				tokens.advance( Timings.epoch() );
+			} );
+
 		TaskManager.instance().scheduleAsyncRepeatingTask( AccountManager.instance(), 0L, Ticks.MINUTE * AppConfig.get().getInt( "sessions.cleanupInterval", 5 ), new Runnable()
 		{
 			@Override
@@ -123,19 +143,23 @@ public class OnetimeTokenAccountAuthenticator extends AccountAuthenticator imple
 			if ( token == null || token.isEmpty() )
 				throw new AccountException( AccountDescriptiveReason.EMPTY_CREDENTIALS, acct );
 
-			SQLQuerySelect select = db.table( "accounts_token" ).select().where( "acctId" ).matches( acctId ).and().where( "token" ).matches( token ).limit( 1 ).execute();
+			if ( tokens == null )
+			{
+				consumeStored( acct, token );
+				return new OnetimeTokenAccountCredentials( AccountDescriptiveReason.LOGIN_SUCCESS, acct, token );
+			}
+
+			LoginTokenStore.Token found = tokens.get( acctId, token );
 
-			if ( select.rowCount() == 0 )
+			if ( found == null )
 				throw new AccountException( AccountDescriptiveReason.INCORRECT_LOGIN, acct );
 			// throw AccountResult.INCORRECT_LOGIN.setMessage( "The provided token did not match any saved tokens" + ( Versioning.isDevelopment() ? ", token: " + token : "." ) ).exception();
 
-			ResultSet rs = select.result();
-
-			if ( rs.getInt( "expires" ) >= 0 && rs.getInt( "expires" ) < Timings.epoch() )
+			// Expires the token, only one of concurrent logins with the same token succeeds
+			if ( !tokens.consume( found ) )
 				throw new AccountException( AccountDescriptiveReason.EXPIRED_LOGIN, acct );
 
-			// deleteToken( acctId, token );
-			expireToken( acctId, token );
+			written();
 			return new OnetimeTokenAccountCredentials( AccountDescriptiveReason.LOGIN_SUCCESS, acct, token );
 		}
 		catch ( SQLException e )
@@ -159,7 +183,12 @@ public class OnetimeTokenAccountAuthenticator extends AccountAuthenticator imple
 
 		try
 		{
-			return db.table( "accounts_token" ).delete().where( "acctId" ).matches( acctId ).and().where( "token" ).matches( token ).execute().rowCount() > 0;
+			if ( tokens == null )
+				return db.table( "accounts_token" ).delete().where( "acctId" ).matches( acctId ).and().where( "token" ).matches( token ).execute().rowCount() > 0;
+
+			boolean deleted = tokens.delete( acctId, token );
+			written();
+			return deleted;
 		}
 		catch ( SQLException e )
 		{
@@ -168,26 +197,45 @@ public class OnetimeTokenAccountAuthenticator extends AccountAuthenticator imple
 	}
 
 	/**
-	 * Expires the provided token from database
+	 * Uses up the token in the table, the update only matches the expiry read before, so only one of concurrent logins with the same token succeeds,
+	 * even on different instances
 	 *
-	 * @param acctId
-	 *             The acctId associated with Token
-	 * @param token
-	 *             The login token
+	 * @param acct  The account
+	 * @param token The login token
+	 * @throws AccountException If the token does not exist, expired or was used meanwhile
 	 */
-	private boolean expireToken( String acctId, String token )
+	private void consumeStored( AccountMeta acct, String token ) throws SQLException, AccountException
 	{
-		Validate.notNull( acctId );
-		Validate.notNull( token );
+		SQLQuerySelect select = db.table( "accounts_token" ).select().where( "acctId" ).matches( acct.getId() ).and().where( "token" ).matches( token ).limit( 1 ).execute();
 
-		try
-		{
-			return db.table( "accounts_token" ).update().value( "expires", 0 ).where( "acctId" ).matches( acctId ).and().where( "token" ).matches( token ).execute().rowCount() > 0;
-		}
-		catch ( SQLException e )
-		{
-			return false;
-		}
+		if ( select.rowCount() == 0 )
+			throw new AccountException( AccountDescriptiveReason.INCORRECT_LOGIN, acct );
+
+		ResultSet rs = select.result();
+		long expires = rs.getLong( "expires" );
+
+		if ( expires >= 0 && expires < Timings.epoch() )
+			throw new AccountException( AccountDescriptiveReason.EXPIRED_LOGIN, acct );
+
+		if ( db.table( "accounts_token" ).update().value( "expires", 0 ).where( "acctId" ).matches( acct.getId() ).and().where( "token" ).matches( token ).and().where( "expires" ).matches( expires ).execute().rowCount() < 1 )
+			throw new AccountException( AccountDescriptiveReason.EXPIRED_LOGIN, acct );
+	}
+
+	/**
+	 * Writes the pending token changes to the database, called on shutdown
+	 */
+	public void flush()
+	{
+		if ( tokens != null )
+			tokens.flush();
+	}
+
+	/**
+	 * @return The in memory token store, null unless sessions.tokenCache is enabled
+	 */
+	public LoginTokenStore getTokenStore()
+	{
+		return tokens;
 	}
 
 	/**
@@ -202,10 +250,18 @@ public class OnetimeTokenAccountAuthenticator extends AccountAuthenticator imple
 		Validate.notNull( acct );
 
 		String token = UtilEncryption.randomize( acct.getId() ) + Timings.epoch();
+		long expires = Timings.epoch() + 60 * 60 * 24 * 7;
+
+		if ( tokens != null )
+		{
+			tokens.issue( acct.getId(), token, expires );
+			written();
+			return token;
+		}
+
 		try
 		{
-			// if ( db.queryUpdate( "INSERT INTO `accounts_token` (`acctId`,`token`,`expires`) VALUES (?,?,?);", acct.getId(), token, ( Timings.epoch() + ( 60 * 60 * 24 * 7 ) ) ) < 1 )
-			if ( db.table( "accounts_token" ).insert().value( "acctId", acct.getId() ).value( "token", token ).value( "expires", Timings.epoch() + 60 * 60 * 24 * 7 ).execute().rowCount() < 0 )
+			if ( db.table( "accounts_token" ).insert().value( "acctId", acct.getId() ).value( "token", token ).value( "expires", expires ).execute().rowCount() < 0 )
 			{
 				AccountManager.getLogger().severe( "We had an unknown issue inserting token '" + token + "' into the database!" );
 				return null;
@@ -218,4 +274,10 @@ public class OnetimeTokenAccountAuthenticator extends AccountAuthenticator imple
 		}
 		return token;
 	}
+
+	private void written()
+	{
+		if ( writeThrough )
+			tokens.flush();
+	}
 }
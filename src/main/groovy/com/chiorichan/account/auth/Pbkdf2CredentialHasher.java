@@ -0,0 +1,137 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account.auth;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Hashes credentials with PBKDF2 as provided by the JDK, encoded as {@code $pbkdf2-<prf>$<iterations>$<salt>$<hash>}.
+ * Hashes of any HMAC variant can be verified, hashes with another variant or weaker parameters than configured need a rehash.
+ */
+public final class Pbkdf2CredentialHasher implements CredentialHasher
+{
+	private static final String PREFIX = "$pbkdf2-";
+	private static final SecureRandom random = new SecureRandom();
+
+	private static byte[] derive( String algorithm, String secret, byte[] salt, int iterations, int length )
+	{
+		PBEKeySpec spec = new PBEKeySpec( secret.toCharArray(), salt, iterations, length * 8 );
+		try
+		{
+			return SecretKeyFactory.getInstance( algorithm ).generateSecret( spec ).getEncoded();
+		}
+		catch ( GeneralSecurityException e )
+		{
+			throw new IllegalStateException( "The JDK does not support " + algorithm, e );
+		}
+		finally
+		{
+			spec.clearPassword();
+		}
+	}
+
+	private final String algorithm;
+	private final String id;
+	private final int iterations;
+	private final int saltLength;
+	private final int keyLength;
+
+	/**
+	 * @param prf        The HMAC variant, e.g., SHA256 or SHA512
+	 * @param iterations The iterations, the cost of each hash
+	 * @param saltLength The salt length in bytes
+	 * @param keyLength  The hash length in bytes
+	 */
+	public Pbkdf2CredentialHasher( String prf, int iterations, int saltLength, int keyLength )
+	{
+		if ( iterations < 1 || saltLength < 8 || keyLength < 16 )
+			throw new IllegalArgumentException( "PBKDF2 needs at least one iteration, an 8 byte salt and a 16 byte hash" );
+
+		algorithm = "PBKDF2WithHmac" + prf.toUpperCase();
+		id = "pbkdf2-" + prf.toLowerCase();
+		this.iterations = iterations;
+		this.saltLength = saltLength;
+		this.keyLength = keyLength;
+
+		// Fail now rather than on the first login
+		derive( algorithm, "", new byte[saltLength], 1, keyLength );
+	}
+
+	@Override
+	public boolean canVerify( String encoded )
+	{
+		return encoded != null && encoded.startsWith( PREFIX );
+	}
+
+	@Override
+	public String getAlgorithm()
+	{
+		return id;
+	}
+
+	public int getIterations()
+	{
+		return iterations;
+	}
+
+	@Override
+	public String hash( String secret )
+	{
+		byte[] salt = new byte[saltLength];
+		random.nextBytes( salt );
+
+		Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+		return "$" + id + "$" + iterations + "$" + encoder.encodeToString( salt ) + "$" + encoder.encodeToString( derive( algorithm, secret, salt, iterations, keyLength ) );
+	}
+
+	@Override
+	public boolean needsRehash( String encoded )
+	{
+		String[] parts = encoded.split( "\\$" );
+		if ( parts.length != 5 || !id.equals( parts[1] ) )
+			return true;
+
+		try
+		{
+			return Integer.parseInt( parts[2] ) < iterations || Base64.getDecoder().decode( parts[3] ).length < saltLength || Base64.getDecoder().decode( parts[4] ).length != keyLength;
+		}
+		catch ( IllegalArgumentException e )
+		{
+			return true;
+		}
+	}
+
+	@Override
+	public boolean verify( String secret, String encoded )
+	{
+		String[] parts = encoded.split( "\\$" );
+		if ( parts.length != 5 || !parts[1].startsWith( "pbkdf2-" ) )
+			return false;
+
+		try
+		{
+			String algorithm = "PBKDF2WithHmac" + parts[1].substring( 7 ).toUpperCase();
+			byte[] salt = Base64.getDecoder().decode( parts[3] );
+			byte[] expected = Base64.getDecoder().decode( parts[4] );
+
+			return MessageDigest.isEqual( expected, derive( algorithm, secret, salt, Integer.parseInt( parts[2] ), expected.length ) );
+		}
+		catch ( IllegalArgumentException | IllegalStateException e )
+		{
+			// Malformed or unsupported hash
+			return false;
+		}
+	}
+}
@@ -10,6 +10,12 @@
 package com.chiorichan.account.auth;
 
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 import org.apache.commons.codec.digest.DigestUtils;
 
@@ -26,7 +32,9 @@ import com.chiorichan.datastore.sql.query.SQLQuerySelect;
 import com.chiorichan.tasks.Timings;
 
 /**
- * Used to authenticate an account using a Username and Password combination
+ * Used to authenticate an account using a Username and Password combination.
+ * Passwords are stored as salted hashes, see {@link CredentialHashing}. Passwords stored before in plain text or as MD5 hex are upgraded on the next successful login.
+ * Clients sending the MD5 hex instead of the password are only accepted with {@code accounts.passwords.md5Clients} enabled, as anyone holding the MD5 hex could log in otherwise.
  */
 public final class PlainTextAccountAuthenticator extends AccountAuthenticator
 {
@@ -38,12 +46,22 @@ public final class PlainTextAccountAuthenticator extends AccountAuthenticator
 		}
 	}
 
+	private static final Pattern MD5_HEX = Pattern.compile( "[0-9a-f]{32}" );
+
 	private final SQLDatastore db = AppConfig.get().getDatabase();
+	private final CredentialHashing hashing;
+	private final boolean md5Clients = AppConfig.get().getBoolean( "accounts.passwords.md5Clients", false );
 
 	PlainTextAccountAuthenticator()
 	{
 		super( "plaintext" );
 
+		CredentialHasher preferred = new Pbkdf2CredentialHasher( AppConfig.get().getString( "accounts.passwords.prf", "SHA256" ), AppConfig.get().getInt( "accounts.passwords.iterations", 310000 ), AppConfig.get().getInt( "accounts.passwords.saltLength", 16 ), AppConfig.get().getInt( "accounts.passwords.keyLength", 32 ) );
+
+		hashing = new CredentialHashing( preferred, AppConfig.get().getInt( "accounts.passwords.threads", Math.max( 1, Runtime.getRuntime().availableProcessors() / 2 ) ), AppConfig.get().getInt( "accounts.passwords.queue", 64 ) );
+		hashing.register( new LegacyCredentialVerifier() );
+		hashing.setTimeout( AppConfig.get().getLong( "accounts.passwords.timeout", 10000L ) );
+
 		try
 		{
 			if ( !db.table( "accounts_plaintext" ).exists() )
@@ -91,6 +109,8 @@ public final class PlainTextAccountAuthenticator extends AccountAuthenticator
 				throw new AccountException( AccountDescriptiveReason.EXPIRED_LOGIN, acct );
 
 			password = select.getString( "password" );
+			if ( password == null )
+				throw new AccountException( AccountDescriptiveReason.PASSWORD_UNSET, acct );
 		}
 		catch ( AccountException e )
 		{
@@ -98,7 +118,7 @@ public final class PlainTextAccountAuthenticator extends AccountAuthenticator
 			{
 				// Compatibility with older versions, may soon get removed
 				password = acct.getString( "password" );
-				setPassword( acct, password, -1 );
+				storePassword( acct.getId(), password, -1 );
 				acct.set( "password", null );
 			}
 			else
@@ -109,11 +129,49 @@ public final class PlainTextAccountAuthenticator extends AccountAuthenticator
 			throw new AccountException( AccountDescriptiveReason.INTERNAL_ERROR, e, acct );
 		}
 
-		// TODO Encrypt all passwords
-		if ( password.equals( pass ) || password.equals( DigestUtils.md5Hex( pass ) ) || DigestUtils.md5Hex( password ).equals( pass ) )
-			return new PlainTextAccountCredentials( AccountDescriptiveReason.LOGIN_SUCCESS, acct );
-		else
+		String matched;
+		try
+		{
+			matched = hashing.verify( password, secrets( pass ) );
+		}
+		catch ( RejectedExecutionException | TimeoutException e )
+		{
+			throw new AccountException( AccountDescriptiveReason.AUTHENTICATION_BUSY, acct );
+		}
+		catch ( InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new AccountException( AccountDescriptiveReason.INTERNAL_ERROR, e, acct );
+		}
+
+		if ( matched == null )
 			throw new AccountException( AccountDescriptiveReason.INCORRECT_LOGIN, acct );
+
+		if ( hashing.needsRehash( password ) )
+			upgrade( acctId, password, matched );
+
+		return new PlainTextAccountCredentials( AccountDescriptiveReason.LOGIN_SUCCESS, acct );
+	}
+
+	/**
+	 * @return The hashing used for passwords
+	 */
+	public CredentialHashing getHashing()
+	{
+		return hashing;
+	}
+
+	/**
+	 * The secret hashed is the MD5 hex of the password. With {@code accounts.passwords.md5Clients} enabled an input looking like MD5 hex is also tried as the secret itself,
+	 * for clients sending the MD5 hex instead of the password.
+	 *
+	 * @param pass The password or its MD5 hex as sent by the client
+	 * @return The secrets to try
+	 */
+	private List<String> secrets( String pass )
+	{
+		String md5 = DigestUtils.md5Hex( pass );
+		return md5Clients && MD5_HEX.matcher( pass ).matches() ? Arrays.asList( md5, pass ) : Collections.singletonList( md5 );
 	}
 
 	/**
@@ -136,12 +194,34 @@ public final class PlainTextAccountAuthenticator extends AccountAuthenticator
 	 * @return True if we successfully set the password
 	 */
 	public boolean setPassword( AccountMeta acct, String password, int expires )
+	{
+		String encoded;
+		try
+		{
+			encoded = hashing.hash( DigestUtils.md5Hex( password ) );
+		}
+		catch ( RejectedExecutionException | TimeoutException | InterruptedException e )
+		{
+			if ( e instanceof InterruptedException )
+				Thread.currentThread().interrupt();
+			AccountManager.getLogger().severe( "We had an issue hashing the password for acctId '" + acct.getId() + "', the hashing is busy!" );
+			return false;
+		}
+
+		return storePassword( acct.getId(), encoded, expires );
+	}
+
+	private boolean storePassword( String acctId, String encoded, int expires )
 	{
 		try
 		{
-			if ( db.table( "accounts_plaintext" ).insert().value( "acctId", acct.getId() ).value( "password", password ).value( "expires", expires ).execute().rowCount() < 0 )
+			// Replace the existing password, otherwise the login would pick either
+			if ( db.table( "accounts_plaintext" ).update().value( "password", encoded ).value( "expires", expires ).where( "acctId" ).matches( acctId ).execute().rowCount() > 0 )
+				return true;
+
+			if ( db.table( "accounts_plaintext" ).insert().value( "acctId", acctId ).value( "password", encoded ).value( "expires", expires ).execute().rowCount() < 0 )
 			{
-				AccountManager.getLogger().severe( "We had an unknown issue inserting password for acctId '" + acct.getId() + "' into the database!" );
+				AccountManager.getLogger().severe( "We had an unknown issue inserting password for acctId '" + acctId + "' into the database!" );
 				return false;
 			}
 
@@ -154,4 +234,30 @@ public final class PlainTextAccountAuthenticator extends AccountAuthenticator
 		}
 		return true;
 	}
+
+	/**
+	 * Replaces a legacy or weak password with a hash of the current parameters, in the background after a successful login.
+	 * The password is only replaced if it did not change meanwhile. If the hashing is busy the next login tries again.
+	 */
+	private void upgrade( String acctId, String old, String secret )
+	{
+		try
+		{
+			hashing.hashAsync( secret ).thenAccept( encoded ->
+			{
+				try
+				{
+					db.table( "accounts_plaintext" ).update().value( "password", encoded ).where( "acctId" ).matches( acctId ).and().where( "password" ).matches( old ).execute();
+				}
+				catch ( SQLException e )
+				{
+					AccountManager.getLogger().warning( "Failed to upgrade the password hash for acctId '" + acctId + "'", e );
+				}
+			} );
+		}
+		catch ( RejectedExecutionException e )
+		{
+			// Retried on the next login
+		}
+	}
 }
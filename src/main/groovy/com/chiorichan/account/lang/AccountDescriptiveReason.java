@@ -43,6 +43,8 @@ public class AccountDescriptiveReason
 	public static final AccountDescriptiveReason EMPTY_ID = new AccountDescriptiveReason( "The specified account id was not provided.", ReportingLevel.L_ERROR );
 
 	public static final AccountDescriptiveReason INCORRECT_LOGIN = new AccountDescriptiveReason( "There were no accounts that matched the provided credentials.", ReportingLevel.L_DENIED );
+	public static final AccountDescriptiveReason AUTHENTICATION_BUSY = new AccountDescriptiveReason( "The server is busy verifying other logins, please try again shortly.", ReportingLevel.L_ERROR );
+	public static final AccountDescriptiveReason RESOLVE_TIMEOUT = new AccountDescriptiveReason( "The account lookup did not complete in time, please try again.", ReportingLevel.L_ERROR );
 	public static final AccountDescriptiveReason EXPIRED_LOGIN = new AccountDescriptiveReason( "The provided login credentials were marked as expired.", ReportingLevel.L_EXPIRED );
 	public static final AccountDescriptiveReason PASSWORD_UNSET = new AccountDescriptiveReason( "The specified Account has no password set, either the password was never set or the account uses another form of authentication.", ReportingLevel.L_DENIED );
 
@@ -0,0 +1,538 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account.types;
+
+import com.chiorichan.account.AccountContext;
+import com.chiorichan.account.AccountManager;
+import com.chiorichan.account.AccountType;
+import com.chiorichan.configuration.types.yaml.YamlConfiguration;
+import com.chiorichan.tasks.TaskManager;
+import com.chiorichan.utils.UtilObjects;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Index of the account files within one directory, by file name, by location and account id and by the value of each login key.
+ * <p>
+ * The directory is parsed once, in parallel. Afterwards a lookup only checks the modified time of the directory,
+ * which changes when files are added, removed or atomically replaced, and the modified time of the file found.
+ * Files edited in place are picked up when found or by {@link #sweep()}, which compares the modified time of every file.
+ * Login keys not indexed yet are indexed in the background, lookups by them scan the files meanwhile.
+ */
+final class AccountFileIndex
+{
+	/**
+	 * An indexed account file, replaced as a whole when the file changes
+	 */
+	static final class AccountFile
+	{
+		final File file;
+		final long modified;
+		final long length;
+		final String locId;
+		final String acctId;
+
+		/**
+		 * The values of the indexed keys
+		 */
+		final Map<String, String> values;
+
+		/**
+		 * The last context read from this file, reused while someone holds it
+		 */
+		WeakReference<AccountContext> context;
+
+		AccountFile( File file, long modified, long length, String locId, String acctId, Map<String, String> values, AccountContext context )
+		{
+			this.file = file;
+			this.modified = modified;
+			this.length = length;
+			this.locId = locId;
+			this.acctId = acctId;
+			this.values = values;
+			this.context = new WeakReference<>( context );
+		}
+
+		boolean isChanged()
+		{
+			return file.lastModified() != modified || file.length() != length;
+		}
+
+		String key()
+		{
+			return locId + "_" + acctId;
+		}
+	}
+
+	/**
+	 * Runs the task on the {@link TaskManager}, or right away if there is none yet
+	 *
+	 * @param task The task
+	 */
+	static void async( Runnable task )
+	{
+		TaskManager manager = TaskManager.instanceWithoutException();
+		AccountManager accountManager = AccountManager.instanceWithoutException();
+		if ( manager == null || accountManager == null )
+			task.run();
+		else
+			manager.runTaskAsynchronously( accountManager, task );
+	}
+
+	private static boolean isAccountFile( String name )
+	{
+		return name.endsWith( "yaml" );
+	}
+
+	private static String valueOf( AccountContext context, String key )
+	{
+		return UtilObjects.castToString( "acctId".equals( key ) ? context.getAcctId() : context.getValue( key ) );
+	}
+
+	private final FileTypeCreator creator;
+	private final File directory;
+
+	private final Map<String, AccountFile> byName = new HashMap<>();
+	private final Map<String, AccountFile> byId = new HashMap<>();
+	private final Map<String, Set<AccountFile>> byValue = new HashMap<>();
+	private final Set<AccountFile> duplicates = new HashSet<>();
+	private final Set<String> indexedKeys = new HashSet<>();
+	/**
+	 * Login keys being indexed in the background, files read meanwhile already include their values
+	 */
+	private final Set<String> pendingKeys = new HashSet<>();
+	private final Object indexing = new Object();
+	private final AtomicBoolean sweeping = new AtomicBoolean();
+
+	private long directoryModified = -1;
+	private volatile long lastSweep = System.currentTimeMillis();
+
+	AccountFileIndex( FileTypeCreator creator, File directory, Collection<String> keys )
+	{
+		this.creator = creator;
+		this.directory = directory;
+		indexedKeys.addAll( keys );
+		indexedKeys.add( "acctId" );
+
+		rebuild();
+	}
+
+	private void add( AccountFile accountFile )
+	{
+		byName.put( accountFile.file.getName(), accountFile );
+
+		AccountFile existing = byId.putIfAbsent( accountFile.key(), accountFile );
+		if ( existing != null && existing != accountFile )
+		{
+			AccountManager.getLogger().severe( "Duplicate accounts (locId and acctId) were detected in files [" + existing.file.getName() + "] and [" + accountFile.file.getName() + "]. Second account was ignored." );
+			duplicates.add( accountFile );
+			return;
+		}
+
+		for ( String value : accountFile.values.values() )
+			byValue.computeIfAbsent( value, k -> new LinkedHashSet<>() ).add( accountFile );
+	}
+
+	/**
+	 * Picks up added, removed and replaced files if the directory changed since the last check
+	 */
+	private void checkDirectory()
+	{
+		long modified = directory.lastModified();
+		if ( modified == directoryModified )
+			return;
+		directoryModified = modified;
+
+		String[] names = directory.list();
+		Set<String> current = names == null ? new HashSet<>() : new HashSet<>( Arrays.asList( names ) );
+
+		// Files replaced under the same name are found by fresh() or the next sweep
+		for ( AccountFile accountFile : new ArrayList<>( byName.values() ) )
+			if ( !current.contains( accountFile.file.getName() ) )
+				remove( accountFile );
+
+		for ( String name : current )
+			if ( isAccountFile( name ) && !byName.containsKey( name ) )
+			{
+				AccountFile accountFile = read( new File( directory, name ) );
+				if ( accountFile != null )
+					add( accountFile );
+			}
+	}
+
+	/**
+	 * Finds the account file of the location and account id
+	 *
+	 * @param locId  The location id, files of location % match any location
+	 * @param acctId The account id
+	 * @return The account file or null if there is none
+	 */
+	synchronized AccountFile find( String locId, String acctId )
+	{
+		checkDirectory();
+
+		AccountFile accountFile = byId.get( locId + "_" + acctId );
+		if ( accountFile == null )
+			accountFile = byId.get( "%_" + acctId );
+		return fresh( accountFile );
+	}
+
+	/**
+	 * Finds the account file with any of the login keys matching the value
+	 *
+	 * @param locId The location id, files of location % match any location
+	 * @param keys  The login keys
+	 * @param value The login value
+	 * @return The account file or null if there is none
+	 */
+	AccountFile find( String locId, Collection<String> keys, String value )
+	{
+		boolean requested;
+		synchronized ( this )
+		{
+			checkDirectory();
+
+			Set<String> missing = keys.stream().filter( key -> !indexedKeys.contains( key ) ).collect( Collectors.toSet() );
+			if ( missing.isEmpty() )
+				return findIndexed( locId, keys, value );
+
+			requested = pendingKeys.addAll( missing );
+		}
+
+		// Outside of the lock, the indexing takes it once the files are parsed
+		if ( requested )
+			async( this::indexPending );
+
+		return scan( locId, keys, value );
+	}
+
+	private synchronized AccountFile findIndexed( String locId, Collection<String> keys, String value )
+	{
+		Set<AccountFile> candidates = byValue.get( value );
+		if ( candidates == null )
+			return null;
+
+		for ( AccountFile accountFile : new ArrayList<>( candidates ) )
+			if ( "%".equals( accountFile.locId ) || Objects.equals( locId, accountFile.locId ) )
+				for ( String key : keys )
+					if ( value.equals( accountFile.values.get( key ) ) )
+					{
+						AccountFile current = fresh( accountFile );
+						// Changed in place since indexed, check the new values
+						if ( current != accountFile )
+							return current != null && value.equals( current.values.get( key ) ) ? current : findIndexed( locId, keys, value );
+						return current;
+					}
+		return null;
+	}
+
+	/**
+	 * Replaces the account file if it changed since it was indexed
+	 */
+	private AccountFile fresh( AccountFile accountFile )
+	{
+		if ( accountFile == null || !accountFile.isChanged() )
+			return accountFile;
+
+		AccountFile current = read( accountFile.file );
+		replace( accountFile, current );
+		return current;
+	}
+
+	/**
+	 * Returns the context of the account file, reading the file again if the last context was released
+	 *
+	 * @param accountFile The account file
+	 * @return The context or null if the file can no longer be read
+	 */
+	synchronized AccountContext getContext( AccountFile accountFile )
+	{
+		AccountContext context = accountFile.context.get();
+		if ( context != null )
+			return context;
+
+		long modified = accountFile.file.lastModified();
+		long length = accountFile.file.length();
+		if ( !accountFile.file.isFile() )
+		{
+			remove( accountFile );
+			return null;
+		}
+
+		context = readContext( accountFile.file );
+		replace( accountFile, toAccountFile( accountFile.file, modified, length, context ) );
+		return context;
+	}
+
+	File getDirectory()
+	{
+		return directory;
+	}
+
+	long getLastSweep()
+	{
+		return lastSweep;
+	}
+
+	/**
+	 * Parses and indexes the account file
+	 *
+	 * @return The account file or null if it does not exist
+	 */
+	private AccountFile read( File file )
+	{
+		long modified = file.lastModified();
+		long length = file.length();
+		if ( !file.isFile() )
+			return null;
+
+		return toAccountFile( file, modified, length, readContext( file ) );
+	}
+
+	private AccountContext readContext( File file )
+	{
+		// Without the snapshot cache, which would write a file beside it and change the modification time of the directory
+		YamlConfiguration yser = YamlConfiguration.loadConfiguration( file, false );
+
+		Map<String, Object> contents = new HashMap<>();
+		for ( String key : yser.getKeys( false ) )
+			contents.put( key, yser.get( key ) );
+
+		AccountContextImpl context = new AccountContextImpl( creator, AccountType.FILE );
+		context.setAcctId( yser.getString( "acctId" ) );
+		context.setLocationId( yser.getString( "locId" ) );
+		context.setValues( contents );
+		return context;
+	}
+
+	private AccountFile toAccountFile( File file, long modified, long length, AccountContext context )
+	{
+		return toAccountFile( file, modified, length, context, context::getValue );
+	}
+
+	private AccountFile toAccountFile( File file, long modified, long length, AccountContext context, Function<String, Object> contents )
+	{
+		Set<String> keys = new HashSet<>( indexedKeys );
+		keys.addAll( pendingKeys );
+
+		Map<String, String> values = new HashMap<>();
+		for ( String key : keys )
+		{
+			String value = UtilObjects.castToString( "acctId".equals( key ) ? context.getAcctId() : contents.apply( key ) );
+			if ( value != null )
+				values.put( key, value );
+		}
+
+		return new AccountFile( file, modified, length, context.getLocId(), context.getAcctId(), values, context );
+	}
+
+	/**
+	 * Adds the values of the pending login keys to the files indexed before the keys were requested, parsing the files outside of the lock
+	 */
+	private void indexPending()
+	{
+		synchronized ( indexing )
+		{
+			Set<String> keys;
+			List<AccountFile> files;
+			synchronized ( this )
+			{
+				if ( pendingKeys.isEmpty() )
+					return;
+				keys = new HashSet<>( pendingKeys );
+				files = new ArrayList<>( byName.values() );
+			}
+
+			Map<AccountFile, AccountContext> contexts = files.parallelStream().filter( accountFile -> accountFile.file.isFile() ).collect( Collectors.toConcurrentMap( Function.identity(), accountFile ->
+			{
+				AccountContext context = accountFile.context.get();
+				return context == null ? readContext( accountFile.file ) : context;
+			} ) );
+
+			synchronized ( this )
+			{
+				for ( Map.Entry<AccountFile, AccountContext> entry : contexts.entrySet() )
+				{
+					AccountFile accountFile = entry.getKey();
+					// Replaced meanwhile, the replacement was read with the pending keys
+					if ( byName.get( accountFile.file.getName() ) != accountFile )
+						continue;
+
+					Map<String, String> values = new HashMap<>( accountFile.values );
+					for ( String key : keys )
+					{
+						String value = valueOf( entry.getValue(), key );
+						if ( value != null )
+							values.put( key, value );
+					}
+					replace( accountFile, new AccountFile( accountFile.file, accountFile.modified, accountFile.length, accountFile.locId, accountFile.acctId, values, entry.getValue() ) );
+				}
+
+				indexedKeys.addAll( keys );
+				pendingKeys.removeAll( keys );
+			}
+		}
+	}
+
+	private synchronized void rebuild()
+	{
+		byName.clear();
+		byId.clear();
+		byValue.clear();
+		duplicates.clear();
+
+		directoryModified = directory.lastModified();
+		String[] names = directory.list();
+		if ( names == null )
+			return;
+
+		// Sorted, so the same file of duplicates wins every time
+		List<AccountFile> files = Arrays.stream( names ).filter( AccountFileIndex::isAccountFile ).sorted().collect( Collectors.toList() ).parallelStream().map( name -> read( new File( directory, name ) ) ).filter( Objects::nonNull ).collect( Collectors.toList() );
+
+		for ( AccountFile accountFile : files )
+			add( accountFile );
+	}
+
+	/**
+	 * Finds the account file by comparing the login keys of every file, for keys not indexed yet. Files are parsed outside of the lock if their context was released.
+	 */
+	private AccountFile scan( String locId, Collection<String> keys, String value )
+	{
+		List<AccountFile> files;
+		synchronized ( this )
+		{
+			files = new ArrayList<>( byId.values() );
+		}
+
+		for ( AccountFile accountFile : files )
+			if ( "%".equals( accountFile.locId ) || Objects.equals( locId, accountFile.locId ) )
+			{
+				AccountContext context = accountFile.context.get();
+				if ( context == null )
+				{
+					if ( !accountFile.file.isFile() )
+						continue;
+					context = readContext( accountFile.file );
+				}
+
+				for ( String key : keys )
+					if ( value.equals( valueOf( context, key ) ) )
+						return accountFile;
+			}
+		return null;
+	}
+
+	private void remove( AccountFile accountFile )
+	{
+		if ( byName.get( accountFile.file.getName() ) == accountFile )
+			byName.remove( accountFile.file.getName() );
+
+		if ( duplicates.remove( accountFile ) || !byId.remove( accountFile.key(), accountFile ) )
+			return;
+
+		for ( String value : accountFile.values.values() )
+		{
+			Set<AccountFile> set = byValue.get( value );
+			if ( set != null && set.remove( accountFile ) && set.isEmpty() )
+				byValue.remove( value );
+		}
+
+		// Promote a duplicate that was ignored so far
+		for ( AccountFile duplicate : duplicates )
+			if ( duplicate.key().equals( accountFile.key() ) )
+			{
+				duplicates.remove( duplicate );
+				add( duplicate );
+				break;
+			}
+	}
+
+	private void replace( AccountFile old, AccountFile current )
+	{
+		remove( old );
+		if ( current != null )
+			add( current );
+	}
+
+	/**
+	 * Compares the modified time of every indexed file, reindexing the ones edited in place
+	 */
+	void sweep()
+	{
+		if ( !sweeping.compareAndSet( false, true ) )
+			return;
+
+		try
+		{
+			List<AccountFile> files;
+			synchronized ( this )
+			{
+				files = new ArrayList<>( byName.values() );
+			}
+
+			// Stat outside of the lock, lookups continue meanwhile
+			List<AccountFile> changed = files.stream().filter( AccountFile::isChanged ).collect( Collectors.toList() );
+
+			synchronized ( this )
+			{
+				for ( AccountFile accountFile : changed )
+					if ( byName.get( accountFile.file.getName() ) == accountFile )
+						replace( accountFile, read( accountFile.file ) );
+				checkDirectory();
+			}
+		}
+		finally
+		{
+			lastSweep = System.currentTimeMillis();
+			sweeping.set( false );
+		}
+	}
+
+	/**
+	 * Writes the account file and indexes it without parsing it again
+	 *
+	 * @param file     The account file
+	 * @param yser     The contents
+	 * @param context  The context the contents were taken from
+	 * @throws IOException If the file could not be written
+	 */
+	synchronized void write( File file, YamlConfiguration yser, AccountContext context ) throws IOException
+	{
+		// Our own write changes the directory, only skip the next directory check if nothing else did
+		boolean current = directory.lastModified() == directoryModified;
+
+		yser.save( file );
+
+		if ( current )
+			directoryModified = directory.lastModified();
+
+		AccountFile old = byName.get( file.getName() );
+		AccountFile written = toAccountFile( file, file.lastModified(), file.length(), context, yser::get );
+		if ( old != null )
+			replace( old, written );
+		else
+			add( written );
+	}
+}
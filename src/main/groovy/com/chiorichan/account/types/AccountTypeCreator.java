@@ -25,6 +25,13 @@ import java.util.List;
 public abstract class AccountTypeCreator implements AccountCreator
 {
 	private final List<String> additionalAccountFields = AppConfig.get().getStringList( "accounts.fields", new ArrayList<>() );
+	protected final KnownIdentifiers knownIdentifiers = new KnownIdentifiers();
+
+	@Override
+	public void addKnownIdentifier( String value )
+	{
+		knownIdentifiers.add( value );
+	}
 
 	@Override
 	public List<String> getLoginKeys()
@@ -32,6 +39,12 @@ public abstract class AccountTypeCreator implements AccountCreator
 		return additionalAccountFields;
 	}
 
+	@Override
+	public boolean mightExist( String locId, String acctId )
+	{
+		return knownIdentifiers.mightContain( acctId );
+	}
+
 	@Override
 	public void save( AccountMeta meta ) throws AccountException
 	{
@@ -48,6 +61,7 @@ public abstract class AccountTypeCreator implements AccountCreator
 		context.setValue( "actkey", "" );
 
 		save( context );
+		knownIdentifiers.add( acctId );
 		return context;
 	}
 }
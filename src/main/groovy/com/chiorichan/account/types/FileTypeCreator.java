@@ -12,7 +12,6 @@ package com.chiorichan.account.types;
 import com.chiorichan.AppConfig;
 import com.chiorichan.account.AccountContext;
 import com.chiorichan.account.AccountLocation;
-import com.chiorichan.account.AccountManager;
 import com.chiorichan.account.AccountMeta;
 import com.chiorichan.account.AccountPermissible;
 import com.chiorichan.account.AccountType;
@@ -21,6 +20,7 @@ import com.chiorichan.account.lang.AccountDescriptiveReason;
 import com.chiorichan.account.lang.AccountException;
 import com.chiorichan.account.lang.AccountResolveResult;
 import com.chiorichan.account.lang.AccountResult;
+import com.chiorichan.configuration.ConfigKey;
 import com.chiorichan.configuration.types.yaml.YamlConfiguration;
 import com.chiorichan.lang.ReportingLevel;
 import com.chiorichan.lang.UncaughtException;
@@ -31,18 +31,14 @@ import com.chiorichan.services.AppManager;
 import com.chiorichan.tasks.Timings;
 import com.chiorichan.utils.UtilIO;
 import com.chiorichan.utils.UtilObjects;
-import org.apache.commons.io.filefilter.FileFilterUtils;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.ref.WeakReference;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Handles Accounts that are loaded from File
@@ -51,57 +47,11 @@ public class FileTypeCreator extends AccountTypeCreator
 {
 	public static final AccountTypeCreator INSTANCE = new FileTypeCreator();
 
-	private class AccountFile
-	{
-		File file;
-		WeakReference<AccountContext> context;
-
-		AccountFile( File file )
-		{
-			UtilObjects.notFalse( file.exists() );
-
-			YamlConfiguration yser = YamlConfiguration.loadConfiguration( file );
-
-			Map<String, Object> contents = new HashMap<>();
-
-			for ( String key : yser.getKeys( false ) )
-				contents.put( key, yser.get( key ) );
-
-			AccountContextImpl context = new AccountContextImpl( FileTypeCreator.this, AccountType.FILE );
-
-			context.setAcctId( yser.getString( "acctId" ) );
-			context.setLocationId( yser.getString( "locId" ) );
-
-			context.setValues( contents );
-
-			this.file = file;
-			this.context = new WeakReference<>( context );
-		}
-
-		AccountContext getContext()
-		{
-			return context.get();
-		}
-
-		String getLocId()
-		{
-			return context.get() == null ? null : context.get().getLocId();
-		}
-
-		String getAcctId()
-		{
-			return context.get() == null ? null : context.get().getAcctId();
-		}
-
-		File getFile()
-		{
-			return file;
-		}
-	}
+	private static final ConfigKey<Long> RESCAN_INTERVAL = ConfigKey.ofLong( "accounts.fileRescanInterval", 60 );
 
 	private File accountsDirectory = null;
 
-	private List<AccountFile> preloaded = new CopyOnWriteArrayList<>();
+	private final Map<File, AccountFileIndex> indexes = new ConcurrentHashMap<>();
 
 	public FileTypeCreator()
 	{
@@ -110,59 +60,54 @@ public class FileTypeCreator extends AccountTypeCreator
 		if ( !UtilIO.setDirectoryAccess( accountsDirectory ) )
 			throw new UncaughtException( ReportingLevel.E_ERROR, "This application experienced a problem setting read and write access to directory \"" + UtilIO.relPath( accountsDirectory ) + "\"!" );
 
-		preloadCheck( accountsDirectory );
+		index( accountsDirectory );
 	}
 
-	public void preloadCheck( File fileBase )
+	/**
+	 * Returns the index of the account directory, built on first use and swept for files edited in place every so often
+	 *
+	 * @param fileBase The account directory
+	 * @return The index
+	 */
+	private AccountFileIndex index( File fileBase )
 	{
-		UtilObjects.notNull( fileBase );
+		AccountFileIndex index = indexes.computeIfAbsent( fileBase, dir ->
+		{
+			Set<String> keys = new HashSet<>( getLoginKeys() );
+			keys.add( "username" );
+			return new AccountFileIndex( this, dir, keys );
+		} );
 
-		File[] files = fileBase.listFiles();
+		long interval = RESCAN_INTERVAL.get();
+		if ( interval > 0 && System.currentTimeMillis() - index.getLastSweep() > TimeUnit.SECONDS.toMillis( interval ) )
+			AccountFileIndex.async( index::sweep );
 
-		/* Remove invalidated contexts */
-		for ( AccountFile af : preloaded )
-			if ( af.getContext() == null )
-				preloaded.remove( af );
+		return index;
+	}
 
-		if ( files == null )
-			return;
+	/**
+	 * Picks up account files added, removed or changed in the directory
+	 *
+	 * @param fileBase The account directory
+	 */
+	public void preloadCheck( File fileBase )
+	{
+		UtilObjects.notNull( fileBase );
 
-		for ( File f : files )
-			if ( FileFilterUtils.and( FileFilterUtils.suffixFileFilter( "yaml" ), FileFilterUtils.fileFileFilter() ).accept( f ) )
-			{
-				boolean found = false;
-				for ( AccountFile accountFile : preloaded )
-					if ( f.equals( accountFile.getFile() ) )
-						found = true;
-				AccountFile newAccountFile = new AccountFile( f );
-				for ( AccountFile accountFile : preloaded )
-					if ( Objects.equals( newAccountFile.getLocId(), accountFile.getLocId() ) && Objects.equals( newAccountFile.getAcctId(), accountFile.getAcctId() ) )
-					{
-						AccountManager.getLogger().severe( "Duplicate accounts (locId and acctId) were detected in files [" + accountFile.getFile().getName() + "] and [" + f.getName() + "]. Second account was ignored." );
-						found = true;
-					}
-				if ( !found )
-					preloaded.add( newAccountFile );
-			}
+		index( fileBase ).sweep();
 	}
 
-	@Override
-	public boolean accountExists( String locId, String acctId )
+	private File resolveDirectory( String locId )
 	{
 		AccountLocation location = resolveLocId( locId );
-		File fileBase = null;
-
-		if ( location != null )
-			fileBase = location.getAccountDirectory();
-		if ( fileBase == null )
-			fileBase = accountsDirectory;
-
-		preloadCheck( fileBase );
+		File fileBase = location == null ? null : location.getAccountDirectory();
+		return fileBase == null ? accountsDirectory : fileBase;
+	}
 
-		for ( AccountFile accountFile : preloaded )
-			if ( Objects.equals( accountFile.getAcctId(), acctId ) && ( Objects.equals( accountFile.getLocId(), locId ) || "%".equals( accountFile.getLocId() ) ) )
-				return true;
-		return false;
+	@Override
+	public boolean accountExists( String locId, String acctId )
+	{
+		return index( resolveDirectory( locId ) ).find( locId, acctId ) != null;
 	}
 
 	@Override
@@ -243,37 +188,27 @@ public class FileTypeCreator extends AccountTypeCreator
 		if ( fileBase == null )
 			fileBase = accountsDirectory;
 
-		preloadCheck( fileBase );
-
-		AccountFile found = null;
+		AccountFileIndex index = index( fileBase );
+		AccountFileIndex.AccountFile found = index.find( locId, loginKeys, acctId );
+		AccountContext context = found == null ? null : index.getContext( found );
 
-		for ( AccountFile accountFile : preloaded )
-			for ( String loginKey : loginKeys )
-				if ( accountFile.getContext().getValue( loginKey ) != null && ( "%".equals( accountFile.getLocId() ) || locId.equals( accountFile.getLocId() ) ) && acctId.equals( UtilObjects.castToString( accountFile.getContext().getValue( loginKey ) ) ) )
-					found = accountFile;
-
-		if ( found == null )
+		if ( context == null )
 			throw new AccountException( AccountDescriptiveReason.INCORRECT_LOGIN, locId, acctId );
 
-		return found.getContext();
+		return context;
 	}
 
 	@Override
 	public void reload( AccountMeta meta ) throws AccountException
 	{
-		for ( AccountFile accountFile : preloaded )
-			if ( accountFile.getContext() == meta.getContext() || ( Objects.equals( accountFile.getLocId(), meta.getLocId() ) && Objects.equals( accountFile.getAcctId(), meta.getId() ) ) )
-			{
-				YamlConfiguration yser = YamlConfiguration.loadConfiguration( accountFile.getFile() );
+		AccountFileIndex.AccountFile accountFile = index( resolveDirectory( meta.getLocId() ) ).find( meta.getLocId(), meta.getId() );
+		if ( accountFile == null )
+			throw new AccountException( new AccountDescriptiveReason( "The file for this Account Meta Data is missing, was it deleted.", ReportingLevel.L_ERROR ), meta );
 
-				if ( yser == null )
-					throw new AccountException( new AccountDescriptiveReason( "The file for this Account Meta Data is missing, was it deleted.", ReportingLevel.L_ERROR ), meta );
+		YamlConfiguration yser = YamlConfiguration.loadConfiguration( accountFile.file, false );
 
-				for ( String key : yser.getKeys( false ) )
-					meta.set( key, yser.get( key ) );
-
-				break;
-			}
+		for ( String key : yser.getKeys( false ) )
+			meta.set( key, yser.get( key ) );
 	}
 
 	@Override
@@ -319,27 +254,44 @@ public class FileTypeCreator extends AccountTypeCreator
 		updateMeta( meta );
 	}
 
+	/**
+	 * @return The value with anything but letters, digits, dashes and underscores replaced, so it can't leave the accounts directory
+	 */
+	private static String fileName( String value )
+	{
+		return value == null || value.isEmpty() ? "_" : value.replaceAll( "[^A-Za-z0-9_-]", "_" );
+	}
+
 	private void updateMeta( AccountMeta meta )
 	{
-		for ( AccountFile accountFile : preloaded )
-			if ( accountFile.getContext() == meta.getContext() || ( Objects.equals( accountFile.getLocId(), meta.getLocId() ) && Objects.equals( accountFile.getAcctId(), meta.getId() ) ) )
-			{
-				YamlConfiguration yser = new YamlConfiguration();
-
-				yser.set( meta.getMeta() );
-				yser.set( "locId", meta.getLocId() );
-				yser.set( "acctId", meta.getId() );
-
-				try
-				{
-					yser.save( accountFile.getFile() );
-				}
-				catch ( IOException e )
-				{
-					e.printStackTrace();
-				}
-
-				break;
-			}
+		AccountFileIndex index = index( resolveDirectory( meta.getLocId() ) );
+		AccountFileIndex.AccountFile accountFile = index.find( meta.getLocId(), meta.getId() );
+
+		File file;
+		if ( accountFile != null )
+			file = accountFile.file;
+		else
+		{
+			// New account, give it a file of its own that stays inside the directory and does not replace another
+			String name = fileName( meta.getId() );
+			file = new File( index.getDirectory(), name + ".yaml" );
+			for ( int i = 1; file.exists(); i++ )
+				file = new File( index.getDirectory(), fileName( meta.getLocId() ) + "_" + name + ( i > 1 ? "_" + i : "" ) + ".yaml" );
+		}
+
+		YamlConfiguration yser = new YamlConfiguration();
+
+		yser.set( meta.getMeta() );
+		yser.set( "locId", meta.getLocId() );
+		yser.set( "acctId", meta.getId() );
+
+		try
+		{
+			index.write( file, yser, meta.getContext() );
+		}
+		catch ( IOException e )
+		{
+			e.printStackTrace();
+		}
 	}
 }
@@ -0,0 +1,109 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account.types;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Bloom filter of the login values known to an account creator, used to skip lookups of values that certainly do not exist.
+ * <p>
+ * Values are compared lowercase and trimmed, since databases commonly match logins case insensitively.
+ * Until the filter is first built every value might exist.
+ */
+public final class KnownIdentifiers
+{
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+	private static final int MIN_EXPECTED = 1000;
+
+	private static String normalize( String value )
+	{
+		return value.trim().toLowerCase();
+	}
+
+	private BloomFilter<CharSequence> filter = null;
+	private long builtAt = 0;
+	private Set<String> addedWhileBuilding = null;
+
+	public synchronized void add( String value )
+	{
+		if ( value == null )
+			return;
+		if ( filter != null )
+			filter.put( normalize( value ) );
+		if ( addedWhileBuilding != null )
+			addedWhileBuilding.add( normalize( value ) );
+	}
+
+	/**
+	 * Marks the start of a rebuild, values added from now on are carried over to the new filter
+	 */
+	public synchronized void beginBuild()
+	{
+		addedWhileBuilding = new HashSet<>();
+	}
+
+	/**
+	 * Replaces the filter with one containing the values, must be preceded by {@link #beginBuild()}
+	 *
+	 * @param values Every login value known to the creator
+	 */
+	public void build( Collection<String> values )
+	{
+		BloomFilter<CharSequence> filter = BloomFilter.create( Funnels.stringFunnel( StandardCharsets.UTF_8 ), Math.max( MIN_EXPECTED, values.size() * 2 ), FALSE_POSITIVE_RATE );
+		for ( String value : values )
+			if ( value != null )
+				filter.put( normalize( value ) );
+
+		synchronized ( this )
+		{
+			if ( addedWhileBuilding != null )
+				for ( String value : addedWhileBuilding )
+					filter.put( value );
+			addedWhileBuilding = null;
+
+			this.filter = filter;
+			builtAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @return The epoch millis the filter was last built, zero if never
+	 */
+	public synchronized long builtAt()
+	{
+		return builtAt;
+	}
+
+	/**
+	 * Discards the filter, every value might exist until it is built again
+	 */
+	public synchronized void clear()
+	{
+		filter = null;
+		builtAt = 0;
+		addedWhileBuilding = null;
+	}
+
+	public synchronized boolean isBuilt()
+	{
+		return filter != null;
+	}
+
+	public synchronized boolean mightContain( String value )
+	{
+		return filter == null || value == null || filter.mightContain( normalize( value ) );
+	}
+}
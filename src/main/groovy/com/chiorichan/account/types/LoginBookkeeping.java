@@ -0,0 +1,169 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.account.types;
+
+import com.chiorichan.account.AccountManager;
+import com.chiorichan.datastore.sql.SQLTable;
+import com.chiorichan.datastore.sql.bases.SQLDatastore;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers the login bookkeeping columns of SQL accounts, e.g., lastLogin and numLoginFail, so a login no longer writes the account row right away.
+ * <p>
+ * Changes to the same account are coalesced, {@link #flush()} writes them with one update per account and one transaction per table.
+ * A full save of the account writes the same columns, so it discards the buffered changes.
+ */
+public final class LoginBookkeeping
+{
+	private static final class Pending
+	{
+		final SQLDatastore datastore;
+		final String table;
+		final String locId;
+		final String acctId;
+		final Map<String, Object> values = new LinkedHashMap<>();
+
+		Pending( SQLDatastore datastore, String table, String locId, String acctId )
+		{
+			this.datastore = datastore;
+			this.table = table;
+			this.locId = locId;
+			this.acctId = acctId;
+		}
+	}
+
+	private static String key( String locId, String acctId )
+	{
+		return locId + "\u0000" + acctId;
+	}
+
+	private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+	private final AtomicLong recorded = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong discarded = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+
+	/**
+	 * Drops the buffered changes of the account, called before a full save that writes them anyway
+	 */
+	void discard( String locId, String acctId )
+	{
+		if ( pending.remove( key( locId, acctId ) ) != null )
+			discarded.incrementAndGet();
+	}
+
+	/**
+	 * Writes the buffered changes, changes that fail to write are kept for the next flush
+	 *
+	 * @return The number of accounts written
+	 */
+	synchronized int flush()
+	{
+		if ( pending.isEmpty() )
+			return 0;
+
+		Map<SQLDatastore, Map<String, List<Pending>>> batches = new HashMap<>();
+		for ( String key : new ArrayList<>( pending.keySet() ) )
+		{
+			Pending entry = pending.remove( key );
+			if ( entry != null )
+				batches.computeIfAbsent( entry.datastore, k -> new HashMap<>() ).computeIfAbsent( entry.table, k -> new ArrayList<>() ).add( entry );
+		}
+
+		int count = 0;
+		for ( Map.Entry<SQLDatastore, Map<String, List<Pending>>> datastore : batches.entrySet() )
+			for ( Map.Entry<String, List<Pending>> table : datastore.getValue().entrySet() )
+				try
+				{
+					datastore.getKey().transaction( tx ->
+					{
+						for ( Pending entry : table.getValue() )
+							tx.table( table.getKey() ).update().values( entry.values ).whereMatches( "locId", entry.locId ).whereMatches( "acctId", entry.acctId ).execute();
+						return null;
+					} );
+
+					count += table.getValue().size();
+					written.addAndGet( table.getValue().size() );
+				}
+				catch ( SQLException | RuntimeException e )
+				{
+					failures.addAndGet( table.getValue().size() );
+					// Keep the newer values of accounts that changed again meanwhile
+					for ( Pending entry : table.getValue() )
+						pending.merge( key( entry.locId, entry.acctId ), entry, ( newer, failed ) ->
+						{
+							failed.values.putAll( newer.values );
+							return failed;
+						} );
+					AccountManager.getLogger().severe( "Failed to write the login bookkeeping of " + table.getValue().size() + " account(s) to table '" + table.getKey() + "', they will be retried.", e );
+				}
+
+		return count;
+	}
+
+	public long getDiscarded()
+	{
+		return discarded.get();
+	}
+
+	public long getFailures()
+	{
+		return failures.get();
+	}
+
+	public int getPending()
+	{
+		return pending.size();
+	}
+
+	public long getRecorded()
+	{
+		return recorded.get();
+	}
+
+	public long getWritten()
+	{
+		return written.get();
+	}
+
+	/**
+	 * Buffers the column values of the account, replacing the values buffered before
+	 *
+	 * @param table  The account table
+	 * @param locId  The location id
+	 * @param acctId The account id
+	 * @param values The column values
+	 */
+	void record( SQLTable table, String locId, String acctId, Map<String, Object> values )
+	{
+		recorded.incrementAndGet();
+		pending.compute( key( locId, acctId ), ( k, entry ) ->
+		{
+			if ( entry == null )
+				entry = new Pending( table.datastore(), table.getName(), locId, acctId );
+			entry.values.putAll( values );
+			return entry;
+		} );
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "LoginBookkeeping{pending=%s,recorded=%s,written=%s,discarded=%s,failures=%s}", getPending(), getRecorded(), getWritten(), getDiscarded(), getFailures() );
+	}
+}
@@ -106,6 +106,12 @@ public class MemoryTypeCreator extends AccountTypeCreator implements Listener
 			}
 	}
 
+	@Override
+	public boolean mightExist( String locId, String acctId )
+	{
+		return accountExists( locId, acctId );
+	}
+
 	@Override
 	public void preLogin( AccountMeta meta, AccountPermissible via, String acctId, Object... credentials )
 	{
@@ -12,6 +12,7 @@ package com.chiorichan.account.types;
 import com.chiorichan.AppConfig;
 import com.chiorichan.account.AccountContext;
 import com.chiorichan.account.AccountLocation;
+import com.chiorichan.account.AccountManager;
 import com.chiorichan.account.AccountMeta;
 import com.chiorichan.account.AccountPermissible;
 import com.chiorichan.account.AccountType;
@@ -20,8 +21,10 @@ import com.chiorichan.account.lang.AccountDescriptiveReason;
 import com.chiorichan.account.lang.AccountException;
 import com.chiorichan.account.lang.AccountResolveResult;
 import com.chiorichan.account.lang.AccountResult;
+import com.chiorichan.configuration.ConfigKey;
 import com.chiorichan.datastore.sql.SQLTable;
 import com.chiorichan.datastore.sql.SQLTableColumns;
+import com.chiorichan.datastore.sql.bases.SQLDatastore;
 import com.chiorichan.datastore.sql.query.SQLQuerySelect;
 import com.chiorichan.datastore.sql.skel.SQLWhereGroup;
 import com.chiorichan.lang.ReportingLevel;
@@ -30,17 +33,27 @@ import com.chiorichan.permission.PermissibleEntity;
 import com.chiorichan.permission.Permission;
 import com.chiorichan.permission.PermissionDefault;
 import com.chiorichan.services.AppManager;
+import com.chiorichan.tasks.TaskManager;
+import com.chiorichan.tasks.Ticks;
 import com.chiorichan.tasks.Timings;
 import com.chiorichan.utils.UtilDB;
 import com.chiorichan.utils.UtilObjects;
 import com.google.common.base.Joiner;
 
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Handles Accounts that are loaded from SQL
@@ -49,6 +62,28 @@ public class SqlTypeCreator extends AccountTypeCreator
 {
 	public static final SqlTypeCreator INSTANCE = new SqlTypeCreator();
 
+	/**
+	 * Minutes between rebuilds of the known identifiers filter, zero or less disables filtering.
+	 * Rows written by anything but this process, e.g., another node or an admin tool, are unknown to the filter until the next rebuild,
+	 * so filtering is off unless every account is created through this process.
+	 */
+	private static final ConfigKey<Long> FILTER_INTERVAL = ConfigKey.ofLong( "accounts.identifierFilterInterval", 0 );
+
+	/**
+	 * Seconds between writes of the login bookkeeping, zero or less writes it on each login
+	 */
+	private static final ConfigKey<Long> BOOKKEEPING_INTERVAL = ConfigKey.ofLong( "accounts.bookkeepingInterval", 5 );
+
+	private final AtomicBoolean rebuilding = new AtomicBoolean();
+	private volatile long lastRebuild = 0;
+
+	private final LoginBookkeeping bookkeeping = new LoginBookkeeping();
+	private final AtomicBoolean bookkeepingScheduled = new AtomicBoolean();
+	/**
+	 * The columns of each table, per datastore as tables of different datastores can share a name
+	 */
+	private final Map<SQLDatastore, Map<String, SQLTableColumns>> tableColumns = Collections.synchronizedMap( new WeakHashMap<>() );
+
 	public SqlTypeCreator()
 	{
 
@@ -95,6 +130,30 @@ public class SqlTypeCreator extends AccountTypeCreator
 		}
 	}
 
+	@Override
+	public boolean mightExist( String locId, String acctId )
+	{
+		long interval = FILTER_INTERVAL.get();
+		if ( interval <= 0 )
+			return true;
+
+		// Locations with their own table or login keys are not covered by the filter
+		AccountLocation location = resolveLocId( locId );
+		if ( location != null && ( location.getAccountTable() != null || location.getAccountFields() != null && !location.getAccountFields().isEmpty() ) )
+			return true;
+
+		// The rebuild reads the whole table, so it never runs on the calling thread, without the TaskManager the filter stays unbuilt and matches anything
+		TaskManager manager = TaskManager.instanceWithoutException();
+		AccountManager accountManager = AccountManager.instanceWithoutException();
+		if ( manager != null && accountManager != null && System.currentTimeMillis() - lastRebuild > TimeUnit.MINUTES.toMillis( interval ) && rebuilding.compareAndSet( false, true ) )
+		{
+			lastRebuild = System.currentTimeMillis();
+			manager.runTaskAsynchronously( accountManager, this::rebuildKnownIdentifiers );
+		}
+
+		return knownIdentifiers.mightContain( acctId );
+	}
+
 	@Override
 	public void preLogin( AccountMeta meta, AccountPermissible via, String acctId, Object... credentials ) throws AccountException
 	{
@@ -106,6 +165,58 @@ public class SqlTypeCreator extends AccountTypeCreator
 			throw new AccountException( AccountDescriptiveReason.ACCOUNT_NOT_ACTIVATED, meta );
 	}
 
+	/**
+	 * Reads every login value from the default accounts table into the known identifiers filter.
+	 * On failure the filter is discarded, so lookups are never wrongly skipped.
+	 */
+	private void rebuildKnownIdentifiers()
+	{
+		try
+		{
+			knownIdentifiers.beginBuild();
+
+			SQLTable table = AppConfig.get().getDatabase().table( AppConfig.get().getString( "accounts.sqlTable", "accounts" ) );
+
+			Set<String> loginKeys = new HashSet<>( getLoginKeys() );
+			loginKeys.add( "acctId" );
+			loginKeys.add( "username" );
+
+			Set<String> fields = new HashSet<>();
+			for ( String c : table.columnNames() )
+				for ( String loginKey : loginKeys )
+					if ( c.equalsIgnoreCase( loginKey ) )
+						fields.add( c );
+
+			List<String> values = new ArrayList<>();
+			SQLQuerySelect select = table.select().fields( fields ).execute();
+			try
+			{
+				// The result set is positioned on the first row already
+				ResultSet rs = select.resultSet();
+				if ( rs != null )
+					do
+						for ( String field : fields )
+							values.add( rs.getString( field ) );
+					while ( rs.next() );
+			}
+			finally
+			{
+				select.close();
+			}
+
+			knownIdentifiers.build( values );
+		}
+		catch ( Throwable t )
+		{
+			knownIdentifiers.clear();
+			Log.get().warning( "Failed to build the known account identifiers filter: " + t.getMessage() );
+		}
+		finally
+		{
+			rebuilding.set( false );
+		}
+	}
+
 	public AccountLocation resolveLocId( String locId )
 	{
 		LocationService service = AppManager.getService( AccountLocation.class );
@@ -217,11 +328,62 @@ public class SqlTypeCreator extends AccountTypeCreator
 		return columns.refresh();
 	}
 
+	/**
+	 * Returns the columns of the table, checking the table the first time only
+	 */
+	private SQLTableColumns columns( SQLTable table ) throws SQLException
+	{
+		Map<String, SQLTableColumns> datastoreColumns = tableColumns.computeIfAbsent( table.datastore(), datastore -> new ConcurrentHashMap<>() );
+		SQLTableColumns columns = datastoreColumns.get( table.getName() );
+		if ( columns == null )
+		{
+			columns = checkTable( table );
+			datastoreColumns.put( table.getName(), columns );
+		}
+		return columns;
+	}
+
+	@Override
+	public void flush()
+	{
+		bookkeeping.flush();
+	}
+
+	/**
+	 * @return The buffer of login bookkeeping columns
+	 */
+	public LoginBookkeeping getBookkeeping()
+	{
+		return bookkeeping;
+	}
+
+	/**
+	 * Buffers the bookkeeping columns of the account, they are written with the next flush or the next save of the account
+	 */
+	private void record( SQLTable table, AccountMeta meta, String... keys )
+	{
+		Map<String, Object> values = new HashMap<>();
+		for ( String key : keys )
+			values.put( key, meta.getInteger( key ) );
+		bookkeeping.record( table, meta.getLocId(), meta.getId(), values );
+
+		long interval = BOOKKEEPING_INTERVAL.get();
+		TaskManager manager = TaskManager.instanceWithoutException();
+		AccountManager accountManager = AccountManager.instanceWithoutException();
+		if ( interval <= 0 || manager == null || accountManager == null )
+			bookkeeping.flush();
+		else if ( bookkeepingScheduled.compareAndSet( false, true ) )
+			manager.scheduleAsyncRepeatingTask( accountManager, Ticks.SECOND * interval, Ticks.SECOND * interval, bookkeeping::flush );
+	}
+
 	@Override
 	public void save( AccountContext context ) throws AccountException
 	{
 		UtilObjects.notNull( context );
 
+		// The meta holds the latest bookkeeping, written below
+		bookkeeping.discard( context.getLocId(), context.getAcctId() );
+
 		try
 		{
 			Map<String, Object> metaData = new HashMap<>( context.meta() == null ? context.getValues() : context.meta().getMeta() );
@@ -229,53 +391,75 @@ public class SqlTypeCreator extends AccountTypeCreator
 			metaData.put( "acctId", context.getAcctId() );
 			metaData.put( "locId", context.getLocId() );
 
-			SQLTable table = null;
-			AccountLocation location = resolveLocId( context.getLocId() );
-
-			if ( location != null )
-				table = location.getAccountTable();
-			if ( table == null )
-				table = AppConfig.get().getDatabase().table( AppConfig.get().getString( "accounts.sqlTable", "accounts" ) );
+			SQLTable table = table( context.getLocId() );
+			SQLTableColumns columns = columns( table );
 
-			SQLTableColumns columns = checkTable( table );
+			try
+			{
+				write( table, columns, context, metaData );
+			}
+			catch ( SQLException e )
+			{
+				// The cached columns may be stale, e.g., a column was changed by another node, reload them and try once more
+				synchronized ( columns )
+				{
+					columns.refresh();
+				}
+				write( table, columns, context, metaData );
+			}
+		}
+		catch ( SQLException e )
+		{
+			throw new AccountException( e, context.meta() );
+		}
+		catch ( Throwable t )
+		{
+			t.printStackTrace();
+		}
+	}
 
+	/**
+	 * Adds the missing columns and writes the account row
+	 */
+	private void write( SQLTable table, SQLTableColumns columns, AccountContext context, Map<String, Object> metaData ) throws SQLException, AccountException
+	{
+		synchronized ( columns )
+		{
+			boolean added = false;
 			for ( Entry<String, Object> e : metaData.entrySet() )
 			{
 				String key = e.getKey();
 
-				String type = UtilDB.objectToSqlType( e.getValue() );
 				if ( !columns.contains( key ) )
+				{
+					String type = UtilDB.objectToSqlType( e.getValue() );
 					try
 					{
 						table.addColumn( type, key );
+						added = true;
 					}
 					catch ( SQLException se )
 					{
-						throw new AccountException( new AccountDescriptiveReason( "Failed to create SQL column '" + key + "' with type '" + type + "' in the 'accounts' table", ReportingLevel.E_ERROR ), se, context.meta() );
+						// The column might have been added by another node meanwhile
+						columns.refresh();
+						if ( !columns.contains( key ) )
+							throw new AccountException( new AccountDescriptiveReason( "Failed to create SQL column '" + key + "' with type '" + type + "' in the 'accounts' table", ReportingLevel.E_ERROR ), se, context.meta() );
 					}
+				}
 			}
 
-			columns.refresh();
+			if ( added )
+				columns.refresh();
 
 			for ( SQLTableColumns.SQLColumn col : columns.columnsRequired() )
 				if ( !metaData.containsKey( col.name() ) )
 					metaData.put( col.name(), UtilDB.sqlTypeToObject( col.type() ) );
+		}
 
-			SQLQuerySelect select = table.select().whereMatches( "locId", context.getLocId() ).whereMatches( "acctId", context.getAcctId() ).limit( 1 ).execute();
-
-			if ( select.rowCount() > 0 )
-				table.update().values( metaData ).whereMatches( "locId", context.getLocId() ).whereMatches( "acctId", context.getAcctId() ).limit( 1 ).execute();
-			else
+		// Existing accounts are the common case, only look for the row if the update matched none
+		if ( table.update().values( metaData ).whereMatches( "locId", context.getLocId() ).whereMatches( "acctId", context.getAcctId() ).limit( 1 ).execute().rowCount() < 1 )
+			if ( table.select().whereMatches( "locId", context.getLocId() ).whereMatches( "acctId", context.getAcctId() ).limit( 1 ).execute().rowCount() < 1 )
 				table.insert().values( metaData ).execute();
-		}
-		catch ( SQLException e )
-		{
-			throw new AccountException( e, context.meta() );
-		}
-		catch ( Throwable t )
-		{
-			t.printStackTrace();
-		}
 	}
 
 	@Override
@@ -293,18 +477,12 @@ public class SqlTypeCreator extends AccountTypeCreator
 
 		try
 		{
-			SQLTable table = null;
-			AccountLocation location = resolveLocId( meta.getLocId() );
-
-			if ( location != null )
-				table = location.getAccountTable();
-			if ( table == null )
-				table = AppConfig.get().getDatabase().table( AppConfig.get().getString( "accounts.sqlTable", "accounts" ) );
+			SQLTable table = table( meta.getLocId() );
 
 			meta.set( "lastLoginFail", Timings.epoch() );
 			meta.set( "numLoginFail", meta.getInteger( "numLoginFail" ) + 1 );
 
-			table.update().whereMatches( "locId", meta.getLocId() ).whereMatches( "acctId", meta.getId() ).value( "lastLoginFail", meta.getInteger( "lastLoginFail" ) ).value( "numLoginFail", meta.getInteger( "numLoginFail" ) ).execute();
+			record( table, meta, "lastLoginFail", "numLoginFail" );
 		}
 		catch ( SQLException e )
 		{
@@ -319,24 +497,31 @@ public class SqlTypeCreator extends AccountTypeCreator
 
 		try
 		{
-			SQLTable table = null;
-			AccountLocation location = resolveLocId( meta.getLocId() );
-
-			if ( location != null )
-				table = location.getAccountTable();
-			if ( table == null )
-				table = AppConfig.get().getDatabase().table( AppConfig.get().getString( "accounts.sqlTable", "accounts" ) );
+			SQLTable table = table( meta.getLocId() );
 
 			meta.set( "lastActive", Timings.epoch() );
 			meta.set( "lastLogin", Timings.epoch() );
 			meta.set( "lastLoginFail", 0 );
 			meta.set( "numLoginFail", 0 );
 
-			table.update().whereMatches( "locId", meta.getLocId() ).whereMatches( "acctId", meta.getId() ).value( "lastActive", meta.getInteger( "lastActive" ) ).value( "lastLogin", meta.getInteger( "lastLogin" ) ).value( "lastLoginFail", 0 ).value( "numLoginFail", 0 ).execute();
+			record( table, meta, "lastActive", "lastLogin", "lastLoginFail", "numLoginFail" );
 		}
 		catch ( SQLException e )
 		{
 			e.printStackTrace();
 		}
 	}
+
+	private SQLTable table( String locId ) throws SQLException
+	{
+		SQLTable table = null;
+		AccountLocation location = resolveLocId( locId );
+
+		if ( location != null )
+			table = location.getAccountTable();
+		if ( table == null )
+			table = AppConfig.get().getDatabase().table( AppConfig.get().getString( "accounts.sqlTable", "accounts" ) );
+
+		return table;
+	}
 }
@@ -0,0 +1,300 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.configuration;
+
+import com.chiorichan.AppConfig;
+import com.chiorichan.logger.Log;
+import com.chiorichan.utils.UtilObjects;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+
+/**
+ * Provides a configuration key declared once with a path, type, default and optional validator.
+ * Defaults added to the root configuration take precedence over the default of the key, as they do for the getters without a default.
+ * <p>
+ * The resolved value is cached until the section reports a change to the path through {@link OnConfigurationListener},
+ * so repeated reads of hot settings cost a volatile read instead of a path walk and type conversion.
+ * Only the last section a key was resolved against is cached, keys are intended for long-lived configurations such as {@link AppConfig}.
+ *
+ * <pre>
+ * static final ConfigKey&lt;Integer&gt; TIMEOUT = ConfigKey.ofInt( "server.timeout", 30 ).validate( v -&gt; v &gt; 0 );
+ *
+ * int timeout = TIMEOUT.get();
+ * </pre>
+ *
+ * @param <T> The value type
+ */
+public final class ConfigKey<T> implements OnConfigurationListener
+{
+	private static class Resolved<T>
+	{
+		private final ConfigurationSection section;
+		private final int generation;
+		private final T value;
+
+		Resolved( ConfigurationSection section, int generation, T value )
+		{
+			this.section = section;
+			this.generation = generation;
+			this.value = value;
+		}
+	}
+
+	public static ConfigKey<Boolean> ofBoolean( String path, boolean def )
+	{
+		return new ConfigKey<>( path, Boolean.class, def, ( section, key ) ->
+		{
+			Object rootDef = rootDefault( section, key );
+			return section.getBoolean( key, rootDef instanceof Boolean ? ( Boolean ) rootDef : def );
+		} );
+	}
+
+	public static ConfigKey<Double> ofDouble( String path, double def )
+	{
+		return new ConfigKey<>( path, Double.class, def, ( section, key ) ->
+		{
+			Object rootDef = rootDefault( section, key );
+			return section.getDouble( key, rootDef instanceof Number ? ( ( Number ) rootDef ).doubleValue() : def );
+		} );
+	}
+
+	public static ConfigKey<Integer> ofInt( String path, int def )
+	{
+		return new ConfigKey<>( path, Integer.class, def, ( section, key ) ->
+		{
+			Object rootDef = rootDefault( section, key );
+			return section.getInt( key, rootDef instanceof Number ? ( ( Number ) rootDef ).intValue() : def );
+		} );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	public static <T> ConfigKey<List<T>> ofList( String path, List<T> def )
+	{
+		return new ConfigKey<>( path, ( Class<List<T>> ) ( Class<?> ) List.class, def, ( section, key ) ->
+		{
+			Object rootDef = rootDefault( section, key );
+			return section.getList( key, rootDef instanceof List ? ( List<T> ) rootDef : def );
+		} );
+	}
+
+	public static ConfigKey<Long> ofLong( String path, long def )
+	{
+		return new ConfigKey<>( path, Long.class, def, ( section, key ) ->
+		{
+			Object rootDef = rootDefault( section, key );
+			return section.getLong( key, rootDef instanceof Number ? ( ( Number ) rootDef ).longValue() : def );
+		} );
+	}
+
+	/**
+	 * Declares a key of any type, values that are not an instance of the type resolve to the default.
+	 *
+	 * @param path The config path
+	 * @param type The value type
+	 * @param def  The default value
+	 * @param <T>  The value type
+	 * @return The new key
+	 */
+	public static <T> ConfigKey<T> ofObject( String path, Class<T> type, T def )
+	{
+		return new ConfigKey<>( path, type, def, ( section, key ) ->
+		{
+			Object rootDef = rootDefault( section, key );
+			T fallback = type.isInstance( rootDef ) ? type.cast( rootDef ) : def;
+			Object obj = section.get( key, fallback );
+			return type.isInstance( obj ) ? type.cast( obj ) : fallback;
+		} );
+	}
+
+	public static ConfigKey<String> ofString( String path, String def )
+	{
+		return new ConfigKey<>( path, String.class, def, ( section, key ) ->
+		{
+			Object rootDef = rootDefault( section, key );
+			return section.getString( key, rootDef != null ? rootDef.toString() : def );
+		} );
+	}
+
+	/**
+	 * Gets the value set with {@link Configuration#addDefault(String, Object)}, which takes precedence over the default of the key just like it does for
+	 * the getters without a default, e.g., {@link ConfigurationSection#getInt(String)}
+	 *
+	 * @return The default of the root, null if none
+	 */
+	private static Object rootDefault( ConfigurationSection section, String key )
+	{
+		Configuration root = section.getRoot();
+		Configuration defaults = root == null ? null : root.getDefaults();
+		return defaults == null ? null : defaults.get( MemorySection.createPath( section, key ) );
+	}
+
+	private final String path;
+	private final Class<T> type;
+	private final T def;
+	private final BiFunction<ConfigurationSection, String, T> resolver;
+	private final AtomicInteger generation = new AtomicInteger();
+	private final Set<ConfigurationSection> registered = Collections.newSetFromMap( new WeakHashMap<>() );
+	private volatile String absolutePath;
+	private volatile char separator = '.';
+	private volatile Predicate<T> validator = null;
+	private volatile Resolved<T> cached = null;
+
+	private ConfigKey( String path, Class<T> type, T def, BiFunction<ConfigurationSection, String, T> resolver )
+	{
+		UtilObjects.notEmpty( path, "Path cannot be empty" );
+		this.path = path;
+		absolutePath = path;
+		this.type = type;
+		this.def = def;
+		this.resolver = resolver;
+	}
+
+	/**
+	 * Resolves the key against the application configuration
+	 *
+	 * @return The value, or the default if the configuration is not loaded
+	 */
+	public T get()
+	{
+		ConfigurationSection section = AppConfig.get().yaml();
+		return section == null ? def : get( section );
+	}
+
+	/**
+	 * Resolves the key against the specified section, returning the cached value if the path has not changed since it was last resolved.
+	 *
+	 * @param section The section to resolve against, normally a root {@link Configuration}
+	 * @return The value
+	 */
+	public T get( ConfigurationSection section )
+	{
+		Resolved<T> resolved = cached;
+		if ( resolved != null && resolved.section == section && resolved.generation == generation.get() )
+			return resolved.value;
+		return resolve( section );
+	}
+
+	public T getDefault()
+	{
+		return def;
+	}
+
+	public String getPath()
+	{
+		return path;
+	}
+
+	public Class<T> getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Forces the next read to resolve the value again
+	 */
+	public void invalidate()
+	{
+		generation.incrementAndGet();
+	}
+
+	private boolean isAffected( String changed )
+	{
+		if ( changed == null || changed.length() == 0 )
+			return true;
+		String path = absolutePath;
+		if ( changed.equals( path ) )
+			return true;
+
+		String shorter = changed.length() < path.length() ? changed : path;
+		String longer = shorter == changed ? path : changed;
+		return longer.startsWith( shorter ) && longer.charAt( shorter.length() ) == separator;
+	}
+
+	@Override
+	public void onSectionAdd( ConfigurationSection section )
+	{
+		if ( isAffected( section.getCurrentPath() ) )
+			invalidate();
+	}
+
+	@Override
+	public void onSectionChange( ConfigurationSection parent, String affectedKey )
+	{
+		if ( isAffected( MemorySection.createPath( parent, affectedKey ) ) )
+			invalidate();
+	}
+
+	@Override
+	public void onSectionRemove( ConfigurationSection parent, ConfigurationSection orphanedChild )
+	{
+		if ( isAffected( orphanedChild.getCurrentPath() ) )
+			invalidate();
+	}
+
+	private T resolve( ConfigurationSection section )
+	{
+		Configuration root = section.getRoot();
+		if ( root != null && root.options() != null )
+			separator = root.options().pathSeparator();
+		absolutePath = root == null || root == section ? path : MemorySection.createPath( section, path );
+
+		listen( root == null ? section : root );
+		if ( root != null && root.getDefaults() != null )
+			listen( root.getDefaults() );
+
+		// Read the generation before resolving, so a change made while resolving is not hidden by the cache
+		int gen = generation.get();
+		T value = resolver.apply( section, path );
+
+		Predicate<T> validator = this.validator;
+		if ( validator != null && value != null && !validator.test( value ) )
+		{
+			Log.get().warning( String.format( "The config value '%s' at path '%s' is invalid, using the default '%s' instead.", value, path, def ) );
+			value = def;
+		}
+
+		cached = new Resolved<>( section, gen, value );
+		return value;
+	}
+
+	private void listen( ConfigurationSection section )
+	{
+		synchronized ( registered )
+		{
+			if ( registered.add( section ) )
+				section.addListener( this );
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "ConfigKey{path=%s,type=%s,default=%s}", path, type.getSimpleName(), def );
+	}
+
+	/**
+	 * Sets the validator, values failing validation are logged and resolve to the default.
+	 *
+	 * @param validator The validator
+	 * @return This key
+	 */
+	public ConfigKey<T> validate( Predicate<T> validator )
+	{
+		this.validator = validator;
+		invalidate();
+		return this;
+	}
+}
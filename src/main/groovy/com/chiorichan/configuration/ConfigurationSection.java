@@ -40,7 +40,7 @@ public interface ConfigurationSection
 	/**
 	 * Gets a Map containing all keys and their values for this section.
 	 * <p/>
-	 * If deep is set to true, then this will contain all the keys and values within any child {@link ConfigurationSection}s (and their children, etc). These keys will be in a valid path notation for you to use.
+	 * If deep is set to true, then this will contain all the values within any child {@link ConfigurationSection}s (and their children, etc), the sections themselves are omitted. These keys will be in a valid path notation for you to use.
 	 * <p/>
 	 * If deep is set to false, then this will contain only the keys and values of any direct children, and not their own children.
 	 *
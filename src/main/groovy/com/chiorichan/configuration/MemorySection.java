@@ -23,13 +23,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -101,9 +102,18 @@ public class MemorySection implements ConfigurationSection
 	private final String path;
 
 	protected final Map<String, Object> map = new ConcurrentHashMap<>();
-	protected final Set<String> changes = new HashSet<>();
+	protected final Set<String> changes = ConcurrentHashMap.newKeySet();
 
-	protected final List<OnConfigurationListener> listeners = new ArrayList<>();
+	/**
+	 * Only set on the root, indexes the full path of every section and value in the tree
+	 */
+	private volatile PathIndex pathIndex = null;
+	/**
+	 * Is this section held by it's parent, sections created on the fly, e.g., by {@link #getConfigurationSection(String)} from a Map, are not indexed
+	 */
+	private volatile boolean attached = false;
+
+	protected final List<OnConfigurationListener> listeners = new CopyOnWriteArrayList<>();
 	protected final OnConfigurationListener forwardingListener = new OnConfigurationListener()
 	{
 		@Override
@@ -224,11 +234,13 @@ public class MemorySection implements ConfigurationSection
 		String key = path.substring( i2 );
 		if ( section == this )
 		{
-			ConfigurationSection result = new MemorySection( this, key );
+			MemorySection result = new MemorySection( this, key );
 			synchronized ( map )
 			{
 				// Log.get().i("Creating ConfigurationSection: " + getCurrentPath() + "/" + key);
-				map.put( key, result );
+				detach( map.put( key, result ) );
+				result.attached = true;
+				indexPut( key, result );
 				changes.add( key );
 				forwardingListener.onSectionAdd( result );
 			}
@@ -847,6 +859,131 @@ public class MemorySection implements ConfigurationSection
 		return result;
 	}
 
+	/**
+	 * Gets the deep keys of this section starting with the prefix, e.g., {@code getKeys( "plugins.auth" )} matches both {@code plugins.auth.enabled} and {@code plugins.authors}.
+	 * Served from the index maintained by the root, so the cost does not depend on the size of the configuration.
+	 *
+	 * @param prefix The key prefix, relative to this section
+	 * @return A sorted read-only set of the matching keys
+	 */
+	public Set<String> getKeys( String prefix )
+	{
+		PathIndex index = index();
+		if ( index != null )
+			return Collections.unmodifiableSet( index.keys( fullPath, prefix ) );
+		return getDeepKeys().stream().filter( key -> key.startsWith( prefix ) ).collect( Collectors.toCollection( TreeSet::new ) );
+	}
+
+	/**
+	 * Gets the deep keys of this section, including the keys of sections, without the defaults.
+	 * Unlike {@link #getKeys(boolean)} this is a read-only view served from the index maintained by the root, so it's not copied and reflects later changes.
+	 *
+	 * @return A sorted read-only set of the keys
+	 */
+	public Set<String> getDeepKeys()
+	{
+		PathIndex index = index();
+		if ( index != null )
+			return Collections.unmodifiableSet( index.keys( fullPath ) );
+
+		Set<String> result = new TreeSet<>();
+		char separator = getRoot().options().pathSeparator();
+		for ( Map.Entry<String, Object> entry : map.entrySet() )
+		{
+			result.add( entry.getKey() );
+			if ( entry.getValue() instanceof ConfigurationSection )
+				for ( String key : entry.getValue() instanceof MemorySection ? ( ( MemorySection ) entry.getValue() ).getDeepKeys() : ( ( ConfigurationSection ) entry.getValue() ).getKeys( true ) )
+					result.add( entry.getKey() + separator + key );
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the deep leaf values of this section, without the defaults.
+	 * Unlike {@link #getValues(boolean)} this is a read-only view served from the index maintained by the root, so it's not copied and reflects later changes.
+	 * Sections are not included and sections holding a list are not converted to a {@link List}, only their elements are included.
+	 *
+	 * @return A sorted read-only map of the leaf values
+	 */
+	public Map<String, Object> getDeepValues()
+	{
+		PathIndex index = index();
+		if ( index != null )
+			return Collections.unmodifiableMap( index.values( fullPath ) );
+
+		Map<String, Object> result = new TreeMap<>();
+		char separator = getRoot().options().pathSeparator();
+		for ( Map.Entry<String, Object> entry : map.entrySet() )
+			if ( entry.getValue() instanceof ConfigurationSection )
+			{
+				for ( Map.Entry<String, Object> child : ( entry.getValue() instanceof MemorySection ? ( ( MemorySection ) entry.getValue() ).getDeepValues() : ( ( ConfigurationSection ) entry.getValue() ).getValues( true ) ).entrySet() )
+					result.put( entry.getKey() + separator + child.getKey(), child.getValue() );
+			}
+			else
+				result.put( entry.getKey(), entry.getValue() );
+		return result;
+	}
+
+	/**
+	 * @return True if the value is a section created for the key of this section, so it's paths are already correct
+	 */
+	private boolean isOwnChild( Object value, String key )
+	{
+		return value instanceof MemorySection && ( ( MemorySection ) value ).getParent() == this && key.equals( ( ( MemorySection ) value ).getName() );
+	}
+
+	private static void detach( Object section )
+	{
+		if ( section instanceof MemorySection )
+			( ( MemorySection ) section ).attached = false;
+	}
+
+	/**
+	 * @return The index of the root, or null if this section is not part of the root tree
+	 */
+	private PathIndex index()
+	{
+		ConfigurationSection section = this;
+		while ( section != root )
+		{
+			if ( !( section instanceof MemorySection ) || !( ( MemorySection ) section ).attached )
+				return null;
+			section = section.getParent();
+		}
+
+		if ( !( root instanceof MemorySection ) || root.options() == null )
+			return null;
+
+		MemorySection rootSection = ( MemorySection ) root;
+		PathIndex index = rootSection.pathIndex;
+		if ( index == null )
+			synchronized ( rootSection.map )
+			{
+				if ( rootSection.pathIndex == null )
+					rootSection.pathIndex = new PathIndex();
+				index = rootSection.pathIndex;
+			}
+
+		char separator = root.options().pathSeparator();
+		if ( index.separator() != separator )
+			index.rebuild( rootSection, separator );
+		return index;
+	}
+
+	private void indexPut( String key, Object value )
+	{
+		PathIndex index = index();
+		if ( index != null )
+			index.put( createPath( this, key ), value );
+	}
+
+	private void indexRemove( String key )
+	{
+		PathIndex index = index();
+		if ( index != null )
+			index.remove( createPath( this, key ) );
+	}
+
 	@SuppressWarnings( "unchecked" )
 	@Override
 	public <T> List<T> getList( String path )
@@ -1277,9 +1414,27 @@ public class MemorySection implements ConfigurationSection
 			if ( value == null )
 			{
 				Object removed = map.remove( key );
+				detach( removed );
+				indexRemove( key );
 				if ( removed instanceof ConfigurationSection )
 					forwardingListener.onSectionRemove( this, ( ConfigurationSection ) removed );
 			}
+			else if ( value instanceof ConfigurationSection )
+			{
+				if ( isOwnChild( value, key ) )
+				{
+					detach( map.put( key, value ) );
+					( ( MemorySection ) value ).attached = true;
+					indexPut( key, value );
+				}
+				else
+				{
+					// Sections of another tree keep their own paths, so they are copied to keep the index complete
+					ConfigurationSection copy = createSection( key );
+					for ( Map.Entry<String, Object> entry : ( value instanceof MemorySection ? ( ( MemorySection ) value ).map : ( ( ConfigurationSection ) value ).getValues( false ) ).entrySet() )
+						copy.set( entry.getKey(), entry.getValue(), false );
+				}
+			}
 			else if ( convert )
 			{
 				if ( value instanceof Map )
@@ -1289,10 +1444,16 @@ public class MemorySection implements ConfigurationSection
 				// else if ( map.containsKey( key ) && map.get( key ) instanceof ConfigurationSection && value instanceof ConfigurationSection )
 					// ( ( ConfigurationSection ) map.get( key ) ).set( ( ConfigurationSection ) value );
 				else
-					map.put( key, value );
+				{
+					detach( map.put( key, value ) );
+					indexPut( key, value );
+				}
 			}
 			else
-				map.put( key, value );
+			{
+				detach( map.put( key, value ) );
+				indexPut( key, value );
+			}
 
 			forwardingListener.onSectionChange( this, key );
 			changes.add( key );
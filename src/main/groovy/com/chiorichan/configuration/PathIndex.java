@@ -0,0 +1,249 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.configuration;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Maintains a sorted index of every path in a root {@link MemorySection}, updated as sections and values are set or removed.
+ * Serves deep key sets, deep value maps and prefix queries as views without walking or copying the tree.
+ */
+final class PathIndex
+{
+	/**
+	 * Read-only view of the keys of a sub-map with the section prefix removed
+	 */
+	private static class KeyView extends AbstractSet<String>
+	{
+		private final NavigableMap<String, Object> paths;
+		private final String base;
+
+		KeyView( NavigableMap<String, Object> paths, String base )
+		{
+			this.paths = paths;
+			this.base = base;
+		}
+
+		@Override
+		public Iterator<String> iterator()
+		{
+			final Iterator<String> it = paths.keySet().iterator();
+			return new Iterator<String>()
+			{
+				@Override
+				public boolean hasNext()
+				{
+					return it.hasNext();
+				}
+
+				@Override
+				public String next()
+				{
+					return it.next().substring( base.length() );
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			return paths.size();
+		}
+	}
+
+	/**
+	 * Read-only view of the leaf values of a sub-map with the section prefix removed, sections themselves are skipped
+	 */
+	private static class ValueView extends AbstractMap<String, Object>
+	{
+		private final NavigableMap<String, Object> paths;
+		private final String base;
+
+		ValueView( NavigableMap<String, Object> paths, String base )
+		{
+			this.paths = paths;
+			this.base = base;
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet()
+		{
+			return new AbstractSet<Entry<String, Object>>()
+			{
+				@Override
+				public Iterator<Entry<String, Object>> iterator()
+				{
+					final Iterator<Entry<String, Object>> it = paths.entrySet().iterator();
+					return new Iterator<Entry<String, Object>>()
+					{
+						private Entry<String, Object> next = advance();
+
+						private Entry<String, Object> advance()
+						{
+							while ( it.hasNext() )
+							{
+								Entry<String, Object> entry = it.next();
+								if ( !( entry.getValue() instanceof ConfigurationSection ) )
+									return new SimpleImmutableEntry<>( entry.getKey().substring( base.length() ), entry.getValue() );
+							}
+							return null;
+						}
+
+						@Override
+						public boolean hasNext()
+						{
+							return next != null;
+						}
+
+						@Override
+						public Entry<String, Object> next()
+						{
+							if ( next == null )
+								throw new NoSuchElementException();
+							Entry<String, Object> result = next;
+							next = advance();
+							return result;
+						}
+					};
+				}
+
+				@Override
+				public int size()
+				{
+					int size = 0;
+					for ( Object value : paths.values() )
+						if ( !( value instanceof ConfigurationSection ) )
+							size++;
+					return size;
+				}
+			};
+		}
+
+		@Override
+		public boolean containsKey( Object key )
+		{
+			return get( key ) != null;
+		}
+
+		@Override
+		public Object get( Object key )
+		{
+			if ( !( key instanceof String ) )
+				return null;
+			Object value = paths.get( base + key );
+			return value instanceof ConfigurationSection ? null : value;
+		}
+	}
+
+	private final ConcurrentSkipListMap<String, Object> paths = new ConcurrentSkipListMap<>();
+	private volatile char separator = 0;
+
+	private String base( String path )
+	{
+		return path.length() == 0 ? "" : path + separator;
+	}
+
+	private NavigableMap<String, Object> children( String path )
+	{
+		if ( path.length() == 0 )
+			return paths;
+		return paths.subMap( path + separator, true, path + ( char ) ( separator + 1 ), false );
+	}
+
+	/**
+	 * Returns the deep keys below the section path, including the paths of nested sections
+	 *
+	 * @param path The full path of the section, empty for the root
+	 * @return A sorted read-only view of the keys, relative to the section
+	 */
+	Set<String> keys( String path )
+	{
+		return new KeyView( children( path ), base( path ) );
+	}
+
+	/**
+	 * Returns the deep keys below the section path starting with the specified prefix
+	 *
+	 * @param path   The full path of the section, empty for the root
+	 * @param prefix The prefix relative to the section
+	 * @return A sorted read-only view of the matching keys, relative to the section
+	 */
+	Set<String> keys( String path, String prefix )
+	{
+		String base = base( path );
+		return new KeyView( paths.subMap( base + prefix, true, base + prefix + Character.MAX_VALUE, false ), base );
+	}
+
+	void put( String path, Object value )
+	{
+		Object old = paths.put( path, value );
+		if ( old instanceof ConfigurationSection )
+			children( path ).clear();
+		if ( value instanceof MemorySection )
+			walk( ( MemorySection ) value, path );
+	}
+
+	/**
+	 * Indexes the entire tree, used on first access and when the path separator changes
+	 *
+	 * @param root      The root section
+	 * @param separator The new separator
+	 */
+	synchronized void rebuild( MemorySection root, char separator )
+	{
+		if ( this.separator == separator )
+			return;
+
+		this.separator = separator;
+		paths.clear();
+		walk( root, "" );
+	}
+
+	void remove( String path )
+	{
+		Object old = paths.remove( path );
+		if ( old instanceof ConfigurationSection )
+			children( path ).clear();
+	}
+
+	char separator()
+	{
+		return separator;
+	}
+
+	/**
+	 * Returns the deep leaf values below the section path
+	 *
+	 * @param path The full path of the section, empty for the root
+	 * @return A sorted read-only view of the values, keys relative to the section
+	 */
+	Map<String, Object> values( String path )
+	{
+		return new ValueView( children( path ), base( path ) );
+	}
+
+	private void walk( MemorySection section, String path )
+	{
+		for ( Map.Entry<String, Object> entry : section.map.entrySet() )
+		{
+			String key = path.length() == 0 ? entry.getKey() : path + separator + entry.getKey();
+			paths.put( key, entry.getValue() );
+			if ( entry.getValue() instanceof MemorySection )
+				walk( ( MemorySection ) entry.getValue(), key );
+		}
+	}
+}
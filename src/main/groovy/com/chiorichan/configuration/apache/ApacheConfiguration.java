@@ -14,11 +14,45 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-
-import org.apache.commons.io.IOUtils;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class ApacheConfiguration extends ApacheSection
 {
+	private static class ParsedFile
+	{
+		final long lastModified;
+		final long length;
+		final ApacheSection section;
+
+		ParsedFile( long lastModified, long length, ApacheSection section )
+		{
+			this.lastModified = lastModified;
+			this.length = length;
+			this.section = section;
+		}
+	}
+
+	private static final int CACHE_SIZE = 512;
+
+	/**
+	 * Parsed htaccess files by canonical path, least recently used entries are evicted once the cache is full
+	 */
+	private static final Map<String, ParsedFile> PARSED = Collections.synchronizedMap( new LinkedHashMap<String, ParsedFile>( 16, 0.75f, true )
+	{
+		@Override
+		protected boolean removeEldestEntry( Map.Entry<String, ParsedFile> eldest )
+		{
+			return size() > CACHE_SIZE;
+		}
+	} );
+
+	public static void clearCache()
+	{
+		PARSED.clear();
+	}
+
 	public ApacheConfiguration()
 	{
 
@@ -57,10 +91,9 @@ public class ApacheConfiguration extends ApacheSection
 	public ApacheConfiguration appendWithFile( File file ) throws FileNotFoundException
 	{
 		if ( file.exists() && file.isFile() )
-			try ( BufferedReader br = new BufferedReader( new FileReader( file ) ) )
+			try
 			{
-				appendRaw( br, file.getAbsolutePath() );
-				IOUtils.closeQuietly( br );
+				append( parse( file ) );
 			}
 			catch ( IOException e )
 			{
@@ -69,4 +102,28 @@ public class ApacheConfiguration extends ApacheSection
 
 		return this;
 	}
+
+	/**
+	 * Returns the directives parsed from the file, reusing the previous result while the file has the same modified time and size.
+	 * The returned section is shared and must not be modified.
+	 */
+	private static ApacheSection parse( File file ) throws IOException
+	{
+		String path = file.getCanonicalPath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		ParsedFile cached = PARSED.get( path );
+		if ( cached != null && cached.lastModified == lastModified && cached.length == length )
+			return cached.section;
+
+		ApacheSection section = new ApacheSection();
+		try ( BufferedReader br = new BufferedReader( new FileReader( file ) ) )
+		{
+			section.appendRaw( br, file.getAbsolutePath() );
+		}
+
+		PARSED.put( path, new ParsedFile( lastModified, length, section ) );
+		return section;
+	}
 }
@@ -36,6 +36,17 @@ public class ApacheDirective
 		this.arguments = arguments;
 	}
 
+	/**
+	 * Copies this directive into the section, so the copy can be changed without affecting this directive
+	 */
+	ApacheDirective copy( ApacheSection parent )
+	{
+		ApacheDirective directive = new ApacheDirective( parent, key, arguments );
+		directive.source = source;
+		directive.lineNum = lineNum;
+		return directive;
+	}
+
 	public String[] getArguments()
 	{
 		return arguments.toArray( new String[0] );
@@ -12,18 +12,14 @@ package com.chiorichan.configuration.apache;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.StringReader;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.regex.Pattern;
-
-import com.google.common.base.Splitter;
 
 public class ApacheSection extends ApacheDirective
 {
-	private static final Pattern LINE_SPLITTER_PATTERN = Pattern.compile( " (?=([^\"]*\"[^\"]*\")*[^\"]*$)" );
 	private final Set<ApacheDirective> directives = new TreeSet<>( new ApacheDirectiveComparator() );
 
 	public ApacheSection()
@@ -36,38 +32,64 @@ public class ApacheSection extends ApacheDirective
 		super( parent, key, arguments );
 	}
 
-	private void appendRaw( BufferedReader br, int lineNum, String path ) throws IOException
+	/**
+	 * Appends copies of the directives, as the section may be shared, e.g., parsed files are cached by {@link ApacheConfiguration}
+	 */
+	void append( ApacheSection section )
+	{
+		for ( ApacheDirective directive : section.directives )
+			directives.add( directive.copy( this ) );
+	}
+
+	@Override
+	ApacheSection copy( ApacheSection parent )
+	{
+		ApacheSection section = new ApacheSection( parent, key, arguments );
+		section.source = source;
+		section.lineNum = lineNum;
+		section.append( this );
+		return section;
+	}
+
+	/**
+	 * @return The number of the last line read
+	 */
+	private int appendRaw( BufferedReader br, int lineNum, String path ) throws IOException
 	{
 		for ( String l; ( l = br.readLine() ) != null; )
 		{
+			lineNum++;
 			l = l.trim();
 
-			if ( l == null || l.isEmpty() || l.startsWith( "#" ) )
+			if ( l.isEmpty() || l.startsWith( "#" ) )
 				continue;
 
 			if ( l.startsWith( "<" ) && l.endsWith( ">" ) )
 			{
 				if ( ( "</" + key + ">" ).equals( l ) )
-					return;
-				else
-				{
-					String[] sections = Splitter.on( LINE_SPLITTER_PATTERN ).splitToList( l.substring( 1, l.length() - 1 ) ).toArray( new String[0] );
-					ApacheSection directive = new ApacheSection( this, sections[0], Arrays.asList( sections ).subList( 1, sections.length ) );
-					directive.source = path;
-					directive.lineNum = lineNum;
-					directive.appendRaw( br, lineNum, path );
-					directives.add( directive );
-				}
+					return lineNum;
+
+				List<String> tokens = tokenize( l.substring( 1, l.length() - 1 ) );
+				if ( tokens.isEmpty() )
+					continue;
+
+				ApacheSection directive = new ApacheSection( this, tokens.get( 0 ), arguments( tokens ) );
+				directive.source = path;
+				directive.lineNum = lineNum;
+				lineNum = directive.appendRaw( br, lineNum, path );
+				directives.add( directive );
 			}
 			else
 			{
-				String[] sections = Splitter.on( LINE_SPLITTER_PATTERN ).splitToList( l.substring( 1, l.length() - 1 ) ).toArray( new String[0] );
-				ApacheDirective kv = new ApacheDirective( this, sections[0], Arrays.asList( sections ).subList( 1, sections.length ) );
+				List<String> tokens = tokenize( l );
+				ApacheDirective kv = new ApacheDirective( this, tokens.get( 0 ), arguments( tokens ) );
 				kv.source = path;
 				kv.lineNum = lineNum;
 				directives.add( kv );
 			}
 		}
+
+		return lineNum;
 	}
 
 	public void appendRaw( BufferedReader br, String path ) throws IOException
@@ -80,8 +102,63 @@ public class ApacheSection extends ApacheDirective
 		appendRaw( new BufferedReader( new StringReader( text ) ), 0, path );
 	}
 
+	private static List<String> arguments( List<String> tokens )
+	{
+		return Collections.unmodifiableList( tokens.subList( 1, tokens.size() ) );
+	}
+
 	public Set<ApacheDirective> directives()
 	{
 		return Collections.unmodifiableSet( directives );
 	}
+
+	/**
+	 * Splits a line into its key and arguments in a single pass, whitespace inside double quotes does not separate arguments.
+	 * The quotes themselves are removed and an escaped quote within quotes is kept as a literal quote.
+	 *
+	 * @param line The trimmed line
+	 * @return The tokens, the first being the key
+	 */
+	static List<String> tokenize( String line )
+	{
+		List<String> tokens = new ArrayList<>();
+		StringBuilder token = new StringBuilder();
+		boolean quoted = false;
+		boolean inToken = false;
+
+		for ( int i = 0; i < line.length(); i++ )
+		{
+			char c = line.charAt( i );
+
+			if ( quoted && c == '\\' && i + 1 < line.length() && line.charAt( i + 1 ) == '"' )
+			{
+				token.append( '"' );
+				i++;
+			}
+			else if ( c == '"' )
+			{
+				quoted = !quoted;
+				inToken = true;
+			}
+			else if ( !quoted && Character.isWhitespace( c ) )
+			{
+				if ( inToken )
+				{
+					tokens.add( token.toString() );
+					token.setLength( 0 );
+					inToken = false;
+				}
+			}
+			else
+			{
+				token.append( c );
+				inToken = true;
+			}
+		}
+
+		if ( inToken )
+			tokens.add( token.toString() );
+
+		return tokens;
+	}
 }
@@ -15,13 +15,20 @@ import com.chiorichan.configuration.MemoryConfiguration;
 import com.chiorichan.utils.UtilObjects;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.stream.Collectors;
 
 /**
@@ -31,6 +38,7 @@ public abstract class FileConfiguration extends MemoryConfiguration
 {
 	private String loadedFrom = null;
 	protected boolean hasChanges = false;
+	private volatile boolean saveFailed = false;
 
 	/**
 	 * Creates an empty {@link FileConfiguration} with no default values.
@@ -75,9 +83,12 @@ public abstract class FileConfiguration extends MemoryConfiguration
 	 */
 	public void load( File file ) throws IOException, InvalidConfigurationException
 	{
-		UtilObjects.notNull( "File cannot be null" );
+		UtilObjects.notNull( file, "File cannot be null" );
 
-		load( new FileInputStream( file ) );
+		try ( InputStream in = new FileInputStream( file ) )
+		{
+			load( in );
+		}
 		loadedFrom = file.getAbsolutePath();
 	}
 
@@ -93,9 +104,10 @@ public abstract class FileConfiguration extends MemoryConfiguration
 	 */
 	public void load( InputStream stream ) throws IOException, InvalidConfigurationException
 	{
-		UtilObjects.notNull( "Stream cannot be null" );
+		UtilObjects.notNull( stream, "Stream cannot be null" );
 
-		loadFromString( new BufferedReader( new InputStreamReader( stream ) ).lines().collect( Collectors.joining( "\n" ) ) );
+		loadFromReader( new BufferedReader( new InputStreamReader( stream ) ) );
+		resolveChanges( true );
 		loadedFrom = null;
 		hasChanges = true;
 	}
@@ -144,6 +156,21 @@ public abstract class FileConfiguration extends MemoryConfiguration
 	 */
 	public abstract void loadFromString( String contents ) throws InvalidConfigurationException;
 
+	/**
+	 * Loads this {@link FileConfiguration} from the specified reader, used by {@link #load(InputStream)}.
+	 * <p/>
+	 * The default implementation reads the entire input into a string and passes it to {@link #loadFromString(String)},
+	 * implementations able to parse incrementally should override it.
+	 *
+	 * @param reader Reader to load from
+	 * @throws IOException                   Thrown when the reader cannot be read.
+	 * @throws InvalidConfigurationException Thrown when the input is not a valid Configuration.
+	 */
+	protected void loadFromReader( Reader reader ) throws IOException, InvalidConfigurationException
+	{
+		loadFromString( new BufferedReader( reader ).lines().collect( Collectors.joining( "\n" ) ) );
+	}
+
 	@Override
 	public FileConfigurationOptions options()
 	{
@@ -157,6 +184,7 @@ public abstract class FileConfiguration extends MemoryConfiguration
 	 * Saves this {@link FileConfiguration} to the specified location.
 	 * <p/>
 	 * If the file does not exist, it will be created. If already exists, it will be overwritten. If it cannot be overwritten or created, an exception will be thrown.
+	 * The data is written to a temporary file that then replaces the file, so a failed save never leaves a partially written file behind.
 	 *
 	 * @param file File to save to.
 	 * @throws IOException              Thrown when the given file cannot be written to for any reason.
@@ -167,23 +195,61 @@ public abstract class FileConfiguration extends MemoryConfiguration
 		if ( file == null )
 			throw new IllegalArgumentException( "File cannot be null" );
 
-		file.getParentFile().mkdirs();
+		File dir = file.getAbsoluteFile().getParentFile();
+		dir.mkdirs();
 
-		String data = saveToString();
+		// Resolve before serializing, so values set while saving are still reported as changed afterwards
+		resolveChanges( true );
 		hasChanges = false;
 
-		FileWriter writer = new FileWriter( file );
-
+		File temp = File.createTempFile( "." + file.getName(), ".tmp", dir );
 		try
 		{
-			writer.write( data );
+			try ( FileOutputStream out = new FileOutputStream( temp ); Writer writer = new BufferedWriter( new OutputStreamWriter( out ) ) )
+			{
+				saveToWriter( writer );
+				writer.flush();
+				out.getFD().sync();
+			}
+
+			try
+			{
+				Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch ( AtomicMoveNotSupportedException e )
+			{
+				Files.move( temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			}
+
+			saveFailed = false;
+		}
+		catch ( IOException | RuntimeException e )
+		{
+			saveFailed = true;
+			throw e;
 		}
 		finally
 		{
-			writer.close();
+			temp.delete();
 		}
 	}
 
+	/**
+	 * Saves this {@link FileConfiguration} to the specified location only if values were set or removed since it was loaded or last saved.
+	 *
+	 * @param file File to save to.
+	 * @return True if the file was written
+	 * @throws IOException              Thrown when the given file cannot be written to for any reason.
+	 * @throws IllegalArgumentException Thrown when file is null.
+	 */
+	public boolean saveChanges( File file ) throws IOException
+	{
+		if ( !saveFailed && !hasChanges( true ) )
+			return false;
+		save( file );
+		return true;
+	}
+
 	/**
 	 * Saves this {@link FileConfiguration} to the specified location.
 	 * <p/>
@@ -207,4 +273,17 @@ public abstract class FileConfiguration extends MemoryConfiguration
 	 * @return String containing this configuration.
 	 */
 	public abstract String saveToString();
+
+	/**
+	 * Saves this {@link FileConfiguration} to the specified writer, used by {@link #save(File)}.
+	 * <p/>
+	 * The default implementation writes the result of {@link #saveToString()}, implementations able to serialize incrementally should override it.
+	 *
+	 * @param writer Writer to save to
+	 * @throws IOException Thrown when the writer cannot be written to.
+	 */
+	protected void saveToWriter( Writer writer ) throws IOException
+	{
+		writer.write( saveToString() );
+	}
 }
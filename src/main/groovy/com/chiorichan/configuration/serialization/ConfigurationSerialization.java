@@ -11,12 +11,18 @@ package com.chiorichan.configuration.serialization;
 
 import com.chiorichan.configuration.Configuration;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Executable;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -25,9 +31,77 @@ import java.util.logging.Logger;
  */
 public class ConfigurationSerialization
 {
+	/**
+	 * A deserialization factory of a class resolved to a method handle, see {@link #factories}
+	 */
+	private static class Factory
+	{
+		private final Executable executable;
+		private final MethodHandle handle;
+
+		Factory( Executable executable, MethodHandle handle )
+		{
+			this.executable = executable;
+			this.handle = handle.asType( MethodType.methodType( ConfigurationSerializable.class, Map.class ) );
+		}
+
+		boolean isConstructor()
+		{
+			return executable instanceof Constructor;
+		}
+	}
+
 	public static final String SERIALIZED_TYPE_KEY = "==";
+	private static final Factory[] NO_FACTORIES = new Factory[0];
+	private static final Map<String, Class<? extends ConfigurationSerializable>> aliases = new ConcurrentHashMap<>();
+
+	/**
+	 * Caches the factories of each class in the order they are tried, i.e., {@code deserialize(Map)}, {@code valueOf(Map)} and then the {@code Map} constructor.
+	 * Classes with no usable factory cache an empty array.
+	 */
+	private static final ClassValue<Factory[]> factories = new ClassValue<Factory[]>()
+	{
+		@Override
+		@SuppressWarnings( "unchecked" )
+		protected Factory[] computeValue( Class<?> type )
+		{
+			if ( !ConfigurationSerializable.class.isAssignableFrom( type ) )
+				return NO_FACTORIES;
+
+			ConfigurationSerialization serialization = new ConfigurationSerialization( ( Class<? extends ConfigurationSerializable> ) type );
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			List<Factory> result = new ArrayList<>();
+
+			for ( String name : new String[] {"deserialize", "valueOf"} )
+			{
+				Method method = serialization.getMethod( name, true );
+				if ( method != null )
+					try
+					{
+						result.add( new Factory( method, lookup.unreflect( method ) ) );
+					}
+					catch ( IllegalAccessException ex )
+					{
+						Logger.getLogger( ConfigurationSerialization.class.getName() ).log( Level.SEVERE, "Could not access method '" + method.toString() + "' of " + type + " for deserialization", ex );
+					}
+			}
+
+			Constructor<? extends ConfigurationSerializable> ctor = serialization.getConstructor();
+			if ( ctor != null )
+				try
+				{
+					result.add( new Factory( ctor, lookup.unreflectConstructor( ctor ) ) );
+				}
+				catch ( IllegalAccessException ex )
+				{
+					Logger.getLogger( ConfigurationSerialization.class.getName() ).log( Level.SEVERE, "Could not access constructor '" + ctor.toString() + "' of " + type + " for deserialization", ex );
+				}
+
+			return result.isEmpty() ? NO_FACTORIES : result.toArray( new Factory[result.size()] );
+		}
+	};
+
 	private final Class<? extends ConfigurationSerializable> clazz;
-	private static Map<String, Class<? extends ConfigurationSerializable>> aliases = new HashMap<String, Class<? extends ConfigurationSerializable>>();
 
 	static
 	{
@@ -89,82 +163,93 @@ public class ConfigurationSerialization
 		}
 	}
 
-	protected ConfigurationSerializable deserializeViaMethod( Method method, Map<String, Object> args )
+	@SuppressWarnings( "unchecked" )
+	public ConfigurationSerializable deserialize( Map<String, Object> args )
 	{
-		try
-		{
-			ConfigurationSerializable result = ( ConfigurationSerializable ) method.invoke( null, args );
+		if ( args == null )
+			throw new IllegalArgumentException( "Args must not be null" );
 
-			if ( result == null )
-			{
-				Logger.getLogger( ConfigurationSerialization.class.getName() ).log( Level.SEVERE, "Could not call method '" + method.toString() + "' of " + clazz + " for deserialization: method returned null" );
-			}
+		// Subclasses may still override the deprecated hooks
+		boolean hooked = getClass() != ConfigurationSerialization.class;
+
+		for ( Factory factory : factories.get( clazz ) )
+		{
+			ConfigurationSerializable result;
+			if ( !hooked )
+				result = invoke( factory, args );
+			else if ( factory.isConstructor() )
+				result = deserializeViaCtor( ( Constructor<? extends ConfigurationSerializable> ) factory.executable, args );
 			else
-			{
+				result = deserializeViaMethod( ( Method ) factory.executable, args );
+
+			if ( result != null )
 				return result;
-			}
-		}
-		catch ( Throwable ex )
-		{
-			Logger.getLogger( ConfigurationSerialization.class.getName() ).log( Level.SEVERE, "Could not call method '" + method.toString() + "' of " + clazz + " for deserialization", ex instanceof InvocationTargetException ? ex.getCause() : ex );
 		}
 
 		return null;
 	}
 
+	/**
+	 * @deprecated Deserialization invokes the cached method handles of the class, see {@link #deserialize(Map)}
+	 */
+	@Deprecated
 	protected ConfigurationSerializable deserializeViaCtor( Constructor<? extends ConfigurationSerializable> ctor, Map<String, Object> args )
 	{
+		return invoke( factory( ctor ), args );
+	}
+
+	/**
+	 * @deprecated Deserialization invokes the cached method handles of the class, see {@link #deserialize(Map)}
+	 */
+	@Deprecated
+	protected ConfigurationSerializable deserializeViaMethod( Method method, Map<String, Object> args )
+	{
+		return invoke( factory( method ), args );
+	}
+
+	/**
+	 * Finds the cached factory of the method or constructor, resolving it if it is not one of the cached factories
+	 *
+	 * @return The factory or null if the method or constructor can not be used for deserialization
+	 */
+	private Factory factory( Executable executable )
+	{
+		for ( Factory factory : factories.get( clazz ) )
+			if ( factory.executable.equals( executable ) )
+				return factory;
+
 		try
 		{
-			return ctor.newInstance( args );
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			return new Factory( executable, executable instanceof Constructor ? lookup.unreflectConstructor( ( Constructor<?> ) executable ) : lookup.unreflect( ( Method ) executable ) );
 		}
-		catch ( Throwable ex )
+		catch ( IllegalAccessException | WrongMethodTypeException ex )
 		{
-			Logger.getLogger( ConfigurationSerialization.class.getName() ).log( Level.SEVERE, "Could not call constructor '" + ctor.toString() + "' of " + clazz + " for deserialization", ex instanceof InvocationTargetException ? ex.getCause() : ex );
+			Logger.getLogger( ConfigurationSerialization.class.getName() ).log( Level.SEVERE, "Could not access '" + executable.toString() + "' of " + clazz + " for deserialization", ex );
+			return null;
 		}
-
-		return null;
 	}
 
-	public ConfigurationSerializable deserialize( Map<String, Object> args )
+	private ConfigurationSerializable invoke( Factory factory, Map<String, Object> args )
 	{
-		if ( args == null )
-			throw new IllegalArgumentException( "Args must not be null" );
-
-		ConfigurationSerializable result = null;
-		Method method = null;
+		if ( factory == null )
+			return null;
 
-		if ( result == null )
+		try
 		{
-			method = getMethod( "deserialize", true );
+			ConfigurationSerializable result = ( ConfigurationSerializable ) factory.handle.invokeExact( args );
 
-			if ( method != null )
-			{
-				result = deserializeViaMethod( method, args );
-			}
-		}
-
-		if ( result == null )
-		{
-			method = getMethod( "valueOf", true );
+			if ( result != null )
+				return result;
 
-			if ( method != null )
-			{
-				result = deserializeViaMethod( method, args );
-			}
+			Logger.getLogger( ConfigurationSerialization.class.getName() ).log( Level.SEVERE, "Could not call method '" + factory.executable.toString() + "' of " + clazz + " for deserialization: method returned null" );
 		}
-
-		if ( result == null )
+		catch ( Throwable ex )
 		{
-			Constructor<? extends ConfigurationSerializable> constructor = getConstructor();
-
-			if ( constructor != null )
-			{
-				result = deserializeViaCtor( constructor, args );
-			}
+			Logger.getLogger( ConfigurationSerialization.class.getName() ).log( Level.SEVERE, "Could not call " + ( factory.isConstructor() ? "constructor" : "method" ) + " '" + factory.executable.toString() + "' of " + clazz + " for deserialization", ex );
 		}
 
-		return result;
+		return null;
 	}
 
 	/**
@@ -272,9 +357,7 @@ public class ConfigurationSerialization
 	 */
 	public static void unregisterClass( Class<? extends ConfigurationSerializable> clazz )
 	{
-		while ( aliases.values().remove( clazz ) )
-		{
-		}
+		aliases.values().removeIf( value -> value == clazz );
 	}
 
 	/**
@@ -14,26 +14,40 @@ import com.chiorichan.configuration.ConfigurationSection;
 import com.chiorichan.configuration.InvalidConfigurationException;
 import com.chiorichan.configuration.file.FileConfiguration;
 import com.chiorichan.logger.Log;
+import com.chiorichan.utils.UtilLists;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Iterator;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
 
 /**
- * An implementation of {@link Configuration} which saves all files in Yaml. Note that this implementation is not
+ * An implementation of {@link Configuration} which saves all files in JSON. Note that this implementation is not
  * synchronized.
  */
 public class JsonConfiguration extends FileConfiguration
 {
 	protected static final String COMMENT_PREFIX = "# ";
 	protected static final String BLANK_CONFIG = "{}\n";
+	private static final Gson GSON = new GsonBuilder().create();
 
 	/**
 	 * Creates a new {@link JsonConfiguration}, loading from the given file.
@@ -176,61 +190,53 @@ public class JsonConfiguration extends FileConfiguration
 	@Override
 	public void loadFromString( String contents ) throws InvalidConfigurationException
 	{
-		Log.get().warning( "Loaded JSON Data: " + contents );
-
 		if ( contents == null )
 			throw new IllegalArgumentException( "Contents cannot be null" );
 
 		try
 		{
-			JSONObject input = new JSONObject( contents );
-
-			String header = parseHeader( contents );
-			if ( header.length() > 0 )
-				options().header( header );
-
-			if ( input != null )
-				convertJsonToSections( input, this );
+			loadFromReader( new StringReader( contents ) );
 		}
-		catch ( JSONException e )
+		catch ( IOException e )
 		{
 			throw new InvalidConfigurationException( e );
 		}
 	}
 
-	protected void convertJsonToSections( String name, Object input, ConfigurationSection section ) throws JSONException
+	/**
+	 * Loads this {@link JsonConfiguration} from the reader one token at a time, objects and arrays are created as sections as they are read
+	 * so no intermediate document tree is held in memory.
+	 */
+	@Override
+	protected void loadFromReader( Reader reader ) throws IOException, InvalidConfigurationException
 	{
-		if ( input instanceof JSONArray )
-			convertJsonToSections( ( JSONArray ) input, section.createSection( name ) );
-		else if ( input instanceof JSONObject )
-			convertJsonToSections( ( JSONObject ) input, section.createSection( name ) );
-		else
-			section.set( name, input, false );
-	}
+		BufferedReader buffered = reader instanceof BufferedReader ? ( BufferedReader ) reader : new BufferedReader( reader );
 
-	protected void convertJsonToSections( JSONArray input, ConfigurationSection section ) throws JSONException
-	{
-		for ( int i = 0; i < input.length(); i++ )
-		{
-			String name = Integer.toString( i );
-			Object obj = input.get( i );
+		String header = readHeader( buffered );
+		if ( header.length() > 0 )
+			options().header( header );
 
-			if ( obj instanceof JSONArray )
-				convertJsonToSections( ( JSONArray ) obj, section.createSection( name ) );
-			else if ( obj instanceof JSONObject )
-				convertJsonToSections( ( JSONObject ) obj, section.createSection( name ) );
-			else
-				section.set( name, obj, false );
+		JsonReader in = new JsonReader( buffered );
+		in.setLenient( true );
+
+		try
+		{
+			if ( in.peek() != JsonToken.BEGIN_OBJECT )
+				throw new InvalidConfigurationException( "Top level is not an object." );
+		}
+		catch ( EOFException e )
+		{
+			// Empty document
+			return;
 		}
-	}
 
-	protected void convertJsonToSections( JSONObject input, ConfigurationSection section ) throws JSONException
-	{
-		Iterator<String> keys = input.keys();
-		while ( keys.hasNext() )
+		try
 		{
-			String name = keys.next();
-			convertJsonToSections( name, input.get( name ), section );
+			readObject( in, this );
+		}
+		catch ( EOFException | MalformedJsonException | IllegalStateException | NumberFormatException e )
+		{
+			throw new InvalidConfigurationException( e );
 		}
 	}
 
@@ -279,17 +285,182 @@ public class JsonConfiguration extends FileConfiguration
 		return result.toString();
 	}
 
+	private String readHeader( BufferedReader reader ) throws IOException
+	{
+		StringBuilder result = new StringBuilder();
+		boolean foundHeader = false;
+
+		for ( int i = 0; ; i++ )
+		{
+			reader.mark( COMMENT_PREFIX.length() );
+			int c = reader.read();
+
+			if ( c == '\r' || c == '\n' )
+			{
+				if ( c == '\r' )
+				{
+					reader.mark( 1 );
+					if ( reader.read() != '\n' )
+						reader.reset();
+				}
+
+				if ( foundHeader )
+					result.append( "\n" );
+			}
+			else if ( c == COMMENT_PREFIX.charAt( 0 ) && reader.read() == COMMENT_PREFIX.charAt( 1 ) )
+			{
+				if ( i > 0 )
+					result.append( "\n" );
+
+				String line = reader.readLine();
+				if ( line != null )
+					result.append( line );
+
+				foundHeader = true;
+			}
+			else
+			{
+				reader.reset();
+				return result.toString();
+			}
+		}
+	}
+
+	private void readArray( JsonReader in, ConfigurationSection section ) throws IOException
+	{
+		in.beginArray();
+		for ( int i = 0; in.hasNext(); i++ )
+			readValue( in, Integer.toString( i ), section );
+		in.endArray();
+	}
+
+	private void readObject( JsonReader in, ConfigurationSection section ) throws IOException
+	{
+		in.beginObject();
+		while ( in.hasNext() )
+			readValue( in, in.nextName(), section );
+		in.endObject();
+	}
+
+	private void readValue( JsonReader in, String name, ConfigurationSection section ) throws IOException
+	{
+		switch ( in.peek() )
+		{
+			case BEGIN_OBJECT:
+				readObject( in, section.createSection( name ) );
+				break;
+			case BEGIN_ARRAY:
+				readArray( in, section.createSection( name ) );
+				break;
+			case NUMBER:
+				section.set( name, toNumber( in.nextString() ), false );
+				break;
+			case BOOLEAN:
+				section.set( name, in.nextBoolean(), false );
+				break;
+			case NULL:
+				// Setting null would remove the key, so nulls are skipped
+				in.nextNull();
+				break;
+			default:
+				section.set( name, in.nextString(), false );
+		}
+	}
+
 	@Override
 	public String saveToString()
 	{
-		Gson gson = new GsonBuilder().create();
-		String dump = gson.toJson( getValues( false ) );
+		StringWriter writer = new StringWriter();
+		try
+		{
+			saveToWriter( writer );
+		}
+		catch ( IOException e )
+		{
+			// StringWriter never throws
+			throw new IllegalStateException( e );
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Saves this {@link JsonConfiguration} to the writer one section at a time, sections with incremented keys are written as arrays.
+	 */
+	@Override
+	protected void saveToWriter( Writer writer ) throws IOException
+	{
+		writer.write( buildHeader() );
+
+		JsonWriter out = new JsonWriter( writer );
+		writeSection( out, this );
+		out.flush();
+	}
+
+	/**
+	 * Converts a number token to the same types the org.json parser produced, integers become an {@link Integer} or {@link Long} when they fit.
+	 */
+	private static Number toNumber( String value )
+	{
+		if ( value.indexOf( '.' ) > -1 || value.indexOf( 'e' ) > -1 || value.indexOf( 'E' ) > -1 || "-0".equals( value ) )
+			return Double.valueOf( value );
 
-		String header = buildHeader();
+		try
+		{
+			long l = Long.parseLong( value );
+			if ( l == ( int ) l )
+				return ( int ) l;
+			return l;
+		}
+		catch ( NumberFormatException e )
+		{
+			return new BigInteger( value );
+		}
+	}
 
-		if ( dump.equals( BLANK_CONFIG ) )
-			dump = "";
+	private void writeSection( JsonWriter out, ConfigurationSection section ) throws IOException
+	{
+		Set<String> names = section.getKeys( false );
+		Collection<String> keys = names;
+		// The root is always an object, so the file can be loaded again
+		boolean array = section != this && UtilLists.incremented( names );
 
-		return header + dump;
+		if ( array )
+		{
+			// Keys are sorted as strings, so "10" would come before "2"
+			List<String> indexes = new ArrayList<>( keys );
+			indexes.sort( Comparator.comparingInt( Integer::parseInt ) );
+			keys = indexes;
+			out.beginArray();
+		}
+		else
+			out.beginObject();
+
+		for ( String key : keys )
+		{
+			if ( !array )
+				out.name( key );
+			writeValue( out, section.get( key ) );
+		}
+
+		if ( array )
+			out.endArray();
+		else
+			out.endObject();
+	}
+
+	private void writeValue( JsonWriter out, Object value ) throws IOException
+	{
+		if ( value == null )
+			out.nullValue();
+		else if ( value instanceof ConfigurationSection )
+			writeSection( out, ( ConfigurationSection ) value );
+		else if ( value instanceof String )
+			out.value( ( String ) value );
+		else if ( value instanceof Boolean )
+			out.value( ( Boolean ) value );
+		else if ( value instanceof Number )
+			out.value( ( Number ) value );
+		else
+			GSON.toJson( value, value.getClass(), out );
 	}
 }
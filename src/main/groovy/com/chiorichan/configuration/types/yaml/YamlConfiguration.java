@@ -15,16 +15,22 @@ import com.chiorichan.configuration.ConfigurationSection;
 import com.chiorichan.configuration.InvalidConfigurationException;
 import com.chiorichan.configuration.file.FileConfiguration;
 import com.chiorichan.utils.UtilObjects;
+import org.apache.commons.io.IOUtils;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.error.YAMLException;
 import org.yaml.snakeyaml.representer.Representer;
 
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * An implementation of {@link Configuration} which saves all files in Yaml. Note that this implementation is not
@@ -45,6 +51,20 @@ public class YamlConfiguration extends FileConfiguration
 	 * @throws IllegalArgumentException Thrown if file is null
 	 */
 	public static YamlConfiguration loadConfiguration( File file )
+	{
+		return loadConfiguration( file, true );
+	}
+
+	/**
+	 * Same as {@link #loadConfiguration(File)}, optionally without reading or writing a {@link YamlSnapshotCache} snapshot,
+	 * e.g., for files in a directory whose modification time is watched, which writing the snapshot beside the file would change.
+	 *
+	 * @param file        Input file
+	 * @param useSnapshot Use the snapshot cache if enabled
+	 * @return Resulting configuration
+	 * @throws IllegalArgumentException Thrown if file is null
+	 */
+	public static YamlConfiguration loadConfiguration( File file, boolean useSnapshot )
 	{
 		if ( file == null )
 			throw new IllegalArgumentException( "File cannot be null" );
@@ -53,7 +73,7 @@ public class YamlConfiguration extends FileConfiguration
 
 		try
 		{
-			config.load( file );
+			config.load( file, useSnapshot );
 		}
 		catch ( FileNotFoundException ex )
 		{
@@ -189,16 +209,85 @@ public class YamlConfiguration extends FileConfiguration
 			newSection.set( key, oldSection.get( key ), false );
 	}
 
+	/**
+	 * Loads this {@link YamlConfiguration} from the specified location, using the snapshot kept by {@link YamlSnapshotCache} when the file has not changed.
+	 */
+	@Override
+	public void load( File file ) throws IOException, InvalidConfigurationException
+	{
+		load( file, true );
+	}
+
+	/**
+	 * Loads this {@link YamlConfiguration} from the specified location
+	 *
+	 * @param file        The file
+	 * @param useSnapshot Use the snapshot kept by {@link YamlSnapshotCache} if enabled, otherwise the file is always parsed and no snapshot is written
+	 */
+	public void load( File file, boolean useSnapshot ) throws IOException, InvalidConfigurationException
+	{
+		UtilObjects.notNull( file, "File cannot be null" );
+
+		if ( !useSnapshot || !YamlSnapshotCache.isEnabled() )
+		{
+			super.load( file );
+			return;
+		}
+
+		byte[] bytes;
+		try ( InputStream in = new FileInputStream( file ) )
+		{
+			bytes = IOUtils.toByteArray( in );
+		}
+
+		YamlSnapshotCache.Snapshot snapshot = YamlSnapshotCache.read( file, bytes );
+		if ( snapshot != null )
+			load( snapshot.input, snapshot.header );
+		else
+		{
+			long start = System.nanoTime();
+			String contents = new BufferedReader( new InputStreamReader( new ByteArrayInputStream( bytes ) ) ).lines().collect( Collectors.joining( "\n" ) );
+
+			Map<?, ?> input = parse( contents );
+			String header = UtilObjects.isEmpty( contents ) ? "" : parseHeader( contents );
+
+			if ( input != null )
+				YamlSnapshotCache.write( file, bytes, input, header, System.nanoTime() - start );
+			load( input, header );
+		}
+
+		resolveChanges( true );
+		hasChanges = true;
+		loadedFrom( file.getAbsolutePath() );
+	}
+
+	private void load( Map<?, ?> input, String header )
+	{
+		if ( header.length() > 0 )
+			options().header( header );
+
+		if ( input != null )
+			convertMapsToSections( input, this );
+	}
+
 	@Override
 	public void loadFromString( String contents ) throws InvalidConfigurationException
 	{
 		if ( UtilObjects.isEmpty( contents ) )
 			return;
 
-		Map<?, ?> input;
+		Map<?, ?> input = parse( contents );
+		load( input, parseHeader( contents ) );
+	}
+
+	private Map<?, ?> parse( String contents ) throws InvalidConfigurationException
+	{
+		if ( UtilObjects.isEmpty( contents ) )
+			return null;
+
 		try
 		{
-			input = ( Map<?, ?> ) yaml.load( contents );
+			return ( Map<?, ?> ) yaml.load( contents );
 		}
 		catch ( YAMLException e )
 		{
@@ -208,13 +297,6 @@ public class YamlConfiguration extends FileConfiguration
 		{
 			throw new InvalidConfigurationException( "Top level is not a Map." );
 		}
-
-		String header = parseHeader( contents );
-		if ( header.length() > 0 )
-			options().header( header );
-
-		if ( input != null )
-			convertMapsToSections( input, this );
 	}
 
 	public void move( String fromPath, String toPath )
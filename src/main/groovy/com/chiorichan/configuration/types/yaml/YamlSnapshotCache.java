@@ -0,0 +1,423 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.configuration.types.yaml;
+
+import com.chiorichan.logger.Log;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stores a compact binary encoding of parsed YAML files in a cache directory, so later loads skip the YAML parser.
+ * <p>
+ * Disabled unless enabled and given a directory, see {@code advanced.config.snapshotCache}. Snapshots are named by the hash of the file path,
+ * so nothing is written next to the YAML files, and are removed with the rest of the cache directory.
+ * A snapshot is only used when the size, modified time and content hash of the file still match, otherwise the file is parsed and the snapshot rewritten.
+ * Files containing values other than strings, numbers, booleans, dates, lists and maps, e.g., serialized objects, or aliased lists and maps are never cached.
+ */
+public class YamlSnapshotCache
+{
+	static class Snapshot
+	{
+		final Map<?, ?> input;
+		final String header;
+
+		Snapshot( Map<?, ?> input, String header )
+		{
+			this.input = input;
+			this.header = header;
+		}
+	}
+
+	private static class UncacheableException extends IOException
+	{
+		private static final long serialVersionUID = 1L;
+
+		UncacheableException( String message )
+		{
+			super( message );
+		}
+
+		UncacheableException( Object obj )
+		{
+			this( "Can not cache value of type " + obj.getClass().getName() );
+		}
+	}
+
+	private static final int MAGIC = 0x59534331; // YSC1
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte DOUBLE = 4;
+	private static final byte BOOLEAN = 5;
+	private static final byte MAP = 6;
+	private static final byte LIST = 7;
+	private static final byte BIG_INTEGER = 8;
+	private static final byte FLOAT = 9;
+	private static final byte DATE = 10;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong writes = new AtomicLong();
+	private static final AtomicLong uncacheable = new AtomicLong();
+	private static final AtomicLong savedNanos = new AtomicLong();
+	private static volatile boolean enabled = false;
+	private static volatile File directory = null;
+
+	/**
+	 * @return The snapshot file of the YAML file, null if no directory was set
+	 */
+	static File cacheFile( File file )
+	{
+		File dir = directory;
+		return dir == null ? null : new File( dir, Hashing.murmur3_128().hashString( file.getAbsolutePath(), StandardCharsets.UTF_8 ) + ".snapshot" );
+	}
+
+	/**
+	 * @return The directory holding the snapshots, null if none was set
+	 */
+	public static File getDirectory()
+	{
+		return directory;
+	}
+
+	public static long getHits()
+	{
+		return hits.get();
+	}
+
+	public static long getMisses()
+	{
+		return misses.get();
+	}
+
+	/**
+	 * @return The total time in milliseconds saved by loading snapshots instead of parsing
+	 */
+	public static long getSavedMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis( savedNanos.get() );
+	}
+
+	public static long getUncacheable()
+	{
+		return uncacheable.get();
+	}
+
+	public static long getWrites()
+	{
+		return writes.get();
+	}
+
+	private static long hash( byte[] contents )
+	{
+		return Hashing.murmur3_128().hashBytes( contents ).asLong();
+	}
+
+	/**
+	 * @return True if enabled and a directory was set
+	 */
+	public static boolean isEnabled()
+	{
+		return enabled && directory != null;
+	}
+
+	/**
+	 * Reads the snapshot of the file
+	 *
+	 * @param file     The YAML file
+	 * @param contents The current contents of the file
+	 * @return The snapshot or null if there is none or it is stale
+	 */
+	static Snapshot read( File file, byte[] contents )
+	{
+		File cache = cacheFile( file );
+		if ( cache == null || !cache.exists() )
+		{
+			misses.incrementAndGet();
+			return null;
+		}
+
+		long start = System.nanoTime();
+		try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( cache ) ) ) )
+		{
+			if ( in.readInt() != MAGIC || in.readLong() != contents.length || in.readLong() != file.lastModified() || in.readLong() != hash( contents ) )
+			{
+				misses.incrementAndGet();
+				return null;
+			}
+
+			long parseNanos = in.readLong();
+			String header = readString( in );
+			Map<?, ?> input = ( Map<?, ?> ) readValue( in );
+
+			hits.incrementAndGet();
+			savedNanos.addAndGet( Math.max( 0, parseNanos - ( System.nanoTime() - start ) ) );
+			return new Snapshot( input, header );
+		}
+		catch ( IOException | ClassCastException e )
+		{
+			misses.incrementAndGet();
+			Log.get().fine( String.format( "Ignoring the unreadable YAML snapshot %s: %s", cache, e.getMessage() ) );
+			return null;
+		}
+	}
+
+	private static String readString( DataInputStream in ) throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully( bytes );
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	private static Object readValue( DataInputStream in ) throws IOException
+	{
+		byte type = in.readByte();
+		switch ( type )
+		{
+			case NULL:
+				return null;
+			case STRING:
+				return readString( in );
+			case INTEGER:
+				return in.readInt();
+			case LONG:
+				return in.readLong();
+			case DOUBLE:
+				return in.readDouble();
+			case BOOLEAN:
+				return in.readBoolean();
+			case MAP:
+			{
+				int size = in.readInt();
+				Map<Object, Object> map = new LinkedHashMap<>();
+				for ( int i = 0; i < size; i++ )
+					map.put( readValue( in ), readValue( in ) );
+				return map;
+			}
+			case LIST:
+			{
+				int size = in.readInt();
+				List<Object> list = new ArrayList<>( size );
+				for ( int i = 0; i < size; i++ )
+					list.add( readValue( in ) );
+				return list;
+			}
+			case BIG_INTEGER:
+				return new BigInteger( readString( in ) );
+			case FLOAT:
+				return in.readFloat();
+			case DATE:
+				return new Date( in.readLong() );
+			default:
+				throw new IOException( "Unknown value type " + type );
+		}
+	}
+
+	public static void resetStatistics()
+	{
+		hits.set( 0 );
+		misses.set( 0 );
+		writes.set( 0 );
+		uncacheable.set( 0 );
+		savedNanos.set( 0 );
+	}
+
+	/**
+	 * Sets the directory holding the snapshots, it's created if needed
+	 *
+	 * @param directory The directory, null disables the cache
+	 */
+	public static void setDirectory( File directory )
+	{
+		if ( directory != null && !directory.isDirectory() && !directory.mkdirs() )
+			throw new IllegalArgumentException( "The YAML snapshot directory " + directory + " could not be created" );
+		YamlSnapshotCache.directory = directory;
+	}
+
+	public static void setEnabled( boolean enabled )
+	{
+		YamlSnapshotCache.enabled = enabled;
+	}
+
+	public static String getStatistics()
+	{
+		return String.format( "YamlSnapshotCache{hits=%s,misses=%s,writes=%s,uncacheable=%s,saved=%sms}", getHits(), getMisses(), getWrites(), getUncacheable(), getSavedMillis() );
+	}
+
+	/**
+	 * Writes the snapshot of the file, failures are ignored as the file can always be parsed again
+	 *
+	 * @param file       The YAML file
+	 * @param contents   The contents the input was parsed from
+	 * @param input      The parsed input
+	 * @param header     The parsed header
+	 * @param parseNanos How long parsing took, used to compute the time saved by later loads
+	 */
+	static void write( File file, byte[] contents, Map<?, ?> input, String header, long parseNanos )
+	{
+		File cache = cacheFile( file );
+		if ( cache == null )
+			return;
+
+		File temp = null;
+		try
+		{
+			temp = File.createTempFile( cache.getName(), ".tmp", cache.getParentFile() );
+			try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) ) )
+			{
+				out.writeInt( MAGIC );
+				out.writeLong( contents.length );
+				out.writeLong( file.lastModified() );
+				out.writeLong( hash( contents ) );
+				out.writeLong( parseNanos );
+				writeString( out, header );
+				writeValue( out, input, Collections.newSetFromMap( new IdentityHashMap<>() ) );
+			}
+
+			try
+			{
+				Files.move( temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+			}
+			catch ( AtomicMoveNotSupportedException e )
+			{
+				Files.move( temp.toPath(), cache.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			}
+
+			writes.incrementAndGet();
+		}
+		catch ( UncacheableException e )
+		{
+			uncacheable.incrementAndGet();
+			cache.delete();
+		}
+		catch ( IOException e )
+		{
+			Log.get().fine( String.format( "Failed to write the YAML snapshot %s: %s", cache, e.getMessage() ) );
+		}
+		finally
+		{
+			if ( temp != null )
+				temp.delete();
+		}
+	}
+
+	private static void writeString( DataOutputStream out, String str ) throws IOException
+	{
+		byte[] bytes = str.getBytes( StandardCharsets.UTF_8 );
+		out.writeInt( bytes.length );
+		out.write( bytes );
+	}
+
+	/**
+	 * @param visited The lists and maps written so far, an alias refers to one of them again and may even contain itself
+	 */
+	private static void writeValue( DataOutputStream out, Object obj, Set<Object> visited ) throws IOException
+	{
+		if ( obj == null )
+			out.writeByte( NULL );
+		else if ( obj instanceof String )
+		{
+			out.writeByte( STRING );
+			writeString( out, ( String ) obj );
+		}
+		else if ( obj instanceof Integer )
+		{
+			out.writeByte( INTEGER );
+			out.writeInt( ( Integer ) obj );
+		}
+		else if ( obj instanceof Long )
+		{
+			out.writeByte( LONG );
+			out.writeLong( ( Long ) obj );
+		}
+		else if ( obj instanceof Double )
+		{
+			out.writeByte( DOUBLE );
+			out.writeDouble( ( Double ) obj );
+		}
+		else if ( obj instanceof Boolean )
+		{
+			out.writeByte( BOOLEAN );
+			out.writeBoolean( ( Boolean ) obj );
+		}
+		else if ( obj instanceof Map )
+		{
+			if ( !visited.add( obj ) )
+				throw new UncacheableException( "Can not cache aliased maps" );
+
+			Map<?, ?> map = ( Map<?, ?> ) obj;
+			out.writeByte( MAP );
+			out.writeInt( map.size() );
+			for ( Map.Entry<?, ?> entry : map.entrySet() )
+			{
+				writeValue( out, entry.getKey(), visited );
+				writeValue( out, entry.getValue(), visited );
+			}
+		}
+		else if ( obj instanceof List )
+		{
+			if ( !visited.add( obj ) )
+				throw new UncacheableException( "Can not cache aliased lists" );
+
+			List<?> list = ( List<?> ) obj;
+			out.writeByte( LIST );
+			out.writeInt( list.size() );
+			for ( Object value : list )
+				writeValue( out, value, visited );
+		}
+		else if ( obj instanceof BigInteger )
+		{
+			out.writeByte( BIG_INTEGER );
+			writeString( out, obj.toString() );
+		}
+		else if ( obj instanceof Float )
+		{
+			out.writeByte( FLOAT );
+			out.writeFloat( ( Float ) obj );
+		}
+		else if ( obj.getClass() == Date.class )
+		{
+			out.writeByte( DATE );
+			out.writeLong( ( ( Date ) obj ).getTime() );
+		}
+		else
+			throw new UncacheableException( obj );
+	}
+
+	private YamlSnapshotCache()
+	{
+
+	}
+}
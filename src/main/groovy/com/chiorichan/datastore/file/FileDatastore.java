@@ -13,23 +13,180 @@ import com.chiorichan.configuration.ConfigurationSection;
 import com.chiorichan.configuration.types.yaml.YamlConfiguration;
 import com.chiorichan.datastore.Datastore;
 import com.chiorichan.utils.UtilIO;
-import com.google.common.collect.Maps;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
-import java.util.Arrays;
-import java.util.Collection;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * References multiple YAML files at once
+ * <p>
+ * File names are indexed up front and each file is parsed on first access. Parsed files are shared with child datastores
+ * and the least recently used across all datastores are released once the estimated heap they occupy exceeds {@link #setMemoryBudget(long)},
+ * files with unsaved changes are kept. A released configuration is only weakly referenced, so a caller still holding it
+ * gets the same instance back and its edits are not lost, it's parsed again only once nobody holds it anymore.
  */
 public class FileDatastore extends Datastore
 {
+	/**
+	 * The indexed files and their parsed configurations, shared by a datastore and its children
+	 */
+	private static class Records
+	{
+		private final List<File> files;
+		private final Map<File, Integer> positions = new HashMap<>();
+		private final Map<Integer, YamlConfiguration> loaded = new ConcurrentHashMap<>();
+		private final Map<Integer, WeakReference<YamlConfiguration>> released = new ConcurrentHashMap<>();
+
+		/**
+		 * When each file was last read, in {@link System#nanoTime()}
+		 */
+		private final AtomicLongArray usedAt;
+
+		Records( List<File> files )
+		{
+			this.files = Collections.unmodifiableList( new ArrayList<>( files ) );
+			for ( int i = 0; i < this.files.size(); i++ )
+				positions.put( this.files.get( i ), i );
+			usedAt = new AtomicLongArray( this.files.size() );
+		}
+
+		YamlConfiguration get( int index )
+		{
+			YamlConfiguration yaml = loaded.get( index );
+			if ( yaml == null )
+			{
+				long estimate = 0;
+				synchronized ( this )
+				{
+					yaml = loaded.get( index );
+					if ( yaml == null )
+					{
+						WeakReference<YamlConfiguration> ref = released.remove( index );
+						yaml = ref == null ? null : ref.get();
+						// Account files are loaded often and change often, so they skip the snapshot cache
+						if ( yaml == null )
+							yaml = YamlConfiguration.loadConfiguration( files.get( index ), false );
+						loaded.put( index, yaml );
+						estimate = Math.max( 1, files.get( index ).length() * HEAP_PER_BYTE );
+					}
+				}
+
+				if ( estimate > 0 )
+				{
+					usedAt.set( index, System.nanoTime() );
+					track( new Slot( this, index ), estimate );
+				}
+			}
+
+			usedAt.lazySet( index, System.nanoTime() );
+			return yaml;
+		}
+
+		/**
+		 * Releases the parsed file unless it has unsaved changes
+		 *
+		 * @return True if released or no longer loaded
+		 */
+		boolean release( int index )
+		{
+			YamlConfiguration yaml = loaded.get( index );
+			if ( yaml == null )
+				return true;
+			if ( yaml.hasChanges( true ) )
+				return false;
+
+			released.put( index, new WeakReference<>( yaml ) );
+			loaded.remove( index, yaml );
+			return true;
+		}
+
+		int size()
+		{
+			return files.size();
+		}
+	}
+
+	/**
+	 * A parsed file of a {@link Records}
+	 */
+	private static final class Slot
+	{
+		private final Records records;
+		private final int index;
+
+		/**
+		 * The last use of the file when the slots were last ordered
+		 */
+		private long usedAt;
+
+		Slot( Records records, int index )
+		{
+			this.records = records;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals( Object obj )
+		{
+			return obj instanceof Slot && ( ( Slot ) obj ).records == records && ( ( Slot ) obj ).index == index;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return System.identityHashCode( records ) * 31 + index;
+		}
+	}
+
+	/**
+	 * Rough heap used by a parsed configuration per byte of YAML
+	 */
+	private static final long HEAP_PER_BYTE = 8;
+
+	/**
+	 * The parsed files of every datastore and their estimated heap
+	 */
+	private static final Map<Slot, Long> tracked = new HashMap<>();
+
+	/**
+	 * The estimated heap of every parsed file, guarded by {@link #tracked}
+	 */
+	private static long loadedBytes = 0;
+
+	private static volatile long memoryBudget = Runtime.getRuntime().maxMemory() / 16;
+
+	/**
+	 * @return The estimated heap in bytes occupied by the parsed files of all datastores
+	 */
+	public static long getLoadedBytes()
+	{
+		synchronized ( tracked )
+		{
+			return loadedBytes;
+		}
+	}
+
+	public static long getMemoryBudget()
+	{
+		return memoryBudget;
+	}
+
 	public static FileDatastore loadDirectory( File dir, String regexPattern )
 	{
 		List<File> files = UtilIO.recursiveFiles( dir, StringUtils.countMatches( regexPattern, "/" ), regexPattern );
@@ -38,59 +195,215 @@ public class FileDatastore extends Datastore
 
 	public static FileDatastore loadFile( File file )
 	{
-		return new FileDatastore( Arrays.asList( file ) );
+		return new FileDatastore( file != null && file.exists() ? Collections.singletonList( file ) : Collections.emptyList() );
+	}
+
+	/**
+	 * Sets the estimated heap in bytes the parsed files of all datastores together may occupy before the least recently used are released
+	 *
+	 * @param bytes The budget
+	 */
+	public static void setMemoryBudget( long bytes )
+	{
+		memoryBudget = bytes;
+	}
+
+	/**
+	 * Adds a newly parsed file, releasing the least recently used files of any datastore once over the budget.
+	 * Only called when a file is parsed, reads of parsed files just note the time in {@link Records#usedAt}.
+	 *
+	 * @param slot     The parsed file
+	 * @param estimate The estimated heap it occupies
+	 */
+	private static void track( Slot slot, long estimate )
+	{
+		synchronized ( tracked )
+		{
+			if ( tracked.putIfAbsent( slot, estimate ) != null )
+				return;
+
+			loadedBytes += estimate;
+
+			long budget = memoryBudget;
+			if ( loadedBytes <= budget )
+				return;
+
+			// Release down to 90% of the budget, so the files are not ordered again on every following parse
+			List<Slot> slots = new ArrayList<>( tracked.keySet() );
+			for ( Slot each : slots )
+				each.usedAt = each.records.usedAt.get( each.index );
+			slots.sort( Comparator.comparingLong( each -> each.usedAt ) );
+
+			long target = budget - budget / 10;
+			for ( Slot each : slots )
+			{
+				if ( loadedBytes <= target )
+					break;
+				if ( !each.equals( slot ) && each.records.release( each.index ) )
+					loadedBytes -= tracked.remove( each );
+			}
+		}
 	}
 
 	private String path;
 
-	private final Map<File, YamlConfiguration> yamls = Maps.newLinkedHashMap();
+	private final Records records;
 
 	private int index;
 
 	private FileDatastore( List<File> files )
 	{
 		path = "";
-		for ( File file : files )
-			if ( file != null && file.exists() )
-				yamls.put( file, YamlConfiguration.loadConfiguration( file ) );
+		records = new Records( files );
 	}
 
-	private FileDatastore( String path, Map<File, YamlConfiguration> yamls, int index )
+	private FileDatastore( String path, Records records, int index )
 	{
 		this.path = path;
-		this.yamls.putAll( yamls );
+		this.records = records;
 		this.index = index;
 	}
 
+	/**
+	 * @return A view of the entries, each file is parsed when its value is read
+	 */
 	public Set<Entry<File, YamlConfiguration>> asEntrySet()
 	{
-		return yamls.entrySet();
+		return asMap().entrySet();
 	}
 
-	public Collection<YamlConfiguration> asList()
+	/**
+	 * @return A view of the configurations, each file is parsed when read
+	 */
+	public List<YamlConfiguration> asList()
 	{
-		return Collections.unmodifiableCollection( yamls.values() );
+		return new AbstractList<YamlConfiguration>()
+		{
+			@Override
+			public YamlConfiguration get( int index )
+			{
+				return records.get( index );
+			}
+
+			@Override
+			public int size()
+			{
+				return records.size();
+			}
+		};
 	}
 
+	/**
+	 * @return A view of the files and their configurations, each file is parsed when its value is read
+	 */
 	public Map<File, YamlConfiguration> asMap()
 	{
-		return Collections.unmodifiableMap( yamls );
+		return new AbstractMap<File, YamlConfiguration>()
+		{
+			@Override
+			public boolean containsKey( Object key )
+			{
+				return records.positions.containsKey( key );
+			}
+
+			@Override
+			public Set<Entry<File, YamlConfiguration>> entrySet()
+			{
+				return new AbstractSet<Entry<File, YamlConfiguration>>()
+				{
+					@Override
+					public Iterator<Entry<File, YamlConfiguration>> iterator()
+					{
+						return new Iterator<Entry<File, YamlConfiguration>>()
+						{
+							private int next = 0;
+
+							@Override
+							public boolean hasNext()
+							{
+								return next < records.size();
+							}
+
+							@Override
+							public Entry<File, YamlConfiguration> next()
+							{
+								if ( next >= records.size() )
+									throw new NoSuchElementException();
+								final int index = next++;
+								return new AbstractMap.SimpleImmutableEntry<File, YamlConfiguration>( records.files.get( index ), null )
+								{
+									@Override
+									public YamlConfiguration getValue()
+									{
+										return records.get( index );
+									}
+								};
+							}
+						};
+					}
+
+					@Override
+					public int size()
+					{
+						return records.size();
+					}
+				};
+			}
+
+			@Override
+			public YamlConfiguration get( Object key )
+			{
+				Integer index = records.positions.get( key );
+				return index == null ? null : records.get( index );
+			}
+
+			@Override
+			public Set<File> keySet()
+			{
+				return new AbstractSet<File>()
+				{
+					@Override
+					public boolean contains( Object o )
+					{
+						return records.positions.containsKey( o );
+					}
+
+					@Override
+					public Iterator<File> iterator()
+					{
+						return records.files.iterator();
+					}
+
+					@Override
+					public int size()
+					{
+						return records.size();
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return records.size();
+			}
+		};
 	}
 
 	public File directFile()
 	{
-		if ( index < 0 || index > yamls.size() - 1 )
+		if ( index < 0 || index > records.size() - 1 )
 			throw new IndexOutOfBoundsException( "Index is out of bounds" );
 
-		return yamls.keySet().toArray( new File[0] )[index];
+		return records.files.get( index );
 	}
 
 	public YamlConfiguration directYaml()
 	{
-		if ( index < 0 || index > yamls.size() - 1 )
+		if ( index < 0 || index > records.size() - 1 )
 			throw new IndexOutOfBoundsException( "Index is out of bounds" );
 
-		return yamls.values().toArray( new YamlConfiguration[0] )[index];
+		return records.get( index );
 	}
 
 	public void first()
@@ -100,7 +413,7 @@ public class FileDatastore extends Datastore
 
 	public FileDatastore getChild( String child )
 	{
-		return new FileDatastore( path + "/" + child, yamls, index );
+		return new FileDatastore( path + "/" + child, records, index );
 	}
 
 	public String getString( String key )
@@ -111,12 +424,12 @@ public class FileDatastore extends Datastore
 
 	public boolean hasNext()
 	{
-		return index < yamls.size();
+		return index < records.size();
 	}
 
 	public void last()
 	{
-		index = yamls.size() - 1;
+		index = records.size() - 1;
 	}
 
 	public void next()
@@ -11,6 +11,7 @@ package com.chiorichan.datastore.sql;
 
 import com.chiorichan.Versioning;
 import com.chiorichan.datastore.DatastoreManager;
+import com.chiorichan.services.ObjectContext;
 import com.chiorichan.utils.UtilDB;
 import com.chiorichan.utils.UtilStrings;
 import com.google.common.base.Joiner;
@@ -25,6 +26,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Provides the SQL Base Class for all SQL Classes
@@ -38,7 +41,12 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 	protected boolean isFirstCall = true;
 	protected boolean debug = Versioning.isDevelopment(); // XXX Temporary. Will change in future.
 	protected boolean autoExecute;
+	protected int queryTimeout = -1;
 	protected SQLWrapper sql;
+	protected ObjectContext context = null;
+	private volatile PreparedStatement running = null;
+	private String fingerprint = null;
+	private boolean rowsRecorded = true;
 
 	protected SQLBase( SQLWrapper sql, boolean autoExecute )
 	{
@@ -67,6 +75,29 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 		return ( T ) this;
 	}
 
+	/**
+	 * Attempts to cancel the statement currently executing on the database, if any.
+	 *
+	 * @return True if a running statement was asked to cancel
+	 */
+	public boolean cancel()
+	{
+		PreparedStatement running = this.running;
+		if ( running == null )
+			return false;
+
+		try
+		{
+			running.cancel();
+			return true;
+		}
+		catch ( SQLException e )
+		{
+			DatastoreManager.getLogger().warning( "Failed to cancel SQL query with explanation '" + e.getMessage() + "'" );
+			return false;
+		}
+	}
+
 	public T close() throws SQLException
 	{
 		if ( stmt != null && !stmt.isClosed() )
@@ -74,6 +105,17 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 		return ( T ) this;
 	}
 
+	/**
+	 * Sets the context reported with this query in the slow query log, see {@link SQLStatistics}
+	 *
+	 * @param context The context issuing this query
+	 */
+	public T context( ObjectContext context )
+	{
+		this.context = context;
+		return ( T ) this;
+	}
+
 	public T debug()
 	{
 		debug = !debug;
@@ -94,6 +136,24 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 
 	protected abstract T execute0() throws SQLException;
 
+	/**
+	 * Executes this query on the datastore {@link SQLExecutor}, freeing the calling thread.
+	 * This query should not be modified until the returned future completes.
+	 *
+	 * @return A future completed with this query once executed
+	 */
+	public final CompletableFuture<T> executeAsync()
+	{
+		return executor().submit( this, this::execute );
+	}
+
+	private SQLExecutor executor()
+	{
+		if ( sql.datastore() == null )
+			throw new IllegalStateException( "The SQL connection is not attached to a datastore, async execution is unavailable." );
+		return sql.datastore().executor();
+	}
+
 	public final Map<String, Object> first() throws SQLException
 	{
 		Map<String, Map<String, Object>> map = map();
@@ -107,6 +167,16 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 		return sql.isConnected();
 	}
 
+	/**
+	 * Indicates this query never writes, allowing it to be routed to a read replica
+	 *
+	 * @return True if read-only
+	 */
+	protected boolean isReadOnly()
+	{
+		return false;
+	}
+
 	public boolean isDebug()
 	{
 		return debug;
@@ -128,7 +198,23 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 	@Override
 	public final Map<String, Map<String, Object>> map() throws SQLException
 	{
-		return UtilDB.resultToMap( resultSet() );
+		Map<String, Map<String, Object>> map = UtilDB.resultToMap( resultSet() );
+		recordRows( map.size() );
+		return map;
+	}
+
+	/**
+	 * Same as {@link #map()} but executed on the datastore {@link SQLExecutor}.
+	 *
+	 * @return A future completed with the resulting rows
+	 */
+	public final CompletableFuture<Map<String, Map<String, Object>>> mapAsync()
+	{
+		return executor().submit( this, () ->
+		{
+			execute();
+			return map();
+		} );
 	}
 
 	private PreparedStatement query( String sqlQuery, boolean isUpdate, boolean save, boolean retry, Object... args ) throws SQLException
@@ -139,7 +225,11 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 				throw new SQLException( "The SQL connection is closed or was never opened." );
 
 			// stmt = con.prepareStatement( query, ResultSet.TYPE_SCROLL_SENSITIVE, ResultSet.CONCUR_UPDATABLE );
-			PreparedStatement stmt = sql.prepareStatement( sqlQuery );
+			PreparedStatement stmt = isUpdate ? sql.prepareUpdateStatement( sqlQuery ) : isReadOnly() ? sql.prepareReadStatement( sqlQuery ) : sql.prepareStatement( sqlQuery );
+
+			int timeout = queryTimeout();
+			if ( timeout > 0 )
+				stmt.setQueryTimeout( timeout );
 
 			int x = 0;
 			for ( Object s : args )
@@ -165,20 +255,36 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 						DatastoreManager.getLogger().warning( String.format( "SQL Query '%s' is lacking replace points (?) to satisfy the argument '%s', index '%s'", sqlQuery, s, x ) );
 					}
 
+			long start = System.nanoTime();
 			try
 			{
+				running = stmt;
+				int updated = 0;
 				if ( isUpdate )
-					stmt.executeUpdate();
+					updated = stmt.executeUpdate();
 				else
 					stmt.execute();
+
+				String print = SQLStatistics.record( sqlQuery, args, System.nanoTime() - start, false, context );
+				SQLStatistics.recordRows( print, updated );
+				if ( save )
+				{
+					fingerprint = print;
+					rowsRecorded = isUpdate;
+				}
 			}
 			catch ( SQLException e )
 			{
+				SQLStatistics.record( sqlQuery, args, System.nanoTime() - start, true, context );
 				DatastoreManager.getLogger().severe( "SQL query failed \"" + sqlQuery + "\" with arguments '" + Joiner.on( ", " ).join( args ) + "' with explanation '" + e.getMessage() + "'" );
 				if ( isDebug() )
 					e.printStackTrace();
 				throw e;
 			}
+			finally
+			{
+				running = null;
+			}
 
 			if ( save )
 				setStatement( stmt );
@@ -218,6 +324,40 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 		return query( sqlQuery, isUpdate, true, false, args );
 	}
 
+	/**
+	 * @return The query timeout in seconds, falls back to the datastore default when unset. Zero means no limit.
+	 */
+	public int queryTimeout()
+	{
+		if ( queryTimeout < 0 )
+			return sql.datastore() == null ? 0 : sql.datastore().getQueryTimeout();
+		return queryTimeout;
+	}
+
+	/**
+	 * Sets the number of seconds the driver will wait for this query to execute, see {@link java.sql.Statement#setQueryTimeout(int)}
+	 *
+	 * @param queryTimeout The timeout in seconds, zero for no limit or negative to use the datastore default
+	 */
+	public T queryTimeout( int queryTimeout )
+	{
+		this.queryTimeout = queryTimeout;
+		return ( T ) this;
+	}
+
+	/**
+	 * Records the rows read from the last execution in the {@link SQLStatistics}, only the first read of each execution is recorded
+	 *
+	 * @param rows The number of rows read
+	 */
+	void recordRows( int rows )
+	{
+		if ( rowsRecorded )
+			return;
+		rowsRecorded = true;
+		SQLStatistics.recordRows( fingerprint, rows );
+	}
+
 	public SQLExecute<T> result() throws SQLException
 	{
 		ResultSet rs = resultSet();
@@ -289,7 +429,9 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 	@Override
 	public final Set<Map<String, Object>> set() throws SQLException
 	{
-		return UtilDB.resultToSet( resultSet() );
+		Set<Map<String, Object>> set = UtilDB.resultToSet( resultSet() );
+		recordRows( set.size() );
+		return set;
 	}
 
 	protected void setFail( SQLException lastException )
@@ -338,7 +480,9 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 	@Override
 	public final Map<String, Map<String, String>> stringMap() throws SQLException
 	{
-		return UtilDB.resultToStringMap( resultSet() );
+		Map<String, Map<String, String>> map = UtilDB.resultToStringMap( resultSet() );
+		recordRows( map.size() );
+		return map;
 	}
 
 	@Override
@@ -347,10 +491,22 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 		return UtilDB.rowToStringMap( resultSet() );
 	}
 
+	/**
+	 * Executes this query on the datastore {@link SQLExecutor} and streams the resulting rows.
+	 *
+	 * @return A future completed with the resulting rows
+	 */
+	public final CompletableFuture<Stream<Map<String, Object>>> streamAsync()
+	{
+		return mapAsync().thenApply( map -> map.values().stream() );
+	}
+
 	@Override
 	public Set<Map<String, String>> stringSet() throws SQLException
 	{
-		return UtilDB.resultToStringSet( resultSet() );
+		Set<Map<String, String>> set = UtilDB.resultToStringSet( resultSet() );
+		recordRows( set.size() );
+		return set;
 	}
 
 	@Override
@@ -393,6 +549,8 @@ public abstract class SQLBase<T extends SQLBase> implements SQLResultSkel, Clone
 		clone.lastException = this.lastException;
 		clone.isFirstCall = this.isFirstCall;
 		clone.autoExecute = this.autoExecute;
+		clone.queryTimeout = this.queryTimeout;
+		clone.context = this.context;
 		clone.debug = this.debug;
 		clone.stmt = this.stmt;
 		clone.sql = this.sql;
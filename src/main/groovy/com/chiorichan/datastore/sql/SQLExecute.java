@@ -25,6 +25,11 @@ public class SQLExecute<P extends SQLBase> extends SQLResultSet implements SQLRe
 {
 	private P parent;
 
+	/**
+	 * Rows passed by {@link #next()}, the parent already positioned the result on the first row
+	 */
+	private int read = 1;
+
 	public SQLExecute( ResultSet result, P parent )
 	{
 		super( result );
@@ -34,7 +39,20 @@ public class SQLExecute<P extends SQLBase> extends SQLResultSet implements SQLRe
 	@Override
 	public Map<String, Map<String, Object>> map() throws SQLException
 	{
-		return UtilDB.resultToMap( result );
+		Map<String, Map<String, Object>> map = UtilDB.resultToMap( result );
+		parent.recordRows( map.size() );
+		return map;
+	}
+
+	@Override
+	public boolean next() throws SQLException
+	{
+		boolean next = result.next();
+		if ( next )
+			read++;
+		else
+			parent.recordRows( read );
+		return next;
 	}
 
 	public P parent()
@@ -81,13 +99,17 @@ public class SQLExecute<P extends SQLBase> extends SQLResultSet implements SQLRe
 	@Override
 	public Set<Map<String, Object>> set() throws SQLException
 	{
-		return UtilDB.resultToSet( result );
+		Set<Map<String, Object>> set = UtilDB.resultToSet( result );
+		parent.recordRows( set.size() );
+		return set;
 	}
 
 	@Override
 	public Map<String, Map<String, String>> stringMap() throws SQLException
 	{
-		return UtilDB.resultToStringMap( result );
+		Map<String, Map<String, String>> map = UtilDB.resultToStringMap( result );
+		parent.recordRows( map.size() );
+		return map;
 	}
 
 	@Override
@@ -99,7 +121,9 @@ public class SQLExecute<P extends SQLBase> extends SQLResultSet implements SQLRe
 	@Override
 	public Set<Map<String, String>> stringSet() throws SQLException
 	{
-		return UtilDB.resultToStringSet( result );
+		Set<Map<String, String>> set = UtilDB.resultToStringSet( result );
+		parent.recordRows( set.size() );
+		return set;
 	}
 
 	@Override
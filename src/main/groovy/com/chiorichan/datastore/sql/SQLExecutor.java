@@ -0,0 +1,252 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.datastore.sql;
+
+import com.chiorichan.datastore.DatastoreManager;
+import org.apache.commons.lang3.Validate;
+
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded executor used to run SQL queries off the calling thread.
+ * Each {@link com.chiorichan.datastore.sql.bases.SQLDatastore} owns one, so a slow database only backs up its own queue.
+ */
+public class SQLExecutor
+{
+	private final String name;
+	private final ThreadPoolExecutor pool;
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong cancelled = new AtomicLong();
+	private final AtomicLong timedOut = new AtomicLong();
+	private final AtomicLong totalWaitNanos = new AtomicLong();
+	private final AtomicLong maxWaitNanos = new AtomicLong();
+
+	public SQLExecutor( String name, int threads, int queueCapacity )
+	{
+		Validate.isTrue( threads > 0, "threads must be greater than zero" );
+		Validate.isTrue( queueCapacity > 0, "queueCapacity must be greater than zero" );
+
+		this.name = name;
+
+		final AtomicInteger threadIds = new AtomicInteger();
+		ThreadFactory factory = runnable ->
+		{
+			Thread thread = new Thread( runnable, "SQL-" + name + "-" + threadIds.incrementAndGet() );
+			thread.setDaemon( true );
+			return thread;
+		};
+
+		pool = new ThreadPoolExecutor( threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<>( queueCapacity ), factory, new ThreadPoolExecutor.AbortPolicy() );
+		pool.allowCoreThreadTimeOut( true );
+	}
+
+	/**
+	 * Queues the task for execution. Cancelling the returned future removes the task from the queue or,
+	 * if it has already started, asks the JDBC driver to cancel the running statement.
+	 *
+	 * @param query The query being executed, used for cancellation
+	 * @param task  The work to run on the database thread
+	 * @param <R>   The result type
+	 * @return A future completed with the task result
+	 */
+	public <R> CompletableFuture<R> submit( SQLBase<?> query, Callable<R> task )
+	{
+		final CompletableFuture<R> result = new CompletableFuture<>();
+		final long queuedAt = System.nanoTime();
+		final Callable<R> carried = SQLRouter.carryWrites( task );
+
+		submitted.incrementAndGet();
+
+		Future<?> pending;
+		try
+		{
+			pending = pool.submit( () ->
+			{
+				recordWait( System.nanoTime() - queuedAt );
+
+				if ( result.isDone() )
+					return;
+
+				try
+				{
+					R value = carried.call();
+					completed.incrementAndGet();
+					result.complete( value );
+				}
+				catch ( Throwable t )
+				{
+					if ( t instanceof SQLTimeoutException )
+						timedOut.incrementAndGet();
+					failed.incrementAndGet();
+					result.completeExceptionally( t );
+				}
+			} );
+		}
+		catch ( RejectedExecutionException e )
+		{
+			rejected.incrementAndGet();
+			DatastoreManager.getLogger().warning( String.format( "The SQL executor '%s' rejected a query, %s queries are already waiting.", name, pool.getQueue().size() ) );
+			result.completeExceptionally( e );
+			return result;
+		}
+
+		result.whenComplete( ( value, cause ) ->
+		{
+			if ( result.isCancelled() )
+			{
+				cancelled.incrementAndGet();
+				// Tasks that have not started are taken out of the queue, so they no longer use its capacity
+				if ( pending.cancel( false ) )
+					pool.remove( ( Runnable ) pending );
+				else if ( query != null )
+					query.cancel();
+			}
+		} );
+
+		return result;
+	}
+
+	private void recordWait( long nanos )
+	{
+		totalWaitNanos.addAndGet( nanos );
+
+		long max = maxWaitNanos.get();
+		while ( nanos > max && !maxWaitNanos.compareAndSet( max, nanos ) )
+			max = maxWaitNanos.get();
+	}
+
+	public int getActiveCount()
+	{
+		return pool.getActiveCount();
+	}
+
+	public long getCancelledCount()
+	{
+		return cancelled.get();
+	}
+
+	public long getCompletedCount()
+	{
+		return completed.get();
+	}
+
+	public long getFailedCount()
+	{
+		return failed.get();
+	}
+
+	/**
+	 * @return The longest time in milliseconds a query has waited in the queue before starting
+	 */
+	public long getMaxWaitMillis()
+	{
+		return TimeUnit.NANOSECONDS.toMillis( maxWaitNanos.get() );
+	}
+
+	/**
+	 * @return The average time in milliseconds queries have waited in the queue before starting
+	 */
+	public double getMeanWaitMillis()
+	{
+		long started = completed.get() + failed.get();
+		return started == 0 ? 0 : totalWaitNanos.get() / 1000000D / started;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getPoolSize()
+	{
+		return pool.getMaximumPoolSize();
+	}
+
+	public int getQueueCapacity()
+	{
+		return pool.getQueue().size() + pool.getQueue().remainingCapacity();
+	}
+
+	public int getQueueSize()
+	{
+		return pool.getQueue().size();
+	}
+
+	public long getRejectedCount()
+	{
+		return rejected.get();
+	}
+
+	public long getSubmittedCount()
+	{
+		return submitted.get();
+	}
+
+	public long getTimedOutCount()
+	{
+		return timedOut.get();
+	}
+
+	public boolean isShutdown()
+	{
+		return pool.isShutdown();
+	}
+
+	/**
+	 * Waits for the queued and running queries to finish after a {@link #shutdown()}
+	 *
+	 * @param timeout The maximum time to wait
+	 * @param unit    The unit of the timeout
+	 * @return True if the executor terminated, false if the timeout elapsed first
+	 * @throws InterruptedException If interrupted while waiting
+	 */
+	public boolean awaitTermination( long timeout, TimeUnit unit ) throws InterruptedException
+	{
+		return pool.awaitTermination( timeout, unit );
+	}
+
+	/**
+	 * Stops accepting queries, the queued queries still run
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * Stops accepting queries and interrupts the running ones
+	 *
+	 * @return The number of queued queries that never ran
+	 */
+	public int shutdownNow()
+	{
+		return pool.shutdownNow().size();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format( "SQLExecutor{name=%s,threads=%s,active=%s,queued=%s/%s,submitted=%s,completed=%s,failed=%s,timedOut=%s,rejected=%s,cancelled=%s,meanWait=%.2fms,maxWait=%sms}", name, getPoolSize(), getActiveCount(), getQueueSize(), getQueueCapacity(), getSubmittedCount(), getCompletedCount(), getFailedCount(), getTimedOutCount(), getRejectedCount(), getCancelledCount(), getMeanWaitMillis(), getMaxWaitMillis() );
+	}
+}
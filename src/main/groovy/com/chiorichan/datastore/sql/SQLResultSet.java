@@ -631,7 +631,7 @@ public class SQLResultSet implements ResultSet
 	}
 
 	@Override
-	public final boolean next() throws SQLException
+	public boolean next() throws SQLException
 	{
 		return result.next();
 	}
@@ -0,0 +1,315 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.datastore.sql;
+
+import com.chiorichan.datastore.DatastoreManager;
+import com.chiorichan.datastore.sql.bases.SQLDatastore;
+import com.chiorichan.tasks.TaskManager;
+import com.chiorichan.tasks.TaskRegistrar;
+import org.apache.commons.lang3.Validate;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes read-only queries of a primary {@link SQLDatastore} to its read replicas.
+ * <p>
+ * Replicas are chosen round-robin and replicas failing the periodic health check are ejected until they pass again.
+ * Writes always go to the primary, and when stickiness is enabled the reads of the writing thread stay on the primary for a short while after it wrote, so the
+ * writer sees it's own writes while other threads keep reading from the replicas. Work continuing on another thread, e.g., the {@link SQLExecutor} or the
+ * account resolver, carries the writes of the submitting thread along, see {@link #carryWrites(Callable)}.
+ */
+public class SQLRouter implements TaskRegistrar
+{
+	public static class Node
+	{
+		private final SQLDatastore datastore;
+		private final AtomicLong reads = new AtomicLong();
+		private volatile boolean healthy = true;
+		private volatile String lastError = null;
+
+		Node( SQLDatastore datastore )
+		{
+			this.datastore = datastore;
+		}
+
+		public SQLDatastore getDatastore()
+		{
+			return datastore;
+		}
+
+		public String getLastError()
+		{
+			return lastError;
+		}
+
+		public long getReads()
+		{
+			return reads.get();
+		}
+
+		public boolean isHealthy()
+		{
+			return healthy;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "Node{connection=%s,healthy=%s,reads=%s}", datastore.direct().getConnectionString(), healthy, reads.get() );
+		}
+	}
+
+	/**
+	 * The time of the last write to each router, per thread
+	 */
+	private static final ThreadLocal<Map<SQLRouter, Long>> writes = ThreadLocal.withInitial( WeakHashMap::new );
+
+	/**
+	 * Wraps the task, so it reads the recent writes of the calling thread from the primary when it runs on another thread
+	 *
+	 * @param task The task
+	 * @param <R>  The result type
+	 * @return The wrapped task, or the task itself if the calling thread has not written
+	 */
+	public static <R> Callable<R> carryWrites( Callable<R> task )
+	{
+		Map<SQLRouter, Long> caller = writes.get();
+		if ( caller.isEmpty() )
+			return task;
+
+		Map<SQLRouter, Long> carried = new HashMap<>( caller );
+		return () ->
+		{
+			Map<SQLRouter, Long> previous = writes.get();
+			Map<SQLRouter, Long> current = new WeakHashMap<>( previous );
+			carried.forEach( ( router, time ) -> current.merge( router, time, Math::max ) );
+
+			writes.set( current );
+			try
+			{
+				return task.call();
+			}
+			finally
+			{
+				writes.set( previous );
+			}
+		};
+	}
+
+	private final SQLDatastore primary;
+	private final AtomicInteger next = new AtomicInteger();
+	private final AtomicLong primaryReads = new AtomicLong();
+	private volatile Node[] replicas = new Node[0];
+	private volatile long stickyMillis = 0;
+	private int healthCheckTimeout = 2;
+	private int healthCheckTask = -1;
+	private volatile long deferredHealthCheck = 0;
+
+	public SQLRouter( SQLDatastore primary )
+	{
+		Validate.notNull( primary );
+		this.primary = primary;
+	}
+
+	public synchronized void addReplica( SQLDatastore replica )
+	{
+		Validate.notNull( replica );
+		Validate.isTrue( replica != primary, "The primary datastore can not also be a replica" );
+
+		for ( Node node : replicas )
+			if ( node.datastore == replica )
+				return;
+
+		Node[] nodes = Arrays.copyOf( replicas, replicas.length + 1 );
+		nodes[replicas.length] = new Node( replica );
+		replicas = nodes;
+	}
+
+	/**
+	 * Probes the primary and every replica, ejecting replicas that fail and restoring those that recover.
+	 * Called periodically once {@link #scheduleHealthCheck(long)} is called but can also be called manually.
+	 */
+	public void checkHealth()
+	{
+		for ( Node node : replicas )
+		{
+			String error = probe( node.datastore.direct() );
+			boolean healthy = error == null;
+
+			if ( node.healthy && !healthy )
+				DatastoreManager.getLogger().warning( String.format( "The read replica '%s' failed it's health check and was ejected, explanation '%s'", node.datastore.direct().getConnectionString(), error ) );
+			else if ( !node.healthy && healthy )
+				DatastoreManager.getLogger().info( String.format( "The read replica '%s' passed it's health check and was restored.", node.datastore.direct().getConnectionString() ) );
+
+			node.lastError = error;
+			node.healthy = healthy;
+		}
+
+		String error = probe( primary.direct() );
+		if ( error != null )
+			DatastoreManager.getLogger().severe( String.format( "The primary datastore '%s' failed it's health check, explanation '%s'", primary.direct().getConnectionString(), error ) );
+	}
+
+	private String probe( SQLWrapper wrapper )
+	{
+		if ( !wrapper.isConnected() && !wrapper.reconnect() )
+			return "Not connected";
+
+		try ( Statement stmt = wrapper.direct().createStatement() )
+		{
+			stmt.setQueryTimeout( healthCheckTimeout );
+			stmt.execute( "SELECT 1" );
+			return null;
+		}
+		catch ( SQLException e )
+		{
+			return e.getMessage();
+		}
+	}
+
+	@Override
+	public String getName()
+	{
+		return "SQLRouter";
+	}
+
+	public SQLDatastore getPrimary()
+	{
+		return primary;
+	}
+
+	public long getPrimaryReads()
+	{
+		return primaryReads.get();
+	}
+
+	public List<Node> getReplicas()
+	{
+		return Collections.unmodifiableList( new ArrayList<>( Arrays.asList( replicas ) ) );
+	}
+
+	public long getStickyMillis()
+	{
+		return stickyMillis;
+	}
+
+	@Override
+	public boolean isEnabled()
+	{
+		return true;
+	}
+
+	/**
+	 * Selects the connection for a read-only query
+	 *
+	 * @return The wrapper of a healthy replica, or the primary if none are available or the calling thread recently wrote
+	 */
+	SQLWrapper read()
+	{
+		if ( deferredHealthCheck > 0 )
+			scheduleHealthCheck( deferredHealthCheck );
+
+		if ( stickyMillis > 0 )
+		{
+			Map<SQLRouter, Long> written = writes.get();
+			Long lastWrite = written.get( this );
+			if ( lastWrite != null )
+			{
+				if ( System.currentTimeMillis() - lastWrite < stickyMillis )
+				{
+					primaryReads.incrementAndGet();
+					return primary.direct();
+				}
+				written.remove( this );
+			}
+		}
+
+		Node[] nodes = replicas;
+		for ( int i = 0; i < nodes.length; i++ )
+		{
+			Node node = nodes[Math.floorMod( next.getAndIncrement(), nodes.length )];
+			if ( node.healthy && node.datastore.direct().isConnected() )
+			{
+				node.reads.incrementAndGet();
+				return node.datastore.direct();
+			}
+		}
+
+		primaryReads.incrementAndGet();
+		return primary.direct();
+	}
+
+	public synchronized void removeReplica( SQLDatastore replica )
+	{
+		List<Node> nodes = new ArrayList<>( Arrays.asList( replicas ) );
+		nodes.removeIf( node -> node.datastore == replica );
+		replicas = nodes.toArray( new Node[0] );
+	}
+
+	/**
+	 * Schedules the health check with the {@link TaskManager}.
+	 * If the TaskManager is not running yet, the check is scheduled by the first read once it is.
+	 *
+	 * @param period The period in ticks between checks
+	 */
+	public synchronized void scheduleHealthCheck( long period )
+	{
+		TaskManager manager = TaskManager.instanceWithoutException();
+		if ( manager == null )
+		{
+			if ( deferredHealthCheck != period )
+				DatastoreManager.getLogger().warning( "The TaskManager is not running, the health check of the read replicas is deferred until it is." );
+			deferredHealthCheck = period;
+			return;
+		}
+
+		deferredHealthCheck = 0;
+
+		if ( healthCheckTask > -1 )
+			manager.cancelTask( healthCheckTask );
+
+		healthCheckTask = manager.scheduleAsyncRepeatingTask( this, period, period, this::checkHealth );
+	}
+
+	public void setHealthCheckTimeout( int seconds )
+	{
+		healthCheckTimeout = Math.max( 1, seconds );
+	}
+
+	/**
+	 * Sets how long the reads of a thread stay on the primary after it wrote
+	 *
+	 * @param stickyMillis The time in milliseconds, zero disables stickiness
+	 */
+	public void setStickyMillis( long stickyMillis )
+	{
+		this.stickyMillis = Math.max( 0, stickyMillis );
+	}
+
+	/**
+	 * Notes that the calling thread wrote to the primary
+	 */
+	void written()
+	{
+		if ( stickyMillis > 0 )
+			writes.get().put( this, System.currentTimeMillis() );
+	}
+}
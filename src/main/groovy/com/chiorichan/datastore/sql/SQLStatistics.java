@@ -0,0 +1,314 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.datastore.sql;
+
+import com.chiorichan.datastore.DatastoreManager;
+import com.chiorichan.services.ObjectContext;
+import com.google.common.base.Joiner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Collects per-statement latency statistics for every query executed through {@link SQLBase}.
+ * Statements are grouped by a fingerprint of their SQL text, with literals and whitespace normalized.
+ */
+public class SQLStatistics
+{
+	public enum Sort
+	{
+		COUNT( Comparator.comparingLong( Entry::getCount ) ),
+		TOTAL( Comparator.comparingLong( Entry::getTotalNanos ) ),
+		MEAN( Comparator.comparingDouble( Entry::getMeanNanos ) ),
+		MAX( Comparator.comparingLong( Entry::getMaxNanos ) ),
+		ROWS( Comparator.comparingLong( Entry::getRows ) ),
+		ERRORS( Comparator.comparingLong( Entry::getErrors ) );
+
+		private final Comparator<Entry> comparator;
+
+		Sort( Comparator<Entry> comparator )
+		{
+			this.comparator = comparator;
+		}
+
+		public static Sort parse( String name )
+		{
+			for ( Sort sort : values() )
+				if ( sort.name().equalsIgnoreCase( name ) )
+					return sort;
+			return null;
+		}
+	}
+
+	public static class Entry
+	{
+		private final String fingerprint;
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAdder rows = new LongAdder();
+		private final LongAdder errors = new LongAdder();
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		Entry( String fingerprint )
+		{
+			this.fingerprint = fingerprint;
+		}
+
+		public long getCount()
+		{
+			return count.sum();
+		}
+
+		public long getErrors()
+		{
+			return errors.sum();
+		}
+
+		public String getFingerprint()
+		{
+			return fingerprint;
+		}
+
+		public long getMaxNanos()
+		{
+			return maxNanos.get();
+		}
+
+		public double getMeanNanos()
+		{
+			long count = getCount();
+			return count == 0 ? 0 : ( double ) getTotalNanos() / count;
+		}
+
+		public long getRows()
+		{
+			return rows.sum();
+		}
+
+		public long getTotalNanos()
+		{
+			return totalNanos.sum();
+		}
+
+		void record( long nanos, boolean error )
+		{
+			count.increment();
+			totalNanos.add( nanos );
+			if ( error )
+				errors.increment();
+
+			long max = maxNanos.get();
+			while ( nanos > max && !maxNanos.compareAndSet( max, nanos ) )
+				max = maxNanos.get();
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "count=%s, total=%sms, mean=%.2fms, max=%sms, rows=%s, errors=%s, query=\"%s\"", getCount(), TimeUnit.NANOSECONDS.toMillis( getTotalNanos() ), getMeanNanos() / 1000000D, TimeUnit.NANOSECONDS.toMillis( getMaxNanos() ), getRows(), getErrors(), fingerprint );
+		}
+	}
+
+	private static final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private static volatile boolean enabled = true;
+	private static volatile long slowThreshold = TimeUnit.SECONDS.toNanos( 1 );
+
+	/**
+	 * Normalizes the SQL text so statements only differing by literal values are grouped together.
+	 * String and number literals become {@code ?}, whitespace is collapsed and value lists such as {@code IN (?, ?, ?)} are shortened to {@code (?+)}.
+	 *
+	 * @param sql The SQL text
+	 * @return The fingerprint
+	 */
+	public static String fingerprint( String sql )
+	{
+		if ( sql == null )
+			return "";
+
+		StringBuilder sb = new StringBuilder( sql.length() );
+		int len = sql.length();
+		boolean space = false;
+
+		for ( int i = 0; i < len; i++ )
+		{
+			char c = sql.charAt( i );
+
+			if ( Character.isWhitespace( c ) )
+			{
+				space = sb.length() > 0;
+				continue;
+			}
+
+			if ( space )
+			{
+				sb.append( ' ' );
+				space = false;
+			}
+
+			if ( c == '\'' || c == '"' )
+			{
+				// Skip the quoted literal, honoring doubled and escaped quotes
+				i++;
+				while ( i < len )
+				{
+					char q = sql.charAt( i );
+					if ( q == '\\' )
+						i++;
+					else if ( q == c )
+					{
+						if ( i + 1 < len && sql.charAt( i + 1 ) == c )
+							i++;
+						else
+							break;
+					}
+					i++;
+				}
+				sb.append( '?' );
+			}
+			else if ( Character.isDigit( c ) && ( sb.length() == 0 || !isIdentifierChar( sb.charAt( sb.length() - 1 ) ) ) )
+			{
+				while ( i + 1 < len && ( Character.isDigit( sql.charAt( i + 1 ) ) || sql.charAt( i + 1 ) == '.' ) )
+					i++;
+				sb.append( '?' );
+			}
+			else
+				sb.append( c );
+		}
+
+		int trim = sb.length();
+		while ( trim > 0 && sb.charAt( trim - 1 ) == ';' )
+			trim--;
+		sb.setLength( trim );
+
+		return collapseLists( sb.toString() );
+	}
+
+	private static String collapseLists( String sql )
+	{
+		if ( !sql.contains( "?, ?" ) && !sql.contains( "?,?" ) )
+			return sql;
+		return sql.replaceAll( "\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)", "(?+)" );
+	}
+
+	private static boolean isIdentifierChar( char c )
+	{
+		return Character.isLetterOrDigit( c ) || c == '_' || c == '`';
+	}
+
+	public static Entry get( String fingerprint )
+	{
+		return entries.get( fingerprint );
+	}
+
+	public static long getSlowThreshold()
+	{
+		return TimeUnit.NANOSECONDS.toMillis( slowThreshold );
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Records a statement execution
+	 *
+	 * @param sql     The SQL text that was executed
+	 * @param args    The bind values, used when logging slow statements
+	 * @param nanos   The execution time in nanoseconds
+	 * @param error   Did the statement fail
+	 * @param context The context that issued the statement, the calling class is used when null
+	 * @return The fingerprint the statement was recorded under, null if statistics are disabled
+	 */
+	public static String record( String sql, Object[] args, long nanos, boolean error, ObjectContext context )
+	{
+		if ( !enabled )
+			return null;
+
+		String fingerprint = fingerprint( sql );
+		entries.computeIfAbsent( fingerprint, Entry::new ).record( nanos, error );
+
+		if ( nanos >= slowThreshold )
+			DatastoreManager.getLogger().warning( String.format( "Slow SQL query took %sms \"%s\" with values [%s] called from %s", TimeUnit.NANOSECONDS.toMillis( nanos ), sql, args == null ? "" : Joiner.on( ", " ).useForNull( "null" ).join( args ), context == null ? caller() : context.getFullName() ) );
+
+		return fingerprint;
+	}
+
+	/**
+	 * Adds to the number of rows returned or affected by the fingerprint
+	 *
+	 * @param fingerprint The fingerprint returned by {@link #record(String, Object[], long, boolean, ObjectContext)}
+	 * @param rows        The row count
+	 */
+	public static void recordRows( String fingerprint, int rows )
+	{
+		if ( fingerprint == null || rows <= 0 )
+			return;
+
+		Entry entry = entries.get( fingerprint );
+		if ( entry != null )
+			entry.rows.add( rows );
+	}
+
+	private static String caller()
+	{
+		for ( StackTraceElement element : Thread.currentThread().getStackTrace() )
+		{
+			String cls = element.getClassName();
+			if ( !cls.startsWith( "com.chiorichan.datastore." ) && !cls.startsWith( "java." ) && !cls.startsWith( "sun." ) && !cls.startsWith( "com.chiorichan.utils.UtilDB" ) )
+				return element.toString();
+		}
+		return "unknown";
+	}
+
+	public static void reset()
+	{
+		entries.clear();
+	}
+
+	public static void setEnabled( boolean enabled )
+	{
+		SQLStatistics.enabled = enabled;
+	}
+
+	/**
+	 * Sets the time after which a statement is logged as slow
+	 *
+	 * @param millis The threshold in milliseconds
+	 */
+	public static void setSlowThreshold( long millis )
+	{
+		slowThreshold = TimeUnit.MILLISECONDS.toNanos( Math.max( 0, millis ) );
+	}
+
+	/**
+	 * Returns the worst statements by the specified sort
+	 *
+	 * @param limit The maximum number of entries to return
+	 * @param sort  How to rank statements, highest first
+	 * @return The top entries
+	 */
+	public static List<Entry> top( int limit, Sort sort )
+	{
+		return new ArrayList<>( entries.values() ).stream().sorted( sort.comparator.reversed() ).limit( limit ).collect( Collectors.toList() );
+	}
+
+	private SQLStatistics()
+	{
+
+	}
+}
@@ -9,6 +9,7 @@
  */
 package com.chiorichan.datastore.sql;
 
+import com.chiorichan.datastore.sql.bases.SQLDatastore;
 import com.chiorichan.datastore.sql.bases.SQLiteDatastore;
 import com.chiorichan.datastore.sql.query.SQLQueryDelete;
 import com.chiorichan.datastore.sql.query.SQLQueryInsert;
@@ -136,6 +137,14 @@ public class SQLTable extends SQLBase<SQLTable>
 		return new SQLTableColumns( sql, table );
 	}
 
+	/**
+	 * @return The datastore this table belongs to
+	 */
+	public SQLDatastore datastore()
+	{
+		return sql.datastore();
+	}
+
 	public SQLQueryDelete delete()
 	{
 		return new SQLQueryDelete( sql, table );
@@ -190,6 +199,11 @@ public class SQLTable extends SQLBase<SQLTable>
 		return false;
 	}
 
+	public String getName()
+	{
+		return table;
+	}
+
 	public SQLQueryInsert insert()
 	{
 		return new SQLQueryInsert( sql, table );
@@ -0,0 +1,157 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.datastore.sql;
+
+import com.chiorichan.datastore.sql.bases.SQLDatastore;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+/**
+ * Provides a unit of work executed on a single connection and committed atomically.
+ * Any builder created from this datastore, e.g., {@link #table(String)} or {@link #insert(String)}, takes part in the transaction.
+ * <p>
+ * Obtained using {@link SQLDatastore#transaction(Work)}.
+ */
+public class SQLTransaction extends SQLDatastore
+{
+	public enum Isolation
+	{
+		DEFAULT( -1 ),
+		READ_UNCOMMITTED( Connection.TRANSACTION_READ_UNCOMMITTED ),
+		READ_COMMITTED( Connection.TRANSACTION_READ_COMMITTED ),
+		REPEATABLE_READ( Connection.TRANSACTION_REPEATABLE_READ ),
+		SERIALIZABLE( Connection.TRANSACTION_SERIALIZABLE );
+
+		private final int level;
+
+		Isolation( int level )
+		{
+			this.level = level;
+		}
+
+		public int getLevel()
+		{
+			return level;
+		}
+	}
+
+	/**
+	 * The work performed inside a transaction.
+	 * Work can be executed more than once when the transaction is retried after a deadlock, so it should not have side effects outside the database.
+	 *
+	 * @param <R> The result type
+	 */
+	@FunctionalInterface
+	public interface Work<R>
+	{
+		R run( SQLTransaction tx ) throws SQLException;
+	}
+
+	private final SQLDatastore parent;
+	private final Connection connection;
+	private int savepoints = 0;
+
+	SQLTransaction( SQLDatastore parent, Connection connection )
+	{
+		this.parent = parent;
+		this.connection = connection;
+		sql = new SQLWrapper( this, connection );
+	}
+
+	/**
+	 * Commits all work performed so far, the transaction remains open for further work.
+	 *
+	 * @throws SQLException if a database access error occurs
+	 */
+	public void commit() throws SQLException
+	{
+		connection.commit();
+	}
+
+	@Override
+	public SQLExecutor executor()
+	{
+		return parent.executor();
+	}
+
+	@Override
+	public int getQueryTimeout()
+	{
+		return parent.getQueryTimeout();
+	}
+
+	/**
+	 * @return The datastore this transaction was started from
+	 */
+	public SQLDatastore parent()
+	{
+		return parent;
+	}
+
+	public void releaseSavepoint( Savepoint savepoint ) throws SQLException
+	{
+		connection.releaseSavepoint( savepoint );
+	}
+
+	/**
+	 * Discards all work performed since the transaction started or was last committed.
+	 *
+	 * @throws SQLException if a database access error occurs
+	 */
+	public void rollback() throws SQLException
+	{
+		connection.rollback();
+	}
+
+	/**
+	 * Discards all work performed after the savepoint was set.
+	 *
+	 * @param savepoint The savepoint to rollback to
+	 * @throws SQLException if a database access error occurs
+	 */
+	public void rollback( Savepoint savepoint ) throws SQLException
+	{
+		connection.rollback( savepoint );
+	}
+
+	public Savepoint savepoint() throws SQLException
+	{
+		return savepoint( "sp" + savepoints );
+	}
+
+	public Savepoint savepoint( String name ) throws SQLException
+	{
+		savepoints++;
+		return connection.setSavepoint( name );
+	}
+
+	/**
+	 * Nested transactions are executed inside a savepoint of this transaction,
+	 * so a failure only discards the nested work before the exception is rethrown.
+	 */
+	@Override
+	public <R> R transaction( Isolation isolation, Work<R> work ) throws SQLException
+	{
+		Savepoint savepoint = savepoint();
+		try
+		{
+			R result = work.run( this );
+			releaseSavepoint( savepoint );
+			return result;
+		}
+		catch ( SQLException | RuntimeException e )
+		{
+			rollback( savepoint );
+			throw e;
+		}
+	}
+}
@@ -20,15 +20,41 @@ import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
 
 /**
  * Wraps the SQL Connection
  */
 public class SQLWrapper
 {
+	/**
+	 * An idle transaction connection and the time it was released
+	 */
+	private static final class IdleConnection
+	{
+		private final Connection conn;
+		private final long since = System.currentTimeMillis();
+
+		IdleConnection( Connection conn )
+		{
+			this.conn = conn;
+		}
+	}
+
 	private SQLDatastore ds;
 	private Connection sql;
 	private String savedConnection, savedUser = null, savedPass = null;
+	private final Deque<IdleConnection> idleConnections = new ConcurrentLinkedDeque<>();
+	private int maxIdleConnections = 4;
+	private long maxIdleMillis = 300000;
+	private long validateAfterMillis = 1000;
+	private int validationTimeout = 2;
+	private volatile boolean closed = false;
+	private int transactionRetries = 3;
+	private SQLRouter router = null;
+	private volatile boolean updated = false;
 
 	public SQLWrapper( SQLDatastore ds, Connection sql )
 	{
@@ -84,6 +110,105 @@ public class SQLWrapper
 		sql.setAutoCommit( true );
 	}
 
+	/**
+	 * Takes an idle connection dedicated to transactions or opens a new one.
+	 * Idle connections are validated before they are handed out, as the server may have dropped them meanwhile, e.g., on wait_timeout or a network reset.
+	 *
+	 * @return The connection, null if this wrapper can't open additional connections
+	 * @throws SQLException if a database access error occurs or this wrapper was closed
+	 */
+	private Connection borrowConnection() throws SQLException
+	{
+		if ( closed )
+			throw new SQLException( "The SQL connection was closed." );
+
+		IdleConnection idle;
+		while ( ( idle = idleConnections.pollFirst() ) != null )
+			if ( isUsable( idle ) )
+				return idle.conn;
+			else
+				closeQuietly( idle.conn );
+
+		if ( savedConnection == null )
+			return null;
+
+		if ( savedUser != null && savedPass != null )
+			return DriverManager.getConnection( savedConnection, savedUser, savedPass );
+		return DriverManager.getConnection( savedConnection );
+	}
+
+	private boolean isUsable( IdleConnection idle )
+	{
+		long idleMillis = System.currentTimeMillis() - idle.since;
+		if ( idleMillis > maxIdleMillis )
+			return false;
+
+		try
+		{
+			if ( idleMillis > validateAfterMillis )
+				return idle.conn.isValid( validationTimeout );
+			return !idle.conn.isClosed();
+		}
+		catch ( SQLException e )
+		{
+			return false;
+		}
+	}
+
+	private void releaseConnection( Connection conn )
+	{
+		try
+		{
+			if ( conn.isClosed() )
+				return;
+
+			if ( !closed && idleConnections.size() < maxIdleConnections )
+			{
+				idleConnections.offerFirst( new IdleConnection( conn ) );
+				// Closed while the connection was being released
+				if ( closed )
+					closeIdleConnections();
+			}
+			else
+				conn.close();
+		}
+		catch ( SQLException e )
+		{
+			DatastoreManager.getLogger().warning( "Failed to release transaction connection with explanation '" + e.getMessage() + "'" );
+		}
+	}
+
+	/**
+	 * Closes the connection and the idle transaction connections, transactions are rejected afterwards
+	 */
+	public void close()
+	{
+		closed = true;
+		closeIdleConnections();
+
+		if ( sql != null )
+			closeQuietly( sql );
+	}
+
+	private void closeIdleConnections()
+	{
+		IdleConnection idle;
+		while ( ( idle = idleConnections.pollFirst() ) != null )
+			closeQuietly( idle.conn );
+	}
+
+	private static void closeQuietly( Connection conn )
+	{
+		try
+		{
+			conn.close();
+		}
+		catch ( SQLException e )
+		{
+			DatastoreManager.getLogger().warning( "Failed to close connection with explanation '" + e.getMessage() + "'" );
+		}
+	}
+
 	public SQLDatastore datastore()
 	{
 		return ds;
@@ -104,6 +229,24 @@ public class SQLWrapper
 		return sql.isClosed();
 	}
 
+	/**
+	 * Checks if the exception was caused by a deadlock or lock timeout, meaning the transaction can be safely retried.
+	 */
+	private static boolean isDeadlock( SQLException e )
+	{
+		for ( SQLException cause = e; cause != null; cause = cause.getNextException() )
+		{
+			if ( cause instanceof SQLTransactionRollbackException )
+				return true;
+			if ( "40001".equals( cause.getSQLState() ) || "40P01".equals( cause.getSQLState() ) )
+				return true;
+			// MySQL ER_LOCK_DEADLOCK and ER_LOCK_WAIT_TIMEOUT
+			if ( cause.getErrorCode() == 1213 || cause.getErrorCode() == 1205 )
+				return true;
+		}
+		return false;
+	}
+
 	public boolean isConnected()
 	{
 		if ( sql == null )
@@ -124,6 +267,31 @@ public class SQLWrapper
 		return prepareStatement( query, false );
 	}
 
+	/**
+	 * Prepares a statement that writes, so the reads of the calling thread stay on the primary for a while, see {@link SQLRouter}
+	 */
+	PreparedStatement prepareUpdateStatement( String query ) throws SQLException
+	{
+		updated = true;
+		if ( router != null )
+			router.written();
+		return prepareStatement( query, false );
+	}
+
+	/**
+	 * Prepares a read-only statement, which is routed to a read replica when any are registered, see {@link SQLRouter}
+	 */
+	PreparedStatement prepareReadStatement( String query ) throws SQLException
+	{
+		if ( router != null )
+		{
+			SQLWrapper target = router.read();
+			if ( target != this )
+				return target.prepareStatement( query, false );
+		}
+		return prepareStatement( query, false );
+	}
+
 	PreparedStatement prepareStatement( String query, boolean retry ) throws SQLException
 	{
 		try
@@ -199,6 +367,29 @@ public class SQLWrapper
 		return prepareStatement( query, false, resultSetType, resultSetConcurrency, resultSetHoldability );
 	}
 
+	/**
+	 * @return The read replica router, null if no replicas were ever registered
+	 */
+	public SQLRouter router()
+	{
+		return router;
+	}
+
+	/**
+	 * Gets the read replica router, creating it if needed
+	 *
+	 * @return The router
+	 */
+	public synchronized SQLRouter routerOrCreate()
+	{
+		if ( router == null )
+		{
+			Validate.notNull( ds, "Read replicas require the SQL connection to be attached to a datastore" );
+			router = new SQLRouter( ds );
+		}
+		return router;
+	}
+
 	public boolean reconnect()
 	{
 		if ( isConnected() )
@@ -208,6 +399,9 @@ public class SQLWrapper
 
 	boolean reconnect0()
 	{
+		if ( closed )
+			return false;
+
 		try
 		{
 			Validate.notNull( savedConnection );
@@ -227,4 +421,132 @@ public class SQLWrapper
 	{
 		return savedConnection;
 	}
+
+	/**
+	 * Sets how many idle transaction connections are kept open for reuse
+	 *
+	 * @param maxIdleConnections The maximum idle connections
+	 */
+	public void setMaxIdleConnections( int maxIdleConnections )
+	{
+		this.maxIdleConnections = Math.max( 0, maxIdleConnections );
+	}
+
+	/**
+	 * Sets how long a transaction connection stays idle before it's closed instead of reused
+	 *
+	 * @param maxIdleMillis The time in milliseconds
+	 */
+	public void setMaxIdleMillis( long maxIdleMillis )
+	{
+		this.maxIdleMillis = Math.max( 0, maxIdleMillis );
+	}
+
+	/**
+	 * Sets how idle transaction connections are validated before reuse
+	 *
+	 * @param validateAfterMillis The time in milliseconds a connection is idle before it's validated with the server
+	 * @param timeout             The time in seconds to wait for the server
+	 */
+	public void setValidation( long validateAfterMillis, int timeout )
+	{
+		this.validateAfterMillis = Math.max( 0, validateAfterMillis );
+		validationTimeout = Math.max( 1, timeout );
+	}
+
+	/**
+	 * Sets how many times a transaction is retried after failing from a deadlock
+	 *
+	 * @param transactionRetries The number of retries
+	 */
+	public void setTransactionRetries( int transactionRetries )
+	{
+		this.transactionRetries = Math.max( 0, transactionRetries );
+	}
+
+	/**
+	 * Executes the work inside a transaction on a single connection, committing once the work returns and rolling back if it throws.
+	 * Transactions use a dedicated connection, so other queries on this wrapper are unaffected. A wrapper created from an existing
+	 * {@link Connection} can't open one, so it rejects transactions rather than pulling the queries of other threads into them.
+	 *
+	 * @param isolation The isolation level or {@link SQLTransaction.Isolation#DEFAULT} to keep the driver default
+	 * @param work      The work to execute, it's executed again if the transaction fails from a deadlock
+	 * @param <R>       The result type
+	 * @return The result returned by the work
+	 * @throws SQLException if a database access error occurs, the work failed or this wrapper can't open a dedicated connection
+	 */
+	public <R> R transaction( SQLTransaction.Isolation isolation, SQLTransaction.Work<R> work ) throws SQLException
+	{
+		Validate.notNull( isolation );
+		Validate.notNull( work );
+
+		for ( int attempt = 0; ; attempt++ )
+		{
+			Connection conn = borrowConnection();
+			if ( conn == null )
+				throw new SQLException( "Transactions need a dedicated connection, which this wrapper can't open since it was not created from a connection string." );
+
+			int previousIsolation = conn.getTransactionIsolation();
+			SQLTransaction tx = new SQLTransaction( ds, conn );
+
+			try
+			{
+				conn.setAutoCommit( false );
+				if ( isolation != SQLTransaction.Isolation.DEFAULT )
+					conn.setTransactionIsolation( isolation.getLevel() );
+
+				R result = work.run( tx );
+				conn.commit();
+				return result;
+			}
+			catch ( SQLException e )
+			{
+				rollbackQuietly( conn );
+
+				if ( attempt < transactionRetries && isDeadlock( e ) )
+				{
+					DatastoreManager.getLogger().warning( String.format( "Transaction failed from a deadlock, retrying (attempt %s of %s). Explanation '%s'", attempt + 1, transactionRetries, e.getMessage() ) );
+					continue;
+				}
+
+				throw e;
+			}
+			catch ( RuntimeException | Error e )
+			{
+				rollbackQuietly( conn );
+				throw e;
+			}
+			finally
+			{
+				// Only transactions that wrote keep the reads of this thread on the primary
+				if ( router != null && tx.direct().updated )
+					router.written();
+
+				try
+				{
+					conn.setAutoCommit( true );
+					if ( isolation != SQLTransaction.Isolation.DEFAULT )
+						conn.setTransactionIsolation( previousIsolation );
+				}
+				catch ( SQLException e )
+				{
+					DatastoreManager.getLogger().warning( "Failed to restore connection after transaction with explanation '" + e.getMessage() + "'" );
+				}
+
+				releaseConnection( conn );
+			}
+		}
+	}
+
+	private static void rollbackQuietly( Connection conn )
+	{
+		try
+		{
+			conn.rollback();
+		}
+		catch ( SQLException e )
+		{
+			DatastoreManager.getLogger().warning( "Failed to rollback transaction with explanation '" + e.getMessage() + "'" );
+		}
+	}
 }
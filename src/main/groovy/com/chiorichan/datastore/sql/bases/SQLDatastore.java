@@ -11,8 +11,12 @@ package com.chiorichan.datastore.sql.bases;
 
 import com.chiorichan.database.DatabaseEngineLegacy;
 import com.chiorichan.datastore.Datastore;
+import com.chiorichan.datastore.DatastoreManager;
+import com.chiorichan.datastore.sql.SQLExecutor;
 import com.chiorichan.datastore.sql.SQLRawQuery;
+import com.chiorichan.datastore.sql.SQLRouter;
 import com.chiorichan.datastore.sql.SQLTable;
+import com.chiorichan.datastore.sql.SQLTransaction;
 import com.chiorichan.datastore.sql.SQLWrapper;
 import com.chiorichan.datastore.sql.query.SQLQueryDelete;
 import com.chiorichan.datastore.sql.query.SQLQueryInsert;
@@ -24,6 +28,7 @@ import java.sql.SQLException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base for SQL Datastore
@@ -31,6 +36,66 @@ import java.util.Map;
 public class SQLDatastore extends Datastore
 {
 	protected SQLWrapper sql = null;
+	private SQLExecutor executor = null;
+	private int executorThreads = 4;
+	private int executorQueue = 1024;
+	private int queryTimeout = 0;
+
+	/**
+	 * Registers a read replica of this datastore. Queries built with {@link #select(String)} are then spread across healthy replicas, while all others remain on this datastore.
+	 * Health checks are scheduled with the TaskManager when it's running, otherwise see {@link SQLRouter#checkHealth()}.
+	 *
+	 * @param replica The replica datastore
+	 * @return The router managing this datastore's replicas
+	 */
+	public SQLRouter addReplica( SQLDatastore replica )
+	{
+		if ( sql == null )
+			throw new IllegalStateException( "The SQL instance is not initialized!" );
+
+		SQLRouter router = sql.routerOrCreate();
+		router.addReplica( replica );
+		return router;
+	}
+
+	/**
+	 * Closes the connections of this datastore, including the idle transaction connections and it's read replicas.
+	 * The async query executor is shutdown first, queued queries are given up to ten seconds to finish.
+	 */
+	public void close()
+	{
+		SQLExecutor executor;
+		synchronized ( this )
+		{
+			executor = this.executor;
+			this.executor = null;
+		}
+
+		if ( executor != null )
+		{
+			executor.shutdown();
+			try
+			{
+				if ( !executor.awaitTermination( 10, TimeUnit.SECONDS ) )
+					DatastoreManager.getLogger().warning( String.format( "The SQL executor '%s' did not finish in time, %s queued queries were abandoned.", executor.getName(), executor.shutdownNow() ) );
+			}
+			catch ( InterruptedException e )
+			{
+				executor.shutdownNow();
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if ( sql == null )
+			return;
+
+		SQLRouter router = sql.router();
+		if ( router != null )
+			for ( SQLRouter.Node node : router.getReplicas() )
+				node.getDatastore().close();
+
+		sql.close();
+	}
 
 	public SQLQueryDelete delete( String table ) throws SQLException
 	{
@@ -56,6 +121,39 @@ public class SQLDatastore extends Datastore
 		return sql;
 	}
 
+	/**
+	 * Gets the bounded executor that runs this datastore's async queries, it's created on first use.
+	 *
+	 * @return The {@link SQLExecutor} instance
+	 */
+	public synchronized SQLExecutor executor()
+	{
+		if ( executor == null || executor.isShutdown() )
+			executor = new SQLExecutor( getClass().getSimpleName(), executorThreads, executorQueue );
+		return executor;
+	}
+
+	/**
+	 * Sets the size of the async query executor, any existing executor is shutdown after finishing it's queued queries.
+	 *
+	 * @param threads       The number of database threads
+	 * @param queueCapacity The maximum number of queries allowed to wait for a thread
+	 */
+	public synchronized void setExecutor( int threads, int queueCapacity )
+	{
+		Validate.isTrue( threads > 0, "threads must be greater than zero" );
+		Validate.isTrue( queueCapacity > 0, "queueCapacity must be greater than zero" );
+
+		executorThreads = threads;
+		executorQueue = queueCapacity;
+
+		if ( executor != null )
+		{
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
 	public DatabaseEngineLegacy getLegacy()
 	{
 		if ( sql == null )
@@ -63,6 +161,19 @@ public class SQLDatastore extends Datastore
 		return new DatabaseEngineLegacy( sql );
 	}
 
+	/**
+	 * @return The default query timeout in seconds, zero means no limit
+	 */
+	public int getQueryTimeout()
+	{
+		return queryTimeout;
+	}
+
+	public void setQueryTimeout( int queryTimeout )
+	{
+		this.queryTimeout = Math.max( 0, queryTimeout );
+	}
+
 	public boolean initialized()
 	{
 		return sql != null;
@@ -163,6 +274,27 @@ public class SQLDatastore extends Datastore
 		return new SQLTable( sql, table );
 	}
 
+	/**
+	 * Executes the work inside a single transaction, see {@link SQLWrapper#transaction(SQLTransaction.Isolation, SQLTransaction.Work)}
+	 *
+	 * @param work The work to execute
+	 * @param <R>  The result type
+	 * @return The result returned by the work
+	 * @throws SQLException if a database access error occurs or the work failed
+	 */
+	public <R> R transaction( SQLTransaction.Work<R> work ) throws SQLException
+	{
+		return transaction( SQLTransaction.Isolation.DEFAULT, work );
+	}
+
+	public <R> R transaction( SQLTransaction.Isolation isolation, SQLTransaction.Work<R> work ) throws SQLException
+	{
+		if ( sql == null )
+			throw new IllegalStateException( "The SQL instance is not initialized!" );
+
+		return sql.transaction( isolation, work );
+	}
+
 	public SQLQueryUpdate update( String table ) throws SQLException
 	{
 		if ( sql == null )
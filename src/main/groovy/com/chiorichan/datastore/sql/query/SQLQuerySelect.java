@@ -142,6 +142,12 @@ public final class SQLQuerySelect extends SQLBase<SQLQuerySelect> implements SQL
 		return this;
 	}
 
+	@Override
+	protected boolean isReadOnly()
+	{
+		return true;
+	}
+
 	@Override
 	public int limit()
 	{
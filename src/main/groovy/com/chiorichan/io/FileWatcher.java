@@ -16,32 +16,115 @@ import com.chiorichan.tasks.Ticks;
 import com.chiorichan.tasks.Timings;
 
 import java.io.File;
+import java.nio.file.Path;
 
+/**
+ * Calls {@link #readChanges()} on the main thread when the watched file is created or modified, and once when the watcher is created if the file exists.
+ * <p>
+ * Files are watched natively through the shared {@link FileWatcherService} where possible,
+ * otherwise the file is polled with a cool down that grows while it is unchanged.
+ */
 public abstract class FileWatcher implements TaskRegistrar, Runnable
 {
 	protected final File fileToWatch;
 	private long lastModified = 0;
 	private long cycleCoolDown = 1;
 	private long lastCheck;
-	private Task task;
+	private volatile Task task;
+	private volatile Path watchedDirectory = null;
+	private volatile boolean cancelled = false;
 
 	public FileWatcher( File fileToWatch )
 	{
 		this.fileToWatch = fileToWatch;
 
+		watch();
 		task = TaskManager.instance().runTask( this, this );
 	}
 
+	/**
+	 * Stops watching the file
+	 */
+	public final void cancel()
+	{
+		cancelled = true;
+		unwatch();
+		task.cancel();
+	}
+
+	/**
+	 * Called by the {@link FileWatcherService} once the events for the file have settled
+	 */
+	final void dispatch()
+	{
+		if ( !cancelled )
+			task = TaskManager.instance().runTask( this, this );
+	}
+
+	/**
+	 * Called by the {@link FileWatcherService} when the directory can no longer be watched
+	 */
+	final void fallback()
+	{
+		watchedDirectory = null;
+		cycleCoolDown = 1;
+		dispatch();
+	}
+
+	@Override
+	public String getName()
+	{
+		return "FileWatcher";
+	}
+
+	final boolean isAffected( Path dir, Path name )
+	{
+		return name == null || name.toString().equals( fileToWatch.getName() ) || dir.equals( fileToWatch.getAbsoluteFile().toPath() );
+	}
+
+	@Override
+	public final boolean isEnabled()
+	{
+		return true;
+	}
+
+	/**
+	 * @return True if the file is watched by the {@link FileWatcherService} instead of being polled
+	 */
+	public final boolean isWatchedNatively()
+	{
+		return watchedDirectory != null;
+	}
+
+	public abstract void readChanges();
+
+	/**
+	 * Resets the cool down period and runs the task sooner
+	 */
+	public final void reviveTask()
+	{
+		if ( cycleCoolDown == 1 || cancelled )
+			return;
+
+		cycleCoolDown = 1;
+		task.cancel();
+
+		task = TaskManager.instance().runTaskLater( this, Timings.epoch() - lastCheck >= 5 ? 0L : Ticks.SECOND_5 - ( Ticks.SECOND * ( Timings.epoch() - lastCheck ) ), this );
+	}
+
 	@Override
 	public final void run()
 	{
+		if ( cancelled )
+			return;
+
 		boolean changesDetected = false;
 		lastCheck = Timings.epoch();
 
 		if ( fileToWatch.exists() )
 		{
 			long newLastModified = fileToWatch.lastModified();
-			changesDetected = newLastModified > lastModified;
+			changesDetected = newLastModified != lastModified;
 
 			if ( changesDetected )
 			{
@@ -51,38 +134,33 @@ public abstract class FileWatcher implements TaskRegistrar, Runnable
 			}
 		}
 
-		if ( !changesDetected && Ticks.SECOND_5 * cycleCoolDown < Ticks.MINUTE_15 )
-			cycleCoolDown++;
-
-		task = TaskManager.instance().runTaskLater( this, Ticks.SECOND_5 * cycleCoolDown, this );
-	}
+		// Try again in case the directory was created since
+		if ( watchedDirectory == null )
+			watch();
 
-	/**
-	 * Resets the cool down period and runs the task sooner
-	 */
-	public final void reviveTask()
-	{
-		if ( cycleCoolDown == 1 )
+		// Natively watched files are checked again when the service reports an event
+		if ( watchedDirectory != null )
 			return;
 
-		cycleCoolDown = 1;
-		task.cancel();
+		if ( !changesDetected && Ticks.SECOND_5 * cycleCoolDown < Ticks.MINUTE )
+			cycleCoolDown++;
 
-		task = TaskManager.instance().runTaskLater( this, Timings.epoch() - lastCheck >= 5 ? 0L : Ticks.SECOND_5 - ( Ticks.SECOND * ( Timings.epoch() - lastCheck ) ), this );
+		task = TaskManager.instance().runTaskLater( this, Ticks.SECOND_5 * cycleCoolDown, this );
 	}
 
-	public abstract void readChanges();
-
-
-	@Override
-	public final boolean isEnabled()
+	private void unwatch()
 	{
-		return true;
+		Path dir = watchedDirectory;
+		watchedDirectory = null;
+		if ( dir != null )
+			FileWatcherService.unregister( this, dir );
 	}
 
-	@Override
-	public String getName()
+	private void watch()
 	{
-		return "FileWatcher";
+		File file = fileToWatch.getAbsoluteFile();
+		File dir = file.isDirectory() ? file : file.getParentFile();
+		if ( dir != null && dir.isDirectory() && FileWatcherService.register( this, dir.toPath() ) )
+			watchedDirectory = dir.toPath();
 	}
 }
@@ -0,0 +1,240 @@
+/**
+ * This software may be modified and distributed under the terms
+ * of the MIT license.  See the LICENSE file for details.
+ *
+ * Copyright (c) 2017 Joel Greene <joel.greene@penoaks.com>
+ * Copyright (c) 2017 Penoaks Publishing LLC <development@penoaks.com>
+ *
+ * All Rights Reserved.
+ */
+package com.chiorichan.io;
+
+import com.chiorichan.logger.Log;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the directories of every registered {@link FileWatcher} using a {@link WatchService}, one thread per file system.
+ * <p>
+ * Events are debounced, a watcher is only dispatched once no further events arrived for its file within {@link #DEBOUNCE_MILLIS}.
+ * File systems without a watch service, or directories that can not be registered, are left to the watcher's own polling.
+ */
+public final class FileWatcherService
+{
+	private static class Watch implements Runnable
+	{
+		private final WatchService service;
+		private final Map<Path, Set<FileWatcher>> subscribers = new ConcurrentHashMap<>();
+		private final Map<Path, WatchKey> keys = new HashMap<>();
+		// Only accessed by the watch thread
+		private final Map<FileWatcher, Long> pending = new LinkedHashMap<>();
+
+		Watch( WatchService service )
+		{
+			this.service = service;
+		}
+
+		private void dispatchDue()
+		{
+			long now = System.currentTimeMillis();
+			for ( Iterator<Map.Entry<FileWatcher, Long>> it = pending.entrySet().iterator(); it.hasNext(); )
+			{
+				Map.Entry<FileWatcher, Long> entry = it.next();
+				if ( entry.getValue() <= now )
+				{
+					it.remove();
+					entry.getKey().dispatch();
+				}
+			}
+		}
+
+		private void handle( WatchKey key )
+		{
+			Path dir = ( Path ) key.watchable();
+			Set<FileWatcher> watchers = subscribers.get( dir );
+			long deadline = System.currentTimeMillis() + DEBOUNCE_MILLIS;
+
+			for ( WatchEvent<?> event : key.pollEvents() )
+				if ( watchers != null )
+					for ( FileWatcher watcher : watchers )
+						if ( event.kind() == StandardWatchEventKinds.OVERFLOW || watcher.isAffected( dir, ( Path ) event.context() ) )
+						{
+							// Reinsert so the map stays ordered by deadline
+							pending.remove( watcher );
+							pending.put( watcher, deadline );
+						}
+
+			if ( !key.reset() )
+				synchronized ( this )
+				{
+					// The directory is gone, the watchers poll until it is watched again
+					keys.remove( dir );
+					Set<FileWatcher> orphaned = subscribers.remove( dir );
+					if ( orphaned != null )
+						for ( FileWatcher watcher : orphaned )
+						{
+							pending.remove( watcher );
+							watcher.fallback();
+						}
+				}
+		}
+
+		synchronized boolean register( FileWatcher watcher, Path dir )
+		{
+			if ( !keys.containsKey( dir ) )
+				try
+				{
+					keys.put( dir, dir.register( service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE ) );
+				}
+				catch ( IOException | UnsupportedOperationException e )
+				{
+					return false;
+				}
+
+			subscribers.computeIfAbsent( dir, k -> ConcurrentHashMap.newKeySet() ).add( watcher );
+			return true;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				for ( ; ; )
+				{
+					WatchKey key;
+					if ( pending.isEmpty() )
+						key = service.take();
+					else
+						key = service.poll( Math.max( 1, pending.values().iterator().next() - System.currentTimeMillis() ), TimeUnit.MILLISECONDS );
+
+					if ( key != null )
+						handle( key );
+					dispatchDue();
+				}
+			}
+			catch ( InterruptedException | ClosedWatchServiceException e )
+			{
+				// Shutting down
+			}
+		}
+
+		synchronized void unregister( FileWatcher watcher, Path dir )
+		{
+			Set<FileWatcher> watchers = subscribers.get( dir );
+			if ( watchers == null || !watchers.remove( watcher ) || !watchers.isEmpty() )
+				return;
+
+			subscribers.remove( dir );
+			WatchKey key = keys.remove( dir );
+			if ( key != null )
+				key.cancel();
+		}
+	}
+
+	public static final long DEBOUNCE_MILLIS = 250;
+
+	// File systems without a watch service map to null
+	private static final Map<FileSystem, Watch> watches = new HashMap<>();
+
+	/**
+	 * @return The number of directories watched natively across all file systems
+	 */
+	public static synchronized int getWatchedDirectories()
+	{
+		int count = 0;
+		for ( Watch watch : watches.values() )
+			if ( watch != null )
+				count += watch.subscribers.size();
+		return count;
+	}
+
+	private static synchronized Watch getWatch( FileSystem fileSystem )
+	{
+		if ( watches.containsKey( fileSystem ) )
+			return watches.get( fileSystem );
+
+		Watch watch = null;
+		try
+		{
+			watch = new Watch( fileSystem.newWatchService() );
+
+			Thread thread = new Thread( watch, "FileWatcher-" + watches.size() );
+			thread.setDaemon( true );
+			thread.start();
+		}
+		catch ( IOException | UnsupportedOperationException e )
+		{
+			Log.get().fine( String.format( "Native file watching is unavailable for %s, falling back to polling: %s", fileSystem, e.getMessage() ) );
+		}
+
+		watches.put( fileSystem, watch );
+		return watch;
+	}
+
+	/**
+	 * Subscribes the watcher to events in the directory
+	 *
+	 * @param watcher The watcher
+	 * @param dir     The directory containing the watched file, or the watched directory itself
+	 * @return True if the directory is watched natively, false if the watcher must poll
+	 */
+	static boolean register( FileWatcher watcher, Path dir )
+	{
+		Watch watch = getWatch( dir.getFileSystem() );
+		return watch != null && watch.register( watcher, dir );
+	}
+
+	/**
+	 * Closes every watch service and stops the watch threads, watchers registered afterwards create new ones
+	 */
+	public static synchronized void shutdown()
+	{
+		List<Watch> closing = new ArrayList<>( watches.values() );
+		watches.clear();
+
+		for ( Watch watch : closing )
+			if ( watch != null )
+				try
+				{
+					watch.service.close();
+				}
+				catch ( IOException e )
+				{
+					// Ignore
+				}
+	}
+
+	static void unregister( FileWatcher watcher, Path dir )
+	{
+		Watch watch;
+		synchronized ( FileWatcherService.class )
+		{
+			watch = watches.get( dir.getFileSystem() );
+		}
+
+		if ( watch != null )
+			watch.unregister( watcher, dir );
+	}
+
+	private FileWatcherService()
+	{
+
+	}
+}
@@ -13,9 +13,12 @@ import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 import com.chiorichan.AppConfig;
+import com.chiorichan.configuration.ConfigKey;
 
 public class ChildLogger extends Logger
 {
+	private static final ConfigKey<Boolean> HIDE_LOGGER_NAME = ConfigKey.ofBoolean( "console.hideLoggerName", false );
+
 	protected ChildLogger( String id )
 	{
 		super( id, null );
@@ -24,7 +27,7 @@ public class ChildLogger extends Logger
 	@Override
 	public void log( LogRecord logRecord )
 	{
-		if ( AppConfig.get().isConfigLoaded() && !AppConfig.get().getBoolean( "console.hideLoggerName" ) )
+		if ( AppConfig.get().isConfigLoaded() && !HIDE_LOGGER_NAME.get() )
 			logRecord.setMessage( "&7[" + getName() + "]&f " + logRecord.getMessage() );
 
 		super.log( logRecord );
@@ -16,11 +16,14 @@ import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
 
 import com.chiorichan.AppConfig;
+import com.chiorichan.configuration.ConfigKey;
 import com.chiorichan.lang.EnumColor;
 import com.chiorichan.utils.UtilStrings;
 
 public class DefaultLogFormatter extends Formatter
 {
+	private static final ConfigKey<String> CONSOLE_STYLE = ConfigKey.ofString( "console.style", "&r&7[&d%ct&7] %dt %tm [%lv&7]&f" );
+
 	public static boolean debugMode = false;
 	public static int debugModeHowDeep = 1;
 	private SimpleDateFormat dateFormat;
@@ -51,7 +54,7 @@ public class DefaultLogFormatter extends Formatter
 			formatConfigLoaded = true;
 		}
 
-		String style = AppConfig.get().isConfigLoaded() ? AppConfig.get().getString( "console.style", "&r&7[&d%ct&7] %dt %tm [%lv&7]&f" ) : "&r&7%dt %tm [%lv&7]&f";
+		String style = AppConfig.get().isConfigLoaded() ? CONSOLE_STYLE.get() : "&r&7%dt %tm [%lv&7]&f";
 
 		Throwable ex = record.getThrown();
 
@@ -108,14 +108,9 @@ public class SQLGroup extends PermissibleGroup
 	@Override
 	public void remove()
 	{
-		SQLDatastore db = SQLBackend.getBackend().getSQL();
 		try
 		{
-			// db.queryUpdate( String.format( "DELETE FROM `permissions_entity` WHERE `owner` = '%s' AND `type` = '1';", getId() ) );
-			// db.queryUpdate( String.format( "DELETE FROM `permissions_groups` WHERE `parent` = '%s' AND `type` = '1';", getId() ) );
-
-			db.table( "permissions_entity" ).delete().where( "owner" ).matches( getId() ).and().where( "type" ).matches( "1" ).execute();
-			db.table( "permissions_groups" ).delete().where( "parent" ).matches( getId() ).and().where( "type" ).matches( "1" ).execute();
+			remove( SQLBackend.getBackend().getSQL() );
 		}
 		catch ( SQLException e )
 		{
@@ -123,6 +118,15 @@ public class SQLGroup extends PermissibleGroup
 		}
 	}
 
+	private void remove( SQLDatastore db ) throws SQLException
+	{
+		// db.queryUpdate( String.format( "DELETE FROM `permissions_entity` WHERE `owner` = '%s' AND `type` = '1';", getId() ) );
+		// db.queryUpdate( String.format( "DELETE FROM `permissions_groups` WHERE `parent` = '%s' AND `type` = '1';", getId() ) );
+
+		db.table( "permissions_entity" ).delete().where( "owner" ).matches( getId() ).and().where( "type" ).matches( "1" ).execute();
+		db.table( "permissions_groups" ).delete().where( "parent" ).matches( getId() ).and().where( "type" ).matches( "1" ).execute();
+	}
+
 	@Override
 	public void save()
 	{
@@ -134,22 +138,26 @@ public class SQLGroup extends PermissibleGroup
 
 		try
 		{
-			SQLDatastore db = SQLBackend.getBackend().getSQL();
-			remove();
-
-			Collection<ChildPermission> children = getChildPermissions( null );
-			for ( ChildPermission child : children )
+			SQLBackend.getBackend().getSQL().transaction( db ->
 			{
-				Permission perm = child.getPermission();
-				// db.queryUpdate( String.format( "INSERT INTO `permissions_entity` (`owner`,`type`,`refs`,`permission`,`value`) VALUES ('%s','1','%s','%s','%s');", getId(), child.getReferences().join(), perm.getNamespace(),
-				// child.getObject() ) );
-				db.table( "permissions_entity" ).insert().value( "owner", getId() ).value( "type", 1 ).value( "refs", child.getReferences().join() ).value( "permission", perm.getNamespace() ).value( "value", child.getObject() ).execute();
-			}
-
-			Collection<Entry<PermissibleGroup, References>> groups = getGroupEntrys( null );
-			for ( Entry<PermissibleGroup, References> entry : groups )
-				db.table( "permissions_groups" ).insert().value( "child", entry.getKey().getId() ).value( "parent", getId() ).value( "type", 1 ).value( "refs", entry.getValue().join() ).execute();
-			// db.queryUpdate( String.format( "INSERT INTO `permissions_groups` (`child`, `parent`, `type`, `refs`) VALUES ('%s', '%s', '1', '%s');", entry.getKey().getId(), getId(), entry.getValue().join() ) );
+				remove( db );
+
+				Collection<ChildPermission> children = getChildPermissions( null );
+				for ( ChildPermission child : children )
+				{
+					Permission perm = child.getPermission();
+					// db.queryUpdate( String.format( "INSERT INTO `permissions_entity` (`owner`,`type`,`refs`,`permission`,`value`) VALUES ('%s','1','%s','%s','%s');", getId(), child.getReferences().join(), perm.getNamespace(),
+					// child.getObject() ) );
+					db.table( "permissions_entity" ).insert().value( "owner", getId() ).value( "type", 1 ).value( "refs", child.getReferences().join() ).value( "permission", perm.getNamespace() ).value( "value", child.getObject() ).execute();
+				}
+
+				Collection<Entry<PermissibleGroup, References>> groups = getGroupEntrys( null );
+				for ( Entry<PermissibleGroup, References> entry : groups )
+					db.table( "permissions_groups" ).insert().value( "child", entry.getKey().getId() ).value( "parent", getId() ).value( "type", 1 ).value( "refs", entry.getValue().join() ).execute();
+				// db.queryUpdate( String.format( "INSERT INTO `permissions_groups` (`child`, `parent`, `type`, `refs`) VALUES ('%s', '%s', '1', '%s');", entry.getKey().getId(), getId(), entry.getValue().join() ) );
+
+				return null;
+			} );
 		}
 		catch ( SQLException e )
 		{
@@ -18,6 +18,7 @@ import com.chiorichan.account.AccountAttachment;
 import com.chiorichan.account.AccountManager;
 import com.chiorichan.account.Kickable;
 import com.chiorichan.account.lang.AccountException;
+import com.chiorichan.datastore.sql.SQLStatistics;
 import com.chiorichan.event.account.KickEvent;
 import com.chiorichan.lang.EnumColor;
 import com.chiorichan.messaging.MessageBuilder;
@@ -276,6 +277,41 @@ public abstract class BuiltinCommand extends Command
 			}
 		} );
 
+		CommandDispatch.registerCommand( new BuiltinCommand( "sqlstats" )
+		{
+			@Override
+			public boolean execute( AccountAttachment sender, String command, String[] args )
+			{
+				if ( !sender.getPermissibleEntity().isOp() )
+				{
+					sender.sendMessage( EnumColor.RED + "Only server operators can view the SQL statistics." );
+					return true;
+				}
+
+				if ( args.length > 0 && "reset".equalsIgnoreCase( args[0] ) )
+				{
+					SQLStatistics.reset();
+					sender.sendMessage( EnumColor.AQUA + "SQL statistics have been reset." );
+					return true;
+				}
+
+				int limit = args.length > 0 ? UtilObjects.castToInt( args[0] ) : 10;
+				SQLStatistics.Sort sort = args.length > 1 ? SQLStatistics.Sort.parse( args[1] ) : SQLStatistics.Sort.TOTAL;
+
+				if ( limit < 1 || sort == null )
+				{
+					sender.sendMessage( EnumColor.RED + "Usage: " + usageMessage );
+					return false;
+				}
+
+				sender.sendMessage( EnumColor.AQUA + "Top " + limit + " SQL statements by " + sort.name().toLowerCase() + " (slow threshold " + SQLStatistics.getSlowThreshold() + "ms):" );
+				for ( SQLStatistics.Entry entry : SQLStatistics.top( limit, sort ) )
+					sender.sendMessage( EnumColor.YELLOW + entry.toString() );
+
+				return true;
+			}
+		}.setDescription( "Lists the SQL statements with the highest latency." ).setUsage( "sqlstats [limit] [count|total|mean|max|rows|errors] or sqlstats reset" ) );
+
 		CommandDispatch.registerCommand( new BuiltinCommand( "logout" )
 		{
 			@Override
@@ -33,7 +33,6 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
-import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -58,6 +57,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
@@ -647,33 +647,20 @@ public class UtilIO
 		return recursiveFiles( dir, 9999 );
 	}
 
-	private static List<File> recursiveFiles( final File start, final File current, final int depth, final int maxDepth, final String regexPattern )
+	private static void recursiveFiles( final List<File> files, final int prefix, final File current, final int depth, final int maxDepth, final Pattern pattern )
 	{
-		final List<File> files = new ArrayList<>();
+		File[] children = current.listFiles();
+		if ( children == null )
+			return;
 
-		current.list( new FilenameFilter()
-		{
-			@Override
-			public boolean accept( File dir, String name )
+		for ( File child : children )
+			if ( child.isDirectory() )
 			{
-				dir = new File( dir, name );
-
-				if ( dir.isDirectory() && depth < maxDepth )
-					files.addAll( recursiveFiles( start, dir, depth + 1, maxDepth, regexPattern ) );
-
-				if ( dir.isFile() )
-				{
-					String filename = dir.getAbsolutePath();
-					filename = filename.substring( start.getAbsolutePath().length() + 1 );
-					if ( regexPattern == null || filename.matches( regexPattern ) )
-						files.add( dir );
-				}
-
-				return false;
+				if ( depth < maxDepth )
+					recursiveFiles( files, prefix, child, depth + 1, maxDepth, pattern );
 			}
-		} );
-
-		return files;
+			else if ( child.isFile() && ( pattern == null || pattern.matcher( child.getAbsolutePath().substring( prefix ) ).matches() ) )
+				files.add( child );
 	}
 
 	public static List<File> recursiveFiles( final File dir, final int maxDepth )
@@ -683,7 +670,9 @@ public class UtilIO
 
 	public static List<File> recursiveFiles( final File dir, final int maxDepth, final String regexPattern )
 	{
-		return recursiveFiles( dir, dir, 0, maxDepth, regexPattern );
+		final List<File> files = new ArrayList<>();
+		recursiveFiles( files, dir.getAbsolutePath().length() + 1, dir, 0, maxDepth, regexPattern == null ? null : Pattern.compile( regexPattern ) );
+		return files;
 	}
 
 	/**